@@ -0,0 +1,80 @@
+package benchmarks.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.BlockingBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trip hand-off latency between two threads.
+ *
+ * The benchmark thread puts an item into the request queue and waits for
+ * an echo thread to pass it back through the response queue. SampleTime
+ * mode reports the latency distribution (p50, p90, p99, p99.9, ...), which
+ * covers the full cost of waking a blocked thread on each side.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HandoffLatencyBenchmark {
+
+    private static final Integer ITEM = 42;
+
+    // Every QueueFactory queue except the opt-in ones its class comment lists
+    @Param({"BoundedBlockingQueue", "LockingBoundedQueue", "RingBufferQueue", "AdaptiveBoundedQueue",
+            "InstrumentedQueue", "ShardedQueue", "MultiLaneQueue", "BoundedPriorityQueue"})
+    public String queue;
+
+    @Param({"1", "16"})
+    public int capacity;
+
+    private BlockingBuffer<Integer> requests;
+    private BlockingBuffer<Integer> responses;
+    private Thread echo;
+
+    @Setup(Level.Trial)
+    public void startEcho() {
+        requests = QueueFactory.create(queue, capacity);
+        responses = QueueFactory.create(queue, capacity);
+        echo = new Thread(() -> {
+            try {
+                while (true) {
+                    responses.put(requests.take());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "echo");
+        echo.setDaemon(true);
+        echo.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopEcho() throws InterruptedException {
+        echo.interrupt();
+        echo.join(1000);
+        QueueFactory.dispose(requests);
+        QueueFactory.dispose(responses);
+    }
+
+    @Benchmark
+    public Integer roundTrip() throws InterruptedException {
+        requests.put(ITEM);
+        return responses.take();
+    }
+}
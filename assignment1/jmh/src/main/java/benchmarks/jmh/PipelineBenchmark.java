@@ -0,0 +1,83 @@
+package benchmarks.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.BlockingBuffer;
+import utils.PipelineRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end throughput of {@link PipelineRunner} in production mode
+ * (no demo delays, no logging) across producer/consumer ratios, queue
+ * capacities and queue implementations. Scores are items per millisecond.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    private static final int ITEMS = 100_000;
+
+    // See QueueFactory for the queues that are only run on request
+    @Param({"BoundedBlockingQueue", "LockingBoundedQueue", "RingBufferQueue", "AdaptiveBoundedQueue",
+            "InstrumentedQueue", "ShardedQueue", "MultiLaneQueue", "BoundedPriorityQueue"})
+    public String queue;
+
+    @Param({"16", "1024"})
+    public int capacity;
+
+    @Param({"1", "4"})
+    public int producers;
+
+    @Param({"1", "4"})
+    public int consumers;
+
+    @Param({"1", "64"})
+    public int batchSize;
+
+    private List<List<Integer>> sources;
+
+    @Setup
+    public void setUp() {
+        sources = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            sources.add(new ArrayList<>());
+        }
+        for (int i = 0; i < ITEMS; i++) {
+            sources.get(i % producers).add(i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public List<Integer> transfer() throws InterruptedException {
+        List<Integer> destination = Collections.synchronizedList(new ArrayList<>(ITEMS));
+        BlockingBuffer<Integer> buffer = QueueFactory.create(queue, capacity);
+        try {
+            new PipelineRunner<Integer>(buffer, sources, consumers, destination)
+                .withProductionMode()
+                .withBatchSize(batchSize)
+                .run();
+        } finally {
+            QueueFactory.dispose(buffer);
+        }
+        return destination;
+    }
+}
@@ -0,0 +1,95 @@
+package benchmarks.jmh;
+
+import utils.AdaptiveBoundedQueue;
+import utils.BlockingBuffer;
+import utils.BoundedBlockingQueue;
+import utils.BoundedPriorityQueue;
+import utils.ElementCodec;
+import utils.InstrumentedQueue;
+import utils.LockingBoundedQueue;
+import utils.MappedFileQueue;
+import utils.MultiLaneQueue;
+import utils.RingBufferQueue;
+import utils.ShardedQueue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Creates the queue implementations compared by the JMH benchmarks.
+ * The names are the values accepted by the benchmarks' "queue" parameter.
+ * Every benchmark passes a queue to {@link #dispose(BlockingBuffer)} once
+ * it is done with it.
+ *
+ * The benchmarks' default lists leave out three names, which can still be
+ * selected with {@code -p queue=...}: MappedFileQueue writes segment files
+ * to a temporary directory, so its score depends on the disk and each
+ * trial leaves work for the file system; LockingBoundedQueue-fair and
+ * ShardedQueue-relaxed are tuning options of queues that are already listed.
+ */
+final class QueueFactory {
+
+    private QueueFactory() {
+    }
+
+    static BlockingBuffer<Integer> create(String name, int capacity) {
+        switch (name) {
+            case "BoundedBlockingQueue":
+                return new BoundedBlockingQueue<>(capacity);
+            case "LockingBoundedQueue":
+                return new LockingBoundedQueue<>(capacity);
+            case "LockingBoundedQueue-fair":
+                return new LockingBoundedQueue<>(capacity, true);
+            case "RingBufferQueue":
+                return new RingBufferQueue<>(capacity);
+            case "ShardedQueue":
+                return new ShardedQueue<>(capacity);
+            case "ShardedQueue-relaxed":
+                return new ShardedQueue<>(capacity, Runtime.getRuntime().availableProcessors(), true);
+            case "AdaptiveBoundedQueue":
+                // Starts at 1/16 of the capacity and grows under load
+                return new AdaptiveBoundedQueue<>(Math.max(1, capacity / 16), capacity);
+            case "InstrumentedQueue":
+                // LockingBoundedQueue with metrics, to measure the instrumentation overhead
+                return new InstrumentedQueue<>(new LockingBoundedQueue<>(capacity));
+            case "MultiLaneQueue":
+                // One lane, so the capacity matches the other queues and the score is the lane bookkeeping
+                return new MultiLaneQueue<>(new int[] {capacity}, new int[] {1}, item -> 0);
+            case "BoundedPriorityQueue":
+                return new BoundedPriorityQueue<>(capacity, Comparator.<Integer>naturalOrder());
+            case "MappedFileQueue":
+                try {
+                    return new MappedFileQueue<>(Files.createTempDirectory("jmh-mapped"), ElementCodec.integers(),
+                            capacity);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown queue: " + name);
+        }
+    }
+
+    /**
+     * Releases what a queue holds outside the heap: a {@link MappedFileQueue}
+     * is closed and its segment files are deleted. Other queues need nothing.
+     */
+    static void dispose(BlockingBuffer<Integer> queue) {
+        if (!(queue instanceof MappedFileQueue)) {
+            return;
+        }
+        MappedFileQueue<Integer> mapped = (MappedFileQueue<Integer>) queue;
+        mapped.close();
+        try (Stream<Path> files = Files.list(mapped.getDirectory())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+            Files.delete(mapped.getDirectory());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
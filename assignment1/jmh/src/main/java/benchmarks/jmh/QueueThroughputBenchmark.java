@@ -0,0 +1,136 @@
+package benchmarks.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.Control;
+import utils.BlockingBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Put/take throughput under contention for every producer/consumer ratio.
+ *
+ * Each JMH group runs producer and consumer threads against one shared
+ * queue. Operations use a short timed offer/poll rather than put/take so
+ * the threads still exercise the blocking path but can notice the end of
+ * an iteration instead of waiting forever on a queue the other side has
+ * stopped serving.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class QueueThroughputBenchmark {
+
+    private static final Integer ITEM = 42;
+    private static final long WAIT_MICROS = 100;
+
+    // MappedFileQueue and the fair/relaxed variants are opt-in; see QueueFactory
+    @Param({"BoundedBlockingQueue", "LockingBoundedQueue", "RingBufferQueue", "AdaptiveBoundedQueue",
+            "InstrumentedQueue", "ShardedQueue", "MultiLaneQueue", "BoundedPriorityQueue"})
+    public String queue;
+
+    @Param({"16", "1024"})
+    public int capacity;
+
+    private BlockingBuffer<Integer> buffer;
+
+    @Setup
+    public void setUp() {
+        buffer = QueueFactory.create(queue, capacity);
+    }
+
+    @TearDown
+    public void tearDown() {
+        QueueFactory.dispose(buffer);
+    }
+
+    @Benchmark
+    @Group("p1c1")
+    @GroupThreads(1)
+    public void put_p1c1(Control control) throws InterruptedException {
+        put(control);
+    }
+
+    @Benchmark
+    @Group("p1c1")
+    @GroupThreads(1)
+    public void take_p1c1(Control control, Blackhole bh) throws InterruptedException {
+        take(control, bh);
+    }
+
+    @Benchmark
+    @Group("p4c4")
+    @GroupThreads(4)
+    public void put_p4c4(Control control) throws InterruptedException {
+        put(control);
+    }
+
+    @Benchmark
+    @Group("p4c4")
+    @GroupThreads(4)
+    public void take_p4c4(Control control, Blackhole bh) throws InterruptedException {
+        take(control, bh);
+    }
+
+    @Benchmark
+    @Group("p1c4")
+    @GroupThreads(1)
+    public void put_p1c4(Control control) throws InterruptedException {
+        put(control);
+    }
+
+    @Benchmark
+    @Group("p1c4")
+    @GroupThreads(4)
+    public void take_p1c4(Control control, Blackhole bh) throws InterruptedException {
+        take(control, bh);
+    }
+
+    @Benchmark
+    @Group("p4c1")
+    @GroupThreads(4)
+    public void put_p4c1(Control control) throws InterruptedException {
+        put(control);
+    }
+
+    @Benchmark
+    @Group("p4c1")
+    @GroupThreads(1)
+    public void take_p4c1(Control control, Blackhole bh) throws InterruptedException {
+        take(control, bh);
+    }
+
+    private void put(Control control) throws InterruptedException {
+        while (!buffer.offer(ITEM, WAIT_MICROS, TimeUnit.MICROSECONDS)) {
+            if (control.stopMeasurement) {
+                return;
+            }
+        }
+    }
+
+    private void take(Control control, Blackhole bh) throws InterruptedException {
+        Integer item;
+        while ((item = buffer.poll(WAIT_MICROS, TimeUnit.MICROSECONDS)) == null) {
+            if (control.stopMeasurement) {
+                return;
+            }
+        }
+        bh.consume(item);
+    }
+}
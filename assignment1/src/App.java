@@ -2,17 +2,38 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import utils.BoundedBlockingQueue;
+import utils.ConcurrentCollectorSink;
 import utils.Consumer;
+import utils.PipelineRunner;
 import utils.Producer;
+import utils.ReorderBuffer;
+import utils.Sequenced;
+import utils.Sink;
 
 /**
  * Main application demonstrating the Producer-Consumer pattern
  * using a bounded blocking queue with wait/notify synchronization.
+ *
+ * Run with no arguments for the single producer / single consumer demo, or
+ * with "producers consumers" (e.g. {@code java -cp bin App 3 4}) to run
+ * several of each through {@link PipelineRunner}. With "ordered consumers"
+ * (e.g. {@code java -cp bin App ordered 4}) several consumers run in
+ * parallel and a {@link ReorderBuffer} restores source order.
  */
 public class App {
     public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("ordered")) {
+            runOrdered(Integer.parseInt(args[1]));
+            return;
+        }
+        if (args.length >= 2) {
+            runPipeline(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+            return;
+        }
+
         System.out.println("=== Producer-Consumer Pattern Demo ===");
         System.out.println("Using BoundedBlockingQueue with wait/notify mechanism\n");
 
@@ -67,4 +88,100 @@ public class App {
             System.out.println("\n✗ ERROR: Items don't match!");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Splits the source across several producers and drains it with several
+     * consumers. Consumers interleave, so items are compared as a sorted set.
+     */
+    private static void runPipeline(int producerCount, int consumerCount) throws InterruptedException {
+        System.out.println("=== Multi Producer-Consumer Pipeline Demo ===");
+        System.out.println("Producers: " + producerCount + ", Consumers: " + consumerCount + "\n");
+
+        List<Integer> source = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            source.add(i);
+        }
+        List<List<Integer>> sources = new ArrayList<>();
+        for (int p = 0; p < producerCount; p++) {
+            sources.add(new ArrayList<>());
+        }
+        for (int i = 0; i < source.size(); i++) {
+            sources.get(i % producerCount).add(source.get(i));
+        }
+
+        // Lock-free sink, so consumers do not serialize on the destination
+        ConcurrentCollectorSink<Integer> sink = new ConcurrentCollectorSink<>();
+        PipelineRunner<Integer> pipeline =
+            new PipelineRunner<>(new BoundedBlockingQueue<>(3), sources, consumerCount, sink);
+
+        long startTime = System.currentTimeMillis();
+        pipeline.run();
+        long endTime = System.currentTimeMillis();
+
+        List<Integer> sorted = sink.getItems();
+        Collections.sort(sorted);
+
+        System.out.println("\n=== Results ===");
+        for (Consumer<Integer> consumer : pipeline.getConsumers()) {
+            System.out.println("  " + consumer.getName() + " consumed: " + consumer.getItemsConsumed());
+        }
+        System.out.println("  Items transferred: " + sorted.size());
+        System.out.println("  All items match: " + source.equals(sorted));
+        System.out.println("  Execution time: " + (endTime - startTime) + "ms");
+
+        if (source.equals(sorted)) {
+            System.out.println("\n✓ SUCCESS: All items transferred correctly!");
+        } else {
+            System.out.println("\n✗ ERROR: Items don't match!");
+        }
+    }
+
+    /**
+     * Drains a sequenced producer with several consumers and reassembles the
+     * results, so the destination matches the source exactly, not just as a set.
+     */
+    private static void runOrdered(int consumerCount) throws InterruptedException {
+        System.out.println("=== Ordered Parallel Consumption Demo ===");
+        System.out.println("Consumers: " + consumerCount + "\n");
+
+        List<Integer> source = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            source.add(i);
+        }
+        List<Integer> destination = Collections.synchronizedList(new ArrayList<>());
+        ReorderBuffer<Integer> reorder = new ReorderBuffer<>(Sink.of(destination), 8);
+        BoundedBlockingQueue<Sequenced<Integer>> queue = new BoundedBlockingQueue<>(3);
+
+        CountDownLatch producerDone = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(Producer.sequenced(queue, source, "Producer-1")
+            .withCompletionLatch(producerDone), "Producer-Thread"));
+        for (int c = 1; c <= consumerCount; c++) {
+            threads.add(new Thread(new Consumer<>(queue, reorder, "Consumer-" + c)
+                .untilProducersDone(producerDone), "Consumer-Thread-" + c));
+        }
+
+        long startTime = System.currentTimeMillis();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long endTime = System.currentTimeMillis();
+
+        System.out.println("\n=== Results ===");
+        System.out.println("Source:      " + source);
+        System.out.println("Destination: " + destination);
+        System.out.println("  Reorder window high-water mark: " + reorder.getHighWaterMark()
+            + " of " + reorder.getWindow());
+        System.out.println("  All items match in order: " + source.equals(destination));
+        System.out.println("  Execution time: " + (endTime - startTime) + "ms");
+
+        if (source.equals(destination)) {
+            System.out.println("\n✓ SUCCESS: All items transferred in source order!");
+        } else {
+            System.out.println("\n✗ ERROR: Items don't match!");
+        }
+    }
+}
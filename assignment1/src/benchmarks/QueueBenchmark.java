@@ -0,0 +1,201 @@
+package benchmarks;
+
+import utils.AdaptiveBoundedQueue;
+import utils.BlockingBuffer;
+import utils.BoundedBlockingQueue;
+import utils.IntBoundedQueue;
+import utils.LockingBoundedQueue;
+import utils.RingBufferQueue;
+import utils.ShardedQueue;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Quick throughput comparison of the queue implementations.
+ * Run with: java -cp bin benchmarks.QueueBenchmark [items] [capacity]
+ *
+ * Each configuration moves the same number of items from P producer threads
+ * to C consumer threads and reports the hand-off rate. The first rounds are
+ * discarded as JIT warm-up.
+ */
+public class QueueBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+
+        System.out.println("=== Queue Throughput Benchmark ===");
+        System.out.println("Items per run: " + items + ", capacity: " + capacity + "\n");
+
+        int[][] threadRatios = {{1, 1}, {2, 2}, {4, 4}, {1, 4}, {4, 1}};
+
+        for (int[] ratio : threadRatios) {
+            int producers = ratio[0];
+            int consumers = ratio[1];
+
+            Map<String, IntFunction<BlockingBuffer<Integer>>> queues = new LinkedHashMap<>();
+            queues.put("BoundedBlockingQueue", BoundedBlockingQueue::new);
+            queues.put("LockingBoundedQueue", LockingBoundedQueue::new);
+            queues.put("RingBufferQueue", RingBufferQueue::new);
+            // Starts at 1/16 of the capacity and grows under load
+            // One shard per consumer; each consumer thread gets its own home shard
+            queues.put("ShardedQueue-relaxed", c -> new ShardedQueue<>(c, consumers, true));
+            queues.put("AdaptiveBoundedQueue", c -> new AdaptiveBoundedQueue<>(Math.max(1, c / 16), c));
+            if (producers == 1 && consumers == 1) {
+                queues.put("RingBufferQueue-SPSC", c -> new RingBufferQueue<>(c, true, true));
+            }
+
+            System.out.println("Producers: " + producers + ", Consumers: " + consumers);
+            for (Map.Entry<String, IntFunction<BlockingBuffer<Integer>>> entry : queues.entrySet()) {
+                double best = 0;
+                for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                    double opsPerSec = run(entry.getValue().apply(capacity), items, producers, consumers);
+                    if (round >= WARMUP_ROUNDS) {
+                        best = Math.max(best, opsPerSec);
+                    }
+                }
+                System.out.printf("  %-22s %,15.0f items/sec%n", entry.getKey(), best);
+            }
+            System.out.println();
+        }
+
+        // The runs above reuse one boxed value; here every element is a distinct
+        // value, so the boxed queue pays for Integer allocation and the GC it causes
+        System.out.println("Boxed vs primitive, distinct values (Producers: 1, Consumers: 1)");
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long gcBefore = gcCount();
+            double boxed = runBoxed(new LockingBoundedQueue<>(capacity), items);
+            long gcBoxed = gcCount() - gcBefore;
+            gcBefore = gcCount();
+            double primitive = runPrimitive(new IntBoundedQueue(capacity), items);
+            long gcPrimitive = gcCount() - gcBefore;
+            if (round >= WARMUP_ROUNDS) {
+                System.out.printf("  %-22s %,15.0f items/sec  %3d GCs%n", "LockingBoundedQueue", boxed, gcBoxed);
+                System.out.printf("  %-22s %,15.0f items/sec  %3d GCs%n", "IntBoundedQueue", primitive, gcPrimitive);
+            }
+        }
+    }
+
+    /**
+     * Moves {@code items} distinct Integers through a boxed queue.
+     */
+    static double runBoxed(BlockingBuffer<Integer> queue, int items) throws InterruptedException {
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < items; i++) {
+                    queue.put(i);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long start = System.nanoTime();
+        producer.start();
+        long sum = 0;
+        for (int i = 0; i < items; i++) {
+            sum += queue.take();
+        }
+        producer.join();
+        return checked(sum, items) * 1_000_000_000.0 / (System.nanoTime() - start);
+    }
+
+    /**
+     * Moves {@code items} distinct ints through a primitive queue.
+     */
+    static double runPrimitive(IntBoundedQueue queue, int items) throws InterruptedException {
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < items; i++) {
+                    queue.put(i);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long start = System.nanoTime();
+        producer.start();
+        long sum = 0;
+        for (int i = 0; i < items; i++) {
+            sum += queue.take();
+        }
+        producer.join();
+        return checked(sum, items) * 1_000_000_000.0 / (System.nanoTime() - start);
+    }
+
+    /**
+     * Verifies the consumer saw 0..items-1 so the work cannot be optimized away.
+     */
+    private static int checked(long sum, int items) {
+        if (sum != (long) items * (items - 1) / 2) {
+            throw new IllegalStateException("Unexpected checksum " + sum);
+        }
+        return items;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    /**
+     * Moves {@code items} integers through the queue and returns items per second.
+     */
+    static double run(BlockingBuffer<Integer> queue, int items, int producers, int consumers)
+            throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        Integer value = 42; // reuse one boxed value so allocation doesn't skew the result
+
+        for (int p = 0; p < producers; p++) {
+            int count = share(items, producers, p);
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        queue.put(value);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            int count = share(items, consumers, c);
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        queue.take();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        long start = System.nanoTime();
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        return items * 1_000_000_000.0 / elapsed;
+    }
+
+    /**
+     * Splits {@code total} as evenly as possible across {@code parts}.
+     */
+    static int share(int total, int parts, int index) {
+        return total / parts + (index < total % parts ? 1 : 0);
+    }
+}
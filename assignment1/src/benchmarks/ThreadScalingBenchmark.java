@@ -0,0 +1,83 @@
+package benchmarks;
+
+import utils.ExecutionMode;
+import utils.LockingBoundedQueue;
+import utils.PipelineListener;
+import utils.PipelineRunner;
+import utils.Producer;
+import utils.ThreadLocalBufferSink;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares how the pipeline scales with consumer count under each execution mode.
+ * Run with: java -cp bin benchmarks.ThreadScalingBenchmark [itemsPerConsumer]
+ *
+ * Consumers keep their per-item delay, standing in for I/O-bound work, so throughput
+ * should grow with the number of consumers until thread cost dominates.
+ * LockingBoundedQueue is used so virtual threads are not pinned while blocked.
+ * Virtual-thread runs are skipped on JVMs older than Java 21.
+ */
+public class ThreadScalingBenchmark {
+
+    private static final int PRODUCERS = 4;
+    private static final int MAX_PLATFORM_THREADS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int itemsPerConsumer = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int[] consumerCounts = {10, 100, 1_000, 10_000};
+
+        System.out.println("=== Thread Scaling Benchmark ===");
+        System.out.println("Items per consumer: " + itemsPerConsumer + ", producers: " + PRODUCERS + "\n");
+
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            System.out.println(mode);
+            if (mode == ExecutionMode.VIRTUAL_THREADS && !ExecutionMode.virtualThreadsAvailable()) {
+                System.out.println("  skipped - virtual threads require Java 21 or newer\n");
+                continue;
+            }
+            for (int consumers : consumerCounts) {
+                if (mode != ExecutionMode.VIRTUAL_THREADS && consumers > MAX_PLATFORM_THREADS) {
+                    System.out.printf("  %,7d consumers: skipped (too many platform threads)%n", consumers);
+                    continue;
+                }
+                double itemsPerSec = run(mode, consumers, itemsPerConsumer);
+                System.out.printf("  %,7d consumers: %,12.0f items/sec%n", consumers, itemsPerSec);
+            }
+            System.out.println();
+        }
+    }
+
+    static double run(ExecutionMode mode, int consumers, int itemsPerConsumer) throws InterruptedException {
+        int totalItems = consumers * itemsPerConsumer;
+        List<List<Integer>> sources = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            List<Integer> source = new ArrayList<>();
+            for (int i = p; i < totalItems; i += PRODUCERS) {
+                source.add(i);
+            }
+            sources.add(source);
+        }
+
+        // Per-consumer buffers, so thousands of consumers do not contend on one list
+        ThreadLocalBufferSink<Integer> destination = new ThreadLocalBufferSink<>();
+        PipelineRunner<Integer> pipeline =
+            new PipelineRunner<>(new LockingBoundedQueue<>(1024), sources, consumers, destination)
+                .withExecution(mode, PRODUCERS + consumers)
+                .withListener(PipelineListener.NONE);
+        // Keep producers fast so the consumers' per-item delay is what is measured
+        for (Producer<Integer> producer : pipeline.getProducers()) {
+            producer.withDelay(0);
+        }
+
+        long start = System.nanoTime();
+        pipeline.run();
+        long elapsed = System.nanoTime() - start;
+
+        int received = destination.getItems().size();
+        if (received != totalItems) {
+            throw new IllegalStateException("Expected " + totalItems + " items, got " + received);
+        }
+        return totalItems * 1_000_000_000.0 / elapsed;
+    }
+}
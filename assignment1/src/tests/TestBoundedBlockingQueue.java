@@ -1,24 +1,79 @@
 package tests;
 
+import utils.AdaptiveBoundedQueue;
+import utils.BlockingBuffer;
 import utils.BoundedBlockingQueue;
+import utils.BoundedPriorityQueue;
+import utils.ClosableQueue;
+import utils.ElementCodec;
+import utils.InstrumentedQueue;
+import utils.IntBoundedQueue;
+import utils.LockingBoundedQueue;
+import utils.LongBoundedQueue;
+import utils.MappedFileQueue;
+import utils.MultiLaneQueue;
+import utils.QueueClosedException;
+import utils.QueueMetrics;
+import utils.RingBufferQueue;
+import utils.ShardedQueue;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.function.IntFunction;
 
 public class TestBoundedBlockingQueue {
     
     private static int testsPassed = 0;
     private static int testsFailed = 0;
+    private static final List<Path> tempDirs = new ArrayList<>();
 
     public static void main(String[] args) {
         System.out.println("=== Testing BoundedBlockingQueue ===\n");
         
-        testBasicPutTake();
-        testCapacityLimit();
-        testFIFOOrder();
-        testBlockingWhenFull();
-        testBlockingWhenEmpty();
-        testMultipleThreads();
-        testNullElements();
+        // Every scenario runs against each queue implementation
+        Map<String, IntFunction<BlockingBuffer<Integer>>> queues = queueFactories();
+        
+        for (Map.Entry<String, IntFunction<BlockingBuffer<Integer>>> entry : queues.entrySet()) {
+            String impl = entry.getKey();
+            IntFunction<BlockingBuffer<Integer>> factory = entry.getValue();
+            
+            testBasicPutTake(impl, factory);
+            testCapacityLimit(impl, factory);
+            testFIFOOrder(impl, factory);
+            testBlockingWhenFull(impl, factory);
+            testBlockingWhenEmpty(impl, factory);
+            testMultipleThreads(impl, factory);
+            testNullElements(impl, factory);
+            testCapacityOne(impl, factory);
+            testPutAllAndDrainTo(impl, factory);
+            testPutAllBlocksUntilSpace(impl, factory);
+            testTakeBatch(impl, factory);
+            testOfferPoll(impl, factory);
+            testTimedOfferPoll(impl, factory);
+            testOfferAll(impl, factory);
+            testReleaseWaiters(impl, factory);
+        }
+        
+        testInstrumentedQueueMetrics();
+        testAdaptiveCapacity();
+        testMultiLaneQueue();
+        testBoundedPriorityQueue();
+        testShardedQueue();
+        testIntBoundedQueue();
+        testLongBoundedQueue();
+        testMappedFileQueueRecovery();
+        testClosableQueue();
+        deleteTempDirs();
         
         System.out.println("\n=== Test Results ===");
         System.out.println("Passed: " + testsPassed);
@@ -31,9 +86,33 @@ public class TestBoundedBlockingQueue {
         }
     }
 
-    static void testBasicPutTake() {
+    /**
+     * Returns a factory per queue variant, keyed by a display name. Also used
+     * by {@link TestQueueStress}; call {@link #deleteTempDirs()} afterwards.
+     */
+    static Map<String, IntFunction<BlockingBuffer<Integer>>> queueFactories() {
+        Map<String, IntFunction<BlockingBuffer<Integer>>> queues = new LinkedHashMap<>();
+        queues.put("BoundedBlockingQueue", BoundedBlockingQueue::new);
+        queues.put("RingBufferQueue", RingBufferQueue::new);
+        queues.put("RingBufferQueue-SPSC", capacity -> new RingBufferQueue<>(capacity, true, true));
+        queues.put("LockingBoundedQueue", LockingBoundedQueue::new);
+        queues.put("LockingBoundedQueue-fair", capacity -> new LockingBoundedQueue<>(capacity, true));
+        queues.put("InstrumentedQueue", capacity -> new InstrumentedQueue<>(new LockingBoundedQueue<>(capacity)));
+        queues.put("ClosableQueue", capacity -> new ClosableQueue<>(new LockingBoundedQueue<>(capacity)));
+        // Pinned bounds: the fixed-capacity scenarios must hold while adaptation is inert
+        queues.put("AdaptiveBoundedQueue", capacity -> new AdaptiveBoundedQueue<>(capacity, capacity));
+        // One lane / all-equal priorities: the FIFO scenarios exercise the lane and tie-break paths
+        queues.put("MultiLaneQueue", capacity -> new MultiLaneQueue<>(new int[] {capacity}, new int[] {1}, item -> 0));
+        queues.put("BoundedPriorityQueue", capacity -> new BoundedPriorityQueue<>(capacity, (a, b) -> 0));
+        queues.put("ShardedQueue", capacity -> new ShardedQueue<>(capacity, 4, false));
+        // Tiny segments so the scenarios also cross segment boundaries
+        queues.put("MappedFileQueue", capacity -> openMappedQueue(newTempDir(), capacity));
+        return queues;
+    }
+
+    static void testBasicPutTake(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
         try {
-            BoundedBlockingQueue<Integer> queue = new BoundedBlockingQueue<>(5);
+            BlockingBuffer<Integer> queue = factory.apply(5);
             
             queue.put(1);
             queue.put(2);
@@ -45,15 +124,15 @@ public class TestBoundedBlockingQueue {
             assertEquals("Take should return 3", 3, queue.take());
             assertEquals("Queue should be empty", 0, queue.size());
             
-            pass("testBasicPutTake");
+            pass("testBasicPutTake [" + impl + "]");
         } catch (Exception e) {
-            fail("testBasicPutTake", e);
+            fail("testBasicPutTake [" + impl + "]", e);
         }
     }
 
-    static void testCapacityLimit() {
+    static void testCapacityLimit(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
         try {
-            BoundedBlockingQueue<Integer> queue = new BoundedBlockingQueue<>(3);
+            BlockingBuffer<Integer> queue = factory.apply(3);
             
             queue.put(1);
             queue.put(2);
@@ -62,15 +141,15 @@ public class TestBoundedBlockingQueue {
             assertEquals("Size should be 3", 3, queue.size());
             assertEquals("Remaining capacity should be 0", 0, queue.remainingCapacity());
             
-            pass("testCapacityLimit");
+            pass("testCapacityLimit [" + impl + "]");
         } catch (Exception e) {
-            fail("testCapacityLimit", e);
+            fail("testCapacityLimit [" + impl + "]", e);
         }
     }
 
-    static void testFIFOOrder() {
+    static void testFIFOOrder(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
         try {
-            BoundedBlockingQueue<Integer> queue = new BoundedBlockingQueue<>(5);
+            BlockingBuffer<Integer> queue = factory.apply(5);
             
             for (int i = 1; i <= 5; i++) {
                 queue.put(i);
@@ -80,15 +159,15 @@ public class TestBoundedBlockingQueue {
                 assertEquals("FIFO order", i, queue.take());
             }
             
-            pass("testFIFOOrder");
+            pass("testFIFOOrder [" + impl + "]");
         } catch (Exception e) {
-            fail("testFIFOOrder", e);
+            fail("testFIFOOrder [" + impl + "]", e);
         }
     }
 
-    static void testBlockingWhenFull() {
+    static void testBlockingWhenFull(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
         try {
-            BoundedBlockingQueue<Integer> queue = new BoundedBlockingQueue<>(2);
+            BlockingBuffer<Integer> queue = factory.apply(2);
             
             // Fill the queue
             queue.put(1);
@@ -116,15 +195,15 @@ public class TestBoundedBlockingQueue {
             
             assertFalse("Producer should finish", producer.isAlive());
             
-            pass("testBlockingWhenFull");
+            pass("testBlockingWhenFull [" + impl + "]");
         } catch (Exception e) {
-            fail("testBlockingWhenFull", e);
+            fail("testBlockingWhenFull [" + impl + "]", e);
         }
     }
 
-    static void testBlockingWhenEmpty() {
+    static void testBlockingWhenEmpty(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
         try {
-            BoundedBlockingQueue<Integer> queue = new BoundedBlockingQueue<>(5);
+            BlockingBuffer<Integer> queue = factory.apply(5);
             
             // Try to take from empty queue - should block
             final Integer[] result = {null};
@@ -147,15 +226,15 @@ public class TestBoundedBlockingQueue {
             
             assertEquals("Consumer should get value", 42, result[0]);
             
-            pass("testBlockingWhenEmpty");
+            pass("testBlockingWhenEmpty [" + impl + "]");
         } catch (Exception e) {
-            fail("testBlockingWhenEmpty", e);
+            fail("testBlockingWhenEmpty [" + impl + "]", e);
         }
     }
 
-    static void testMultipleThreads() {
+    static void testMultipleThreads(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
         try {
-            BoundedBlockingQueue<Integer> queue = new BoundedBlockingQueue<>(10);
+            BlockingBuffer<Integer> queue = factory.apply(10);
             List<Integer> consumed = new ArrayList<>();
             
             // Producer thread
@@ -191,15 +270,15 @@ public class TestBoundedBlockingQueue {
             
             assertEquals("All items consumed", 20, consumed.size());
             
-            pass("testMultipleThreads");
+            pass("testMultipleThreads [" + impl + "]");
         } catch (Exception e) {
-            fail("testMultipleThreads", e);
+            fail("testMultipleThreads [" + impl + "]", e);
         }
     }
 
-    static void testNullElements() {
+    static void testNullElements(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
         try {
-            BoundedBlockingQueue<Integer> queue = new BoundedBlockingQueue<>(5);
+            BlockingBuffer<Integer> queue = factory.apply(5);
             
             queue.put(null);
             assertEquals("Size should be 1", 1, queue.size());
@@ -207,9 +286,825 @@ public class TestBoundedBlockingQueue {
             Integer value = queue.take();
             assertEquals("Should get null", null, value);
             
-            pass("testNullElements");
+            pass("testNullElements [" + impl + "]");
+        } catch (Exception e) {
+            fail("testNullElements [" + impl + "]", e);
+        }
+    }
+
+    static void testCapacityOne(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
+        try {
+            BlockingBuffer<Integer> queue = factory.apply(1);
+            queue.put(1);
+            
+            // The second put must wait for the take instead of overwriting item 1
+            Thread producer = new Thread(() -> {
+                try {
+                    queue.put(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producer.start();
+            Thread.sleep(100);
+            assertTrue("Second put should block on a full queue", producer.isAlive());
+            
+            assertEquals("Take should return 1", 1, queue.take());
+            producer.join(1000);
+            assertEquals("Take should return 2", 2, queue.take());
+            assertEquals("Queue should be empty", 0, queue.size());
+            
+            pass("testCapacityOne [" + impl + "]");
         } catch (Exception e) {
-            fail("testNullElements", e);
+            fail("testCapacityOne [" + impl + "]", e);
+        }
+    }
+
+    static void testPutAllAndDrainTo(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
+        try {
+            BlockingBuffer<Integer> queue = factory.apply(5);
+            
+            queue.putAll(Arrays.asList(1, 2, 3, 4));
+            assertEquals("Size after putAll", 4, queue.size());
+            
+            List<Integer> drained = new ArrayList<>();
+            assertEquals("drainTo with zero max", 0, queue.drainTo(drained, 0));
+            assertEquals("drainTo with negative max", 0, queue.drainTo(drained, -1));
+            assertEquals("Nothing drained for max <= 0", 4, queue.size());
+            assertEquals("drainTo respects max", 3, queue.drainTo(drained, 3));
+            assertEquals("Drained in FIFO order", Arrays.asList(1, 2, 3), drained);
+            assertEquals("drainTo takes what is left", 1, queue.drainTo(drained, 10));
+            assertEquals("drainTo on empty queue", 0, queue.drainTo(drained, 10));
+            
+            pass("testPutAllAndDrainTo [" + impl + "]");
+        } catch (Exception e) {
+            fail("testPutAllAndDrainTo [" + impl + "]", e);
+        }
+    }
+
+    static void testPutAllBlocksUntilSpace(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
+        try {
+            BlockingBuffer<Integer> queue = factory.apply(2);
+            List<Integer> source = Arrays.asList(1, 2, 3, 4, 5, 6, 7);
+            
+            // Batch is larger than the queue - producer must wait for the consumer
+            Thread producer = new Thread(() -> {
+                try {
+                    queue.putAll(source);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producer.start();
+            
+            List<Integer> consumed = new ArrayList<>();
+            while (consumed.size() < source.size()) {
+                consumed.addAll(queue.takeBatch(3, 1, TimeUnit.SECONDS));
+            }
+            producer.join(1000);
+            
+            assertEquals("All batch items consumed in order", source, consumed);
+            assertFalse("Producer should finish", producer.isAlive());
+            
+            pass("testPutAllBlocksUntilSpace [" + impl + "]");
+        } catch (Exception e) {
+            fail("testPutAllBlocksUntilSpace [" + impl + "]", e);
+        }
+    }
+
+    static void testTakeBatch(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
+        try {
+            BlockingBuffer<Integer> queue = factory.apply(5);
+            
+            long start = System.nanoTime();
+            List<Integer> empty = queue.takeBatch(4, 50, TimeUnit.MILLISECONDS);
+            long waitedMillis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue("Empty batch on timeout", empty.isEmpty());
+            assertTrue("Waited for the timeout", waitedMillis >= 40);
+            
+            // A blocked takeBatch returns as soon as one item arrives
+            final List<List<Integer>> result = new ArrayList<>();
+            Thread consumer = new Thread(() -> {
+                try {
+                    result.add(queue.takeBatch(4, 5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumer.start();
+            Thread.sleep(50);
+            queue.put(7);
+            consumer.join(1000);
+            assertEquals("Batch with the single item", Arrays.asList(7), result.get(0));
+            
+            queue.putAll(Arrays.asList(1, 2, 3));
+            assertEquals("Batch limited by max", Arrays.asList(1, 2), queue.takeBatch(2, 0, TimeUnit.SECONDS));
+            
+            pass("testTakeBatch [" + impl + "]");
+        } catch (Exception e) {
+            fail("testTakeBatch [" + impl + "]", e);
+        }
+    }
+
+    static void testOfferPoll(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
+        try {
+            BlockingBuffer<Integer> queue = factory.apply(2);
+            
+            assertTrue("offer into empty queue", queue.offer(1));
+            assertTrue("offer into queue with space", queue.offer(2));
+            assertFalse("offer into full queue", queue.offer(3));
+            assertEquals("Rejected offer leaves queue unchanged", 2, queue.size());
+            
+            assertEquals("poll returns head", 1, queue.poll());
+            assertEquals("poll returns next", 2, queue.poll());
+            assertEquals("poll on empty queue", null, queue.poll());
+            
+            pass("testOfferPoll [" + impl + "]");
+        } catch (Exception e) {
+            fail("testOfferPoll [" + impl + "]", e);
+        }
+    }
+
+    static void testTimedOfferPoll(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
+        try {
+            BlockingBuffer<Integer> queue = factory.apply(1);
+            
+            long start = System.nanoTime();
+            assertEquals("Timed poll on empty queue", null, queue.poll(50, TimeUnit.MILLISECONDS));
+            assertTrue("Timed poll waited", (System.nanoTime() - start) / 1_000_000 >= 40);
+            
+            queue.put(1);
+            start = System.nanoTime();
+            assertFalse("Timed offer on full queue", queue.offer(2, 50, TimeUnit.MILLISECONDS));
+            assertTrue("Timed offer waited", (System.nanoTime() - start) / 1_000_000 >= 40);
+            
+            // Space freed by another thread before the deadline
+            Thread consumer = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                    queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumer.start();
+            assertTrue("Timed offer succeeds once space frees", queue.offer(3, 5, TimeUnit.SECONDS));
+            consumer.join(1000);
+            assertEquals("Timed poll returns item", 3, queue.poll(1, TimeUnit.SECONDS));
+            
+            pass("testTimedOfferPoll [" + impl + "]");
+        } catch (Exception e) {
+            fail("testTimedOfferPoll [" + impl + "]", e);
+        }
+    }
+
+    static void testOfferAll(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
+        try {
+            BlockingBuffer<Integer> queue = factory.apply(3);
+            
+            // Only the prefix that fits goes in, without waiting
+            assertEquals("Inserted what fits", 3, queue.offerAll(Arrays.asList(1, 2, 3, 4, 5)));
+            assertEquals("Full queue takes nothing", 0, queue.offerAll(Arrays.asList(4)));
+            assertEquals("Take returns 1", 1, queue.take());
+            assertEquals("One slot freed", 1, queue.offerAll(Arrays.asList(4, 5)));
+            for (int i = 2; i <= 4; i++) {
+                assertEquals("Prefix kept in order", i, queue.take());
+            }
+            assertEquals("Empty list", 0, queue.offerAll(new ArrayList<>()));
+            
+            pass("testOfferAll [" + impl + "]");
+        } catch (Exception e) {
+            fail("testOfferAll [" + impl + "]", e);
+        }
+    }
+
+    static void testReleaseWaiters(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
+        try {
+            BlockingBuffer<Integer> queue = factory.apply(1);
+            if (!queue.canReleaseWaiters()) {
+                pass("testReleaseWaiters [" + impl + "] (not supported)");
+                return;
+            }
+            
+            // A long timed wait ends as soon as waiters are released
+            List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+            Thread consumer = new Thread(() -> {
+                try {
+                    batches.add(queue.takeBatch(4, 10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumer.start();
+            Thread.sleep(50);
+            queue.releaseWaiters();
+            consumer.join(1000);
+            assertFalse("Waiting takeBatch released", consumer.isAlive());
+            assertTrue("Released takeBatch returns empty", batches.size() == 1 && batches.get(0).isEmpty());
+            
+            // Later timed waits return at once; untimed calls and data are unaffected
+            long start = System.nanoTime();
+            assertEquals("Timed poll after release", null, queue.poll(10, TimeUnit.SECONDS));
+            queue.put(1);
+            assertFalse("Timed offer after release", queue.offer(2, 10, TimeUnit.SECONDS));
+            assertTrue("No timed wait after release", (System.nanoTime() - start) / 1_000_000 < 1000);
+            assertEquals("Take still works", 1, queue.take());
+            
+            pass("testReleaseWaiters [" + impl + "]");
+        } catch (Exception e) {
+            fail("testReleaseWaiters [" + impl + "]", e);
+        }
+    }
+
+    static void testInstrumentedQueueMetrics() {
+        try {
+            InstrumentedQueue<Integer> queue = new InstrumentedQueue<>(new LockingBoundedQueue<>(2));
+            QueueMetrics metrics = queue.getMetrics();
+            
+            queue.put(1);
+            assertEquals("High-water mark after one put", 1, metrics.getHighWaterMark());
+            queue.putAll(Arrays.asList(2));
+            assertEquals("Enqueued count", 2L, metrics.getEnqueued());
+            assertEquals("Every enqueue updates the high-water mark", 2, metrics.getHighWaterMark());
+            
+            // Producer blocks on the full queue until the consumer takes
+            Thread consumer = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                    queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumer.start();
+            queue.put(3);
+            consumer.join(1000);
+            assertTrue("Producer blocked time recorded",
+                       metrics.getProducerBlockedNanos() >= TimeUnit.MILLISECONDS.toNanos(40));
+            assertEquals("High-water mark", 2, metrics.getHighWaterMark());
+            
+            List<Integer> drained = new ArrayList<>();
+            queue.drainTo(drained, 10);
+            assertEquals("Drained items", Arrays.asList(2, 3), drained);
+            assertEquals("Dequeued count", 3L, metrics.getDequeued());
+            assertEquals("Time in queue samples", 3L, metrics.getTimeInQueue().getCount());
+            
+            // A short peak between two drains is still caught
+            InstrumentedQueue<Integer> peaked = new InstrumentedQueue<>(new LockingBoundedQueue<>(64));
+            for (int round = 1; round <= 20; round++) {
+                peaked.putAll(Arrays.asList(1, 2));
+                if (round == 7) {
+                    peaked.offer(3);
+                }
+                peaked.drainTo(new ArrayList<>(), 10);
+            }
+            assertEquals("Short peak recorded", 3, peaked.getMetrics().getHighWaterMark());
+            
+            // Consumer blocks on the empty queue until the timeout
+            assertEquals("Timed poll on empty queue", null, queue.poll(50, TimeUnit.MILLISECONDS));
+            assertTrue("Consumer blocked time recorded",
+                       metrics.getConsumerBlockedNanos() >= TimeUnit.MILLISECONDS.toNanos(40));
+            assertTrue("Time in queue includes the wait to be taken",
+                       metrics.getTimeInQueue().getPercentileNanos(100) >= TimeUnit.MILLISECONDS.toNanos(40));
+            
+            // Time spent blocked in put() is not time in queue
+            LockingBoundedQueue<InstrumentedQueue.Stamped<Integer>> inner = new LockingBoundedQueue<>(1);
+            InstrumentedQueue<Integer> blocking = new InstrumentedQueue<>(inner);
+            blocking.put(1);
+            Thread unmetered = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                    inner.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            unmetered.start();
+            blocking.put(2);
+            unmetered.join(1000);
+            assertEquals("Blocked item taken", Integer.valueOf(2), blocking.take());
+            assertTrue("Blocked put not counted as time in queue",
+                       blocking.getMetrics().getTimeInQueue().getPercentileNanos(100) < TimeUnit.MILLISECONDS.toNanos(50));
+            
+            pass("testInstrumentedQueueMetrics");
+        } catch (Exception e) {
+            fail("testInstrumentedQueueMetrics", e);
+        }
+    }
+
+    static void testAdaptiveCapacity() {
+        try {
+            List<String> events = Collections.synchronizedList(new ArrayList<>());
+            AdaptiveBoundedQueue<Integer> queue = new AdaptiveBoundedQueue<Integer>(2, 16, 20, TimeUnit.MILLISECONDS)
+                .withBackpressureListener(new AdaptiveBoundedQueue.BackpressureListener() {
+                    @Override
+                    public void onCapacityChanged(int oldCapacity, int newCapacity) {
+                        events.add(oldCapacity + "->" + newCapacity);
+                    }
+
+                    @Override
+                    public void onPressureChanged(boolean underPressure) {
+                        events.add("pressure=" + underPressure);
+                    }
+                });
+            
+            // With no consumer the producer keeps blocking, so the queue grows to its maximum
+            Thread producer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 17; i++) {
+                        queue.put(i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producer.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!queue.isUnderPressure() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals("Grew to maximum", 16, queue.getCapacity());
+            assertTrue("Backpressure reported at maximum", queue.isUnderPressure());
+            
+            List<Integer> taken = new ArrayList<>();
+            for (int i = 0; i < 17; i++) {
+                taken.add(queue.take());
+            }
+            producer.join(1000);
+            assertEquals("Order kept across resizes", 16, (int) taken.get(16));
+            
+            // An idle consumer keeps re-evaluating, so the queue shrinks back
+            assertEquals("Idle poll", null, queue.poll(300, TimeUnit.MILLISECONDS));
+            assertEquals("Shrunk to minimum", 2, queue.getCapacity());
+            assertFalse("Backpressure released", queue.isUnderPressure());
+            assertEquals("Growth events", Arrays.asList("2->4", "4->8", "8->16", "pressure=true"),
+                         events.subList(0, 4));
+            assertTrue("Shrink and release events",
+                       events.containsAll(Arrays.asList("16->8", "8->4", "4->2", "pressure=false")));
+            
+            pass("testAdaptiveCapacity");
+        } catch (Exception e) {
+            fail("testAdaptiveCapacity", e);
+        }
+    }
+
+    static void testMultiLaneQueue() {
+        try {
+            // Lane 0: urgent (negative) items, weight 3; lane 1: bulk, weight 1
+            MultiLaneQueue<Integer> queue = new MultiLaneQueue<>(
+                new int[] {4, 9}, new int[] {3, 1}, item -> item < 0 ? 0 : 1);
+            assertEquals("Total capacity", 13, queue.getCapacity());
+            
+            for (int i = 1; i <= 8; i++) {
+                queue.put(i);
+            }
+            queue.put(null);
+            assertFalse("Bulk lane full", queue.offer(9));
+            assertTrue("Urgent lane still has space", queue.offer(-1));
+            queue.put(-2);
+            queue.put(-3);
+            
+            List<Integer> taken = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                taken.add(queue.take());
+            }
+            // 3:1 interleaving while both lanes have items, FIFO within a lane,
+            // and the pill only once the other lane is empty
+            assertEquals("Weighted-fair order",
+                         Arrays.asList(-1, -2, 1, -3, 2, 3, 4, 5, 6, 7, 8, null), taken);
+            
+            // Pills in two lanes: the lowest lane's pill goes first
+            MultiLaneQueue<Integer> pills = new MultiLaneQueue<>(
+                new int[] {2, 2}, new int[] {1, 1}, item -> 0);
+            pills.put(0, null);
+            pills.put(1, null);
+            pills.put(0, 5);
+            assertEquals("First pill", null, pills.take());
+            assertEquals("Item behind the first pill", Integer.valueOf(5), pills.take());
+            assertEquals("Second pill", null, pills.take());
+            assertTrue("All pills taken", pills.isEmpty());
+            
+            pass("testMultiLaneQueue");
+        } catch (Exception e) {
+            fail("testMultiLaneQueue", e);
+        }
+    }
+
+    static void testBoundedPriorityQueue() {
+        try {
+            BoundedPriorityQueue<String> queue =
+                new BoundedPriorityQueue<>(6, Comparator.comparingInt(String::length));
+            queue.putAll(Arrays.asList("ccc", "a", null, "bb", "b", "dddd"));
+            assertFalse("Full queue rejects offer", queue.offer("e"));
+            
+            List<String> taken = new ArrayList<>();
+            queue.drainTo(taken, 6);
+            assertEquals("Priority order, ties FIFO, null last",
+                         Arrays.asList("a", "b", "bb", "ccc", "dddd", null), taken);
+            
+            pass("testBoundedPriorityQueue");
+        } catch (Exception e) {
+            fail("testBoundedPriorityQueue", e);
+        }
+    }
+
+    static void testShardedQueue() {
+        try {
+            ShardedQueue<Integer> queue = new ShardedQueue<>(6, 3, false);
+            BlockingBuffer<Integer> shard0 = queue.shard(0);
+            BlockingBuffer<Integer> shard2 = queue.shard(2);
+            
+            // Capacity is global: filling one shard blocks puts to the others
+            shard0.putAll(Arrays.asList(1, 2, 3, 4, 5, 6));
+            assertFalse("Global bound enforced", shard2.offer(7));
+            assertEquals("Remaining capacity", 0, queue.remainingCapacity());
+            
+            // A consumer on an empty shard steals the oldest items of another
+            assertEquals("Stolen item", 1, shard2.take());
+            assertEquals("Stolen batch", Arrays.asList(2, 3), shard2.takeBatch(2, 1, TimeUnit.SECONDS));
+            assertTrue("Space freed", shard2.offer(7));
+            
+            // Ordered mode: the local shard is also taken oldest first
+            assertEquals("Local FIFO", 7, shard2.take());
+            assertEquals("Local FIFO then steal", 4, shard2.take());
+            
+            // A batch larger than the free space goes in as space frees up
+            ShardedQueue<Integer> small = new ShardedQueue<>(4, 2, false);
+            small.putAll(Arrays.asList(1, 2, 3));
+            Thread batchProducer = new Thread(() -> {
+                try {
+                    small.putAll(Arrays.asList(4, 5, 6, 7));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            batchProducer.start();
+            Thread.sleep(50);
+            assertEquals("Free slot filled without waiting for the whole batch", 4, small.size());
+            List<Integer> smallTaken = new ArrayList<>();
+            while (smallTaken.size() < 7) {
+                smallTaken.add(small.take());
+            }
+            batchProducer.join(1000);
+            assertEquals("Batch delivered in order", Arrays.asList(1, 2, 3, 4, 5, 6, 7), smallTaken);
+            
+            // Relaxed mode: every item still delivered exactly once
+            ShardedQueue<Integer> relaxed = new ShardedQueue<>(64, 4, true);
+            List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < 4; p++) {
+                int base = p * 1000;
+                threads.add(new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 500; i++) {
+                            relaxed.put(base + i);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+            }
+            for (int c = 0; c < 4; c++) {
+                BlockingBuffer<Integer> local = relaxed.shard(c);
+                threads.add(new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 500; i++) {
+                            consumed.add(local.take());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join(10000);
+            }
+            List<Integer> sorted = new ArrayList<>(consumed);
+            Collections.sort(sorted);
+            List<Integer> expected = new ArrayList<>();
+            for (int p = 0; p < 4; p++) {
+                for (int i = 0; i < 500; i++) {
+                    expected.add(p * 1000 + i);
+                }
+            }
+            assertEquals("Relaxed mode delivers every item once", expected, sorted);
+            assertTrue("Relaxed queue drained", relaxed.isEmpty());
+            
+            pass("testShardedQueue");
+        } catch (Exception e) {
+            fail("testShardedQueue", e);
+        }
+    }
+
+    static void testIntBoundedQueue() {
+        try {
+            IntBoundedQueue queue = new IntBoundedQueue(4);
+            
+            queue.put(1);
+            queue.put(2);
+            assertEquals("FIFO take", 1, queue.take());
+            assertTrue("Offer with space", queue.offer(3));
+            
+            // Batch wraps around the end of the ring
+            queue.putAll(new int[] {9, 4, 5, 9}, 1, 2);
+            assertFalse("Offer on full queue", queue.offer(6));
+            assertFalse("Timed offer on full queue", queue.offer(6, 20, TimeUnit.MILLISECONDS));
+            
+            int[] buffer = new int[8];
+            assertEquals("takeBatch count", 3, queue.takeBatch(buffer, 1, 3, 1, TimeUnit.SECONDS));
+            assertEquals("takeBatch values", Arrays.toString(new int[] {0, 2, 3, 4, 0, 0, 0, 0}),
+                         Arrays.toString(buffer));
+            assertEquals("drainTo takes the rest", 1, queue.drainTo(buffer, 0, 8));
+            assertEquals("Drained value", 5, buffer[0]);
+            assertEquals("takeBatch times out", 0, queue.takeBatch(buffer, 0, 8, 20, TimeUnit.MILLISECONDS));
+            
+            // Producer blocked on a full queue resumes once space frees
+            IntBoundedQueue small = new IntBoundedQueue(2);
+            int[] source = {1, 2, 3, 4, 5, 6, 7};
+            Thread producer = new Thread(() -> {
+                try {
+                    small.putAll(source, 0, source.length);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producer.start();
+            int[] received = new int[source.length];
+            int n = 0;
+            while (n < source.length) {
+                n += small.takeBatch(received, n, 3, 1, TimeUnit.SECONDS);
+            }
+            producer.join(1000);
+            assertEquals("All values in order", Arrays.toString(source), Arrays.toString(received));
+            
+            pass("testIntBoundedQueue");
+        } catch (Exception e) {
+            fail("testIntBoundedQueue", e);
+        }
+    }
+
+    static void testLongBoundedQueue() {
+        try {
+            LongBoundedQueue queue = new LongBoundedQueue(3);
+            long big = Long.MAX_VALUE - 1;
+            
+            queue.putAll(new long[] {big, 2L, 3L}, 0, 3);
+            assertFalse("Offer on full queue", queue.offer(4L));
+            assertEquals("Full size", 3, queue.size());
+            assertEquals("Values beyond int range", big, queue.take());
+            assertTrue("Offer with space", queue.offer(4L, 1, TimeUnit.SECONDS));
+            
+            long[] buffer = new long[3];
+            assertEquals("drainTo count", 3, queue.drainTo(buffer, 0, 3));
+            assertEquals("Wrapped order", Arrays.toString(new long[] {2L, 3L, 4L}), Arrays.toString(buffer));
+            assertTrue("Empty after drain", queue.isEmpty());
+            
+            pass("testLongBoundedQueue");
+        } catch (Exception e) {
+            fail("testLongBoundedQueue", e);
+        }
+    }
+
+    static void testMappedFileQueueRecovery() {
+        try {
+            Path dir = newTempDir();
+            MappedFileQueue<String> queue = new MappedFileQueue<>(dir, ElementCodec.utf8(), 100, 64);
+            for (int i = 0; i < 20; i++) {
+                queue.put("item-" + i);
+            }
+            queue.put(null);
+            assertTrue("Records spread over several segments", countSegments(dir) > 3);
+            for (int i = 0; i < 12; i++) {
+                assertEquals("Take before restart", "item-" + i, queue.take());
+            }
+            queue.close();
+            
+            // Reopen: only the items not yet taken come back, in order
+            MappedFileQueue<String> reopened = new MappedFileQueue<>(dir, ElementCodec.utf8(), 100, 64);
+            assertEquals("Recovered size", 9, reopened.size());
+            assertEquals("Recovered head", "item-12", reopened.take());
+            reopened.put("after-restart");
+            
+            // Crash: a second instance opened without closing the first;
+            // item-12 was taken, so it is not delivered again (at-most-once)
+            MappedFileQueue<String> recovered = new MappedFileQueue<>(dir, ElementCodec.utf8(), 100, 64);
+            List<String> rest = new ArrayList<>();
+            recovered.drainTo(rest, 100);
+            List<String> expected = new ArrayList<>();
+            for (int i = 13; i < 20; i++) {
+                expected.add("item-" + i);
+            }
+            expected.add(null);
+            expected.add("after-restart");
+            assertEquals("Recovered after crash", expected, rest);
+            assertTrue("Consumed segments deleted", countSegments(dir) <= 2);
+            
+            // A recovered backlog larger than the new capacity is kept
+            for (int i = 0; i < 5; i++) {
+                recovered.put("backlog-" + i);
+            }
+            recovered.close();
+            MappedFileQueue<String> smaller = new MappedFileQueue<>(dir, ElementCodec.utf8(), 3, 64);
+            assertEquals("Backlog kept", 5, smaller.size());
+            assertFalse("Over capacity blocks producers", smaller.offer("x"));
+            smaller.close();
+            
+            try {
+                new MappedFileQueue<>(newTempDir(), ElementCodec.utf8(), 10, 8).put("too long");
+                throw new AssertionError("Oversized record accepted");
+            } catch (IllegalArgumentException expectedException) {
+                // Records must fit in one segment
+            }
+            
+            // Closing wakes a take waiting on the empty queue and a put waiting on the full one
+            MappedFileQueue<String> emptyQueue = new MappedFileQueue<>(newTempDir(), ElementCodec.utf8(), 1, 64);
+            MappedFileQueue<String> fullQueue = new MappedFileQueue<>(newTempDir(), ElementCodec.utf8(), 1, 64);
+            fullQueue.put("only");
+            List<Exception> waitErrors = Collections.synchronizedList(new ArrayList<>());
+            Thread taker = new Thread(() -> {
+                try {
+                    emptyQueue.take();
+                } catch (Exception e) {
+                    waitErrors.add(e);
+                }
+            });
+            Thread putter = new Thread(() -> {
+                try {
+                    fullQueue.put("more");
+                } catch (Exception e) {
+                    waitErrors.add(e);
+                }
+            });
+            taker.start();
+            putter.start();
+            Thread.sleep(50);
+            emptyQueue.close();
+            fullQueue.close();
+            taker.join(1000);
+            putter.join(1000);
+            assertFalse("Waiting take released by close", taker.isAlive());
+            assertFalse("Waiting put released by close", putter.isAlive());
+            assertTrue("Both waits fail with QueueClosedException", waitErrors.size() == 2
+                       && waitErrors.get(0) instanceof QueueClosedException
+                       && waitErrors.get(1) instanceof QueueClosedException);
+            
+            pass("testMappedFileQueueRecovery");
+        } catch (Exception e) {
+            fail("testMappedFileQueueRecovery", e);
+        }
+    }
+
+    static void testClosableQueue() {
+        try {
+            ClosableQueue<Integer> queue = new ClosableQueue<>(new LockingBoundedQueue<>(2));
+            queue.put(1);
+            queue.put(2);
+            
+            // A put waiting for space is rejected by the close
+            List<Exception> producerError = Collections.synchronizedList(new ArrayList<>());
+            Thread producer = new Thread(() -> {
+                try {
+                    queue.put(3);
+                } catch (Exception e) {
+                    producerError.add(e);
+                }
+            });
+            producer.start();
+            Thread.sleep(50);
+            queue.close();
+            producer.join(1000);
+            assertTrue("Blocked put rejected", producerError.size() == 1
+                       && producerError.get(0) instanceof QueueClosedException);
+            assertTrue("Closed", queue.isClosed());
+            assertFalse("Not drained while items remain", queue.isDrained());
+            expectClosed("offer after close", () -> queue.offer(4));
+            expectClosed("put after close", () -> queue.put(4));
+            
+            // Items queued before the close are still delivered, then takes stop waiting
+            assertEquals("Queued item 1", 1, queue.take());
+            assertEquals("Queued batch", Arrays.asList(2), queue.takeBatch(4, 1, TimeUnit.SECONDS));
+            assertTrue("Drained", queue.isDrained());
+            expectClosed("take on drained queue", queue::take);
+            expectClosed("takeBatch on drained queue", () -> queue.takeBatch(4, 1, TimeUnit.SECONDS));
+            assertEquals("Timed poll returns at once", null, queue.poll(1, TimeUnit.SECONDS));
+            
+            // A consumer blocked on an empty queue is released by the close
+            ClosableQueue<Integer> empty = new ClosableQueue<>(new LockingBoundedQueue<>(2));
+            List<Exception> consumerError = Collections.synchronizedList(new ArrayList<>());
+            Thread consumer = new Thread(() -> {
+                try {
+                    empty.take();
+                } catch (Exception e) {
+                    consumerError.add(e);
+                }
+            });
+            consumer.start();
+            Thread.sleep(50);
+            empty.close();
+            consumer.join(1000);
+            assertTrue("Blocked take released", consumerError.size() == 1
+                       && consumerError.get(0) instanceof QueueClosedException);
+            
+            // A batch cut short by the close reports how much of it was queued
+            ClosableQueue<Integer> batched = new ClosableQueue<>(new LockingBoundedQueue<>(3));
+            List<Exception> batchError = Collections.synchronizedList(new ArrayList<>());
+            Thread batchProducer = new Thread(() -> {
+                try {
+                    batched.putAll(Arrays.asList(1, 2, 3, 4, 5));
+                } catch (Exception e) {
+                    batchError.add(e);
+                }
+            });
+            batchProducer.start();
+            Thread.sleep(50);
+            batched.close();
+            batchProducer.join(1000);
+            assertEquals("Accepted part of the batch", 3,
+                         ((QueueClosedException) batchError.get(0)).getItemsAccepted());
+            assertEquals("Accepted items stay queued", 3, batched.size());
+            
+            // Free space elsewhere in the queue does not hide the close: lane 0
+            // is full while lane 1 still has room
+            ClosableQueue<Integer> laned = new ClosableQueue<>(
+                    new MultiLaneQueue<Integer>(new int[] {1, 1}, new int[] {1, 1}, item -> 0));
+            laned.put(1);
+            List<Exception> lanedError = Collections.synchronizedList(new ArrayList<>());
+            Thread lanedProducer = new Thread(() -> {
+                try {
+                    laned.putAll(Arrays.asList(2, 3));
+                } catch (Exception e) {
+                    lanedError.add(e);
+                }
+            });
+            lanedProducer.start();
+            Thread.sleep(50);
+            laned.close();
+            lanedProducer.join(1000);
+            assertFalse("Batch put into a full lane released by close", lanedProducer.isAlive());
+            assertTrue("Batch rejected", lanedError.size() == 1 && lanedError.get(0) instanceof QueueClosedException);
+            
+            // The close woke the wrapped queue, so nobody waits on it in slices
+            long start = System.nanoTime();
+            assertFalse("Wrapped queue released", laned.getDelegate().offer(9, 10, TimeUnit.SECONDS));
+            assertTrue("Released at once", (System.nanoTime() - start) / 1_000_000 < 1000);
+            
+            pass("testClosableQueue");
+        } catch (Exception e) {
+            fail("testClosableQueue", e);
+        }
+    }
+
+    static void expectClosed(String message, QueueCall call) throws InterruptedException {
+        try {
+            call.run();
+            throw new AssertionError(message + " - expected QueueClosedException");
+        } catch (QueueClosedException expected) {
+            // Rejected as expected
+        }
+    }
+
+    @FunctionalInterface
+    interface QueueCall {
+        void run() throws InterruptedException;
+    }
+
+    static MappedFileQueue<Integer> openMappedQueue(Path dir, int capacity) {
+        try {
+            return new MappedFileQueue<>(dir, ElementCodec.integers(), capacity, 64);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Path newTempDir() {
+        try {
+            Path dir = Files.createTempDirectory("mapped-queue");
+            tempDirs.add(dir);
+            return dir;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static long countSegments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).count();
+        }
+    }
+
+    static void deleteTempDirs() {
+        for (Path dir : tempDirs) {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+                Files.deleteIfExists(dir);
+            } catch (IOException e) {
+                System.out.println("Could not delete " + dir + ": " + e.getMessage());
+            }
         }
     }
 
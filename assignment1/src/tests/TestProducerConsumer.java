@@ -1,11 +1,46 @@
 package tests;
+import utils.BlockingBuffer;
 import utils.BoundedBlockingQueue;
+import utils.ClosableQueue;
+import utils.ConcurrentCollectorSink;
+import utils.ExecutionMode;
+import utils.FileSink;
+import utils.InstrumentedQueue;
+import utils.IntBoundedQueue;
+import utils.IntConsumer;
+import utils.IntProducer;
+import utils.LockingBoundedQueue;
+import utils.LongBoundedQueue;
+import utils.LongConsumer;
+import utils.LongProducer;
+import utils.PipelineListener;
+import utils.PipelineRunner;
+import utils.QueueClosedException;
+import utils.QueuePublisher;
+import utils.QueueSubscriber;
+import utils.ReorderBuffer;
+import utils.Sequenced;
 import utils.Producer;
+import utils.ShardedQueue;
+import utils.ShutdownMode;
+import utils.ShutdownReport;
+import utils.Sink;
+import utils.StageStats;
+import utils.StagedPipeline;
+import utils.ThreadLocalBufferSink;
 import utils.Consumer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class TestProducerConsumer {
     
@@ -20,6 +55,17 @@ public class TestProducerConsumer {
         testLargeQueue();
         testEmptySource();
         testLargeDataset();
+        testBatchedWorkflow();
+        testProducerShedsLoad();
+        testPipelineRunnerStopsAllConsumers();
+        testPipelineExecutionModes();
+        testProductionModeWithListener();
+        testSinks();
+        testPrimitivePipeline();
+        testPipelineShutdown();
+        testStagedPipeline();
+        testFlowAdapters();
+        testOrderedParallelConsumption();
         
         System.out.println("\n=== Test Results ===");
         System.out.println("Passed: " + testsPassed);
@@ -153,6 +199,847 @@ public class TestProducerConsumer {
         }
     }
 
+    static void testBatchedWorkflow() {
+        try {
+            List<Integer> source = new ArrayList<>();
+            for (int i = 0; i < 103; i++) {
+                source.add(i);
+            }
+
+            List<Integer> destination = Collections.synchronizedList(new ArrayList<>());
+            BoundedBlockingQueue<Integer> queue = new BoundedBlockingQueue<>(16);
+
+            Producer<Integer> producerTask = new Producer<>(queue, source).withBatchSize(10);
+            Consumer<Integer> consumerTask = new Consumer<>(queue, destination).withBatchSize(8);
+            Thread producer = new Thread(producerTask);
+            Thread consumer = new Thread(consumerTask);
+
+            producer.start();
+            consumer.start();
+
+            producer.join(10000);
+            consumer.join(10000);
+
+            assertEquals("Items match with batching", source, destination);
+            assertEquals("Items produced", 103, producerTask.getItemsProduced());
+            assertTrue("Producer rate reported", producerTask.getItemsPerSecond() > 0);
+            assertTrue("Consumer rate reported", consumerTask.getItemsPerSecond() > 0);
+            
+            pass("testBatchedWorkflow");
+        } catch (Exception e) {
+            fail("testBatchedWorkflow", e);
+        }
+    }
+
+    static void testProducerShedsLoad() {
+        try {
+            List<Integer> source = Arrays.asList(1, 2, 3, 4, 5);
+            List<Integer> dropped = Collections.synchronizedList(new ArrayList<>());
+            BoundedBlockingQueue<Integer> queue = new BoundedBlockingQueue<>(2);
+
+            // No consumer running: the queue fills up and the rest is rejected
+            Producer<Integer> producer = new Producer<>(queue, source)
+                    .withOfferTimeout(20, TimeUnit.MILLISECONDS, dropped::add);
+            Thread producerThread = new Thread(producer);
+            producerThread.start();
+
+            // Drain only after the producer has given up on items 3-5
+            Thread.sleep(500);
+            List<Integer> received = new ArrayList<>();
+            Integer value;
+            while ((value = queue.take()) != null) {
+                received.add(value);
+            }
+            producerThread.join(5000);
+
+            assertEquals("Queued items", Arrays.asList(1, 2), received);
+            assertEquals("Rejected items", Arrays.asList(3, 4, 5), dropped);
+            assertEquals("Rejected count", 3, producer.getItemsRejected());
+            
+            pass("testProducerShedsLoad");
+        } catch (Exception e) {
+            fail("testProducerShedsLoad", e);
+        }
+    }
+
+    static void testPipelineRunnerStopsAllConsumers() {
+        try {
+            List<List<Integer>> sources = new ArrayList<>();
+            List<Integer> expected = new ArrayList<>();
+            for (int p = 0; p < 3; p++) {
+                List<Integer> source = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    source.add(p * 100 + i);
+                }
+                sources.add(source);
+                expected.addAll(source);
+            }
+
+            List<Integer> destination = Collections.synchronizedList(new ArrayList<>());
+            PipelineRunner<Integer> pipeline =
+                new PipelineRunner<>(new BoundedBlockingQueue<>(5), sources, 4, destination);
+
+            Thread runner = new Thread(() -> {
+                try {
+                    pipeline.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            runner.start();
+            runner.join(10000);
+
+            assertTrue("Every consumer terminated", !runner.isAlive());
+            List<Integer> sorted = new ArrayList<>(destination);
+            Collections.sort(sorted);
+            assertEquals("All items consumed exactly once", expected, sorted);
+            assertEquals("Consumer counts add up", 60, pipeline.getItemsConsumed());
+
+            // Consumers attach to the shards of a sharded queue and steal when idle
+            List<Integer> shardedDestination = Collections.synchronizedList(new ArrayList<>());
+            new PipelineRunner<>(new ShardedQueue<Integer>(8, 4, true), sources, 4, shardedDestination)
+                .withProductionMode().run();
+            List<Integer> shardedSorted = new ArrayList<>(shardedDestination);
+            Collections.sort(shardedSorted);
+            assertEquals("Sharded queue pipeline consumed everything", expected, shardedSorted);
+            
+            pass("testPipelineRunnerStopsAllConsumers");
+        } catch (Exception e) {
+            fail("testPipelineRunnerStopsAllConsumers", e);
+        }
+    }
+
+    static void testPipelineExecutionModes() {
+        try {
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                if (mode == ExecutionMode.VIRTUAL_THREADS && !ExecutionMode.virtualThreadsAvailable()) {
+                    continue;
+                }
+                List<Integer> source = Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8);
+                List<Integer> destination = Collections.synchronizedList(new ArrayList<>());
+                PipelineRunner<Integer> pipeline = new PipelineRunner<>(
+                        new LockingBoundedQueue<>(2), Arrays.asList(source), 3, destination)
+                    .withExecution(mode, 4);
+                pipeline.run();
+
+                List<Integer> sorted = new ArrayList<>(destination);
+                Collections.sort(sorted);
+                assertEquals("Items match in mode " + mode, source, sorted);
+            }
+
+            // A pool smaller than producers + consumers would starve blocked tasks
+            PipelineRunner<Integer> tooSmall = new PipelineRunner<>(
+                    new LockingBoundedQueue<>(2), Arrays.asList(Arrays.asList(1)), 3, new ArrayList<>())
+                .withExecution(ExecutionMode.PLATFORM_POOL, 2);
+            boolean rejected = false;
+            try {
+                tooSmall.run();
+            } catch (IllegalStateException expected) {
+                rejected = true;
+            }
+            assertTrue("Undersized pool rejected", rejected);
+            
+            // Virtual threads would pin their carriers in synchronized + wait()
+            PipelineRunner<Integer> pinning = new PipelineRunner<>(
+                    new ClosableQueue<>(new BoundedBlockingQueue<Integer>(2)), Arrays.asList(Arrays.asList(1)), 1,
+                    new ArrayList<>())
+                .withExecution(ExecutionMode.VIRTUAL_THREADS, 0);
+            rejected = false;
+            try {
+                pinning.start();
+            } catch (IllegalStateException expected) {
+                rejected = true;
+            }
+            assertTrue("Virtual threads over BoundedBlockingQueue rejected", rejected);
+            
+            // Decorators do not hide the monitor queue underneath
+            List<BlockingBuffer<Integer>> decorated = Arrays.asList(
+                    new InstrumentedQueue<>(new BoundedBlockingQueue<>(2)),
+                    new ClosableQueue<>(new InstrumentedQueue<>(new BoundedBlockingQueue<>(2))));
+            for (BlockingBuffer<Integer> queue : decorated) {
+                PipelineRunner<Integer> wrapped = new PipelineRunner<>(queue,
+                        Arrays.asList(Arrays.asList(1)), 1, new ArrayList<>())
+                    .withExecution(ExecutionMode.VIRTUAL_THREADS, 0);
+                rejected = false;
+                try {
+                    wrapped.start();
+                } catch (IllegalStateException expected) {
+                    rejected = true;
+                }
+                assertTrue("Virtual threads over a decorated BoundedBlockingQueue rejected", rejected);
+            }
+            
+            pass("testPipelineExecutionModes");
+        } catch (Exception e) {
+            fail("testPipelineExecutionModes", e);
+        }
+    }
+
+    static void testProductionModeWithListener() {
+        try {
+            List<Integer> source = new ArrayList<>();
+            for (int i = 0; i < 100_000; i++) {
+                source.add(i);
+            }
+            List<Integer> destination = Collections.synchronizedList(new ArrayList<>());
+            BoundedBlockingQueue<Integer> queue = new BoundedBlockingQueue<>(64);
+
+            // Lifecycle-only listener: item callbacks must never fire
+            AtomicInteger itemEvents = new AtomicInteger();
+            AtomicInteger lifecycleEvents = new AtomicInteger();
+            PipelineListener listener = new PipelineListener() {
+                public Level getLevel() {
+                    return Level.LIFECYCLE;
+                }
+                public void onProduced(String worker, Object item, BlockingBuffer<?> q) {
+                    itemEvents.incrementAndGet();
+                }
+                public void onConsumed(String worker, Object item, int total, BlockingBuffer<?> q) {
+                    itemEvents.incrementAndGet();
+                }
+                public void onLifecycle(String worker, String message) {
+                    lifecycleEvents.incrementAndGet();
+                }
+            };
+
+            Thread producer = new Thread(new Producer<>(queue, source).withDelay(0).withListener(listener));
+            Thread consumer = new Thread(new Consumer<>(queue, destination).withDelay(0).withListener(listener));
+
+            long start = System.currentTimeMillis();
+            producer.start();
+            consumer.start();
+            producer.join(10000);
+            consumer.join(10000);
+            long elapsed = System.currentTimeMillis() - start;
+
+            assertEquals("Items match without delays", source, destination);
+            assertEquals("No item events at lifecycle level", 0, itemEvents.get());
+            assertEquals("Producer and consumer lifecycle events", 3, lifecycleEvents.get());
+            assertTrue("100k items without delays well under 10s", elapsed < 10000);
+            
+            pass("testProductionModeWithListener");
+        } catch (Exception e) {
+            fail("testProductionModeWithListener", e);
+        }
+    }
+
+    static void testSinks() {
+        try {
+            List<List<Integer>> sources = new ArrayList<>();
+            List<Integer> expected = new ArrayList<>();
+            for (int p = 0; p < 3; p++) {
+                List<Integer> source = new ArrayList<>();
+                for (int i = 0; i < 500; i++) {
+                    source.add(p * 1000 + i);
+                }
+                sources.add(source);
+                expected.addAll(source);
+            }
+
+            ConcurrentCollectorSink<Integer> collector = new ConcurrentCollectorSink<>();
+            new PipelineRunner<>(new LockingBoundedQueue<>(16), sources, 4, collector)
+                .withBatchSize(8).withProductionMode().run();
+            List<Integer> collected = collector.getItems();
+            Collections.sort(collected);
+            assertEquals("Concurrent collector has every item", expected, collected);
+
+            // A small threshold forces merges while consumers are still running
+            ThreadLocalBufferSink<Integer> buffered = new ThreadLocalBufferSink<>(10);
+            new PipelineRunner<>(new LockingBoundedQueue<>(16), sources, 4, buffered)
+                .withBatchSize(8).withProductionMode().run();
+            List<Integer> merged = new ArrayList<>(buffered.getItems());
+            Collections.sort(merged);
+            assertEquals("Thread-local buffers merged", expected, merged);
+
+            Path file = Files.createTempFile("sink", ".txt");
+            try {
+                try (FileSink<Integer> fileSink = new FileSink<>(file)) {
+                    new PipelineRunner<>(new LockingBoundedQueue<>(16), sources, 4, fileSink)
+                        .withProductionMode().run();
+                }
+                List<Integer> written = new ArrayList<>();
+                for (String line : Files.readAllLines(file)) {
+                    written.add(Integer.parseInt(line));
+                }
+                Collections.sort(written);
+                assertEquals("File sink wrote every item", expected, written);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+            
+            pass("testSinks");
+        } catch (Exception e) {
+            fail("testSinks", e);
+        }
+    }
+
+    static void testPrimitivePipeline() {
+        try {
+            // One producer and one consumer, ended by a marker value
+            int[] source = new int[10_000];
+            for (int i = 0; i < source.length; i++) {
+                source[i] = i;
+            }
+            IntBoundedQueue intQueue = new IntBoundedQueue(32);
+            int[] received = new int[source.length];
+            int[] next = {0};
+            IntConsumer intConsumer = new IntConsumer(intQueue, -1, value -> received[next[0]++] = value);
+            Thread consumer = new Thread(intConsumer);
+            Thread producer = new Thread(new IntProducer(intQueue, source, -1).withBatchSize(50));
+            consumer.start();
+            producer.start();
+            producer.join(10000);
+            consumer.join(10000);
+            assertEquals("Int items match", Arrays.toString(source), Arrays.toString(received));
+            assertEquals("Int consumer count", source.length, intConsumer.getItemsConsumed());
+            
+            // Several producers and consumers sharing a completion latch
+            LongBoundedQueue longQueue = new LongBoundedQueue(16);
+            CountDownLatch producersDone = new CountDownLatch(2);
+            AtomicLong sum = new AtomicLong();
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < 2; p++) {
+                long[] ids = new long[1_000];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = (p + 1) * 1_000_000_000_000L + i;
+                }
+                threads.add(new Thread(new LongProducer(longQueue, ids, -1L).withCompletionLatch(producersDone)));
+            }
+            List<LongConsumer> consumers = new ArrayList<>();
+            for (int c = 0; c < 3; c++) {
+                LongConsumer longConsumer = new LongConsumer(longQueue, -1L, sum::addAndGet)
+                    .untilProducersDone(producersDone);
+                consumers.add(longConsumer);
+                threads.add(new Thread(longConsumer));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join(10000);
+            }
+            long expectedSum = 3_000_000_000_000L * 1_000 + 2 * (999L * 1_000 / 2);
+            assertEquals("Long items summed once each", expectedSum, sum.get());
+            int total = 0;
+            for (LongConsumer longConsumer : consumers) {
+                total += longConsumer.getItemsConsumed();
+            }
+            assertEquals("Every long consumer terminated with all items", 2_000, total);
+            assertTrue("Last producer closed the queue", longQueue.isClosed());
+            
+            // A consumer idle on an empty queue is woken by the last producer
+            IntBoundedQueue idleQueue = new IntBoundedQueue(4);
+            CountDownLatch idleDone = new CountDownLatch(1);
+            Thread idleConsumer = new Thread(new IntConsumer(idleQueue, -1, value -> { })
+                    .untilProducersDone(idleDone));
+            idleConsumer.start();
+            Thread.sleep(50);
+            assertTrue("Idle consumer waits while the producer runs", idleConsumer.isAlive());
+            new IntProducer(idleQueue, new int[0], -1).withCompletionLatch(idleDone).run();
+            idleConsumer.join(1000);
+            assertTrue("Idle consumer woken by the close", !idleConsumer.isAlive());
+            boolean rejected = false;
+            try {
+                idleQueue.put(1);
+            } catch (QueueClosedException e) {
+                rejected = true;
+            }
+            assertTrue("Put after close rejected", rejected);
+            
+            pass("testPrimitivePipeline");
+        } catch (Exception e) {
+            fail("testPrimitivePipeline", e);
+        }
+    }
+
+    static void testPipelineShutdown() {
+        try {
+            List<List<Integer>> sources = new ArrayList<>();
+            for (int p = 0; p < 2; p++) {
+                List<Integer> source = new ArrayList<>();
+                for (int i = 0; i < 5000; i++) {
+                    source.add(p * 10000 + i);
+                }
+                sources.add(source);
+            }
+            
+            // Drain: producers stop early, consumers finish everything queued
+            ConcurrentCollectorSink<Integer> drained = new ConcurrentCollectorSink<>();
+            PipelineRunner<Integer> drainRunner = slowConsumerPipeline(sources, drained);
+            drainRunner.start();
+            Thread.sleep(100);
+            drainRunner.shutdown(ShutdownMode.DRAIN);
+            assertTrue("Drain terminated", drainRunner.awaitTermination(10, TimeUnit.SECONDS));
+            ShutdownReport<Integer> drainReport = drainRunner.getReport();
+            assertTrue("Producers stopped early", drainReport.getItemsUnsent() > 0);
+            assertEquals("Nothing left in flight", 0, drainReport.getItemsInFlight());
+            assertTrue("Nothing unprocessed", drainReport.getUnprocessed().isEmpty());
+            assertEquals("Everything produced was consumed", drainReport.getItemsProduced(),
+                         drainReport.getItemsConsumed());
+            assertEquals("Every source item accounted for", 10000,
+                         drainReport.getItemsProduced() + drainReport.getItemsUnsent());
+            assertEquals("No duplicates", drained.size(), new HashSet<>(drained.getItems()).size());
+            assertTrue("Queue closed", ((ClosableQueue<Integer>) drainRunner.getQueue()).isClosed());
+            
+            // Stop now: queued items come back in the report instead of being lost
+            ConcurrentCollectorSink<Integer> stopped = new ConcurrentCollectorSink<>();
+            PipelineRunner<Integer> nowRunner = slowConsumerPipeline(sources, stopped);
+            nowRunner.start();
+            Thread.sleep(100);
+            nowRunner.shutdown(ShutdownMode.NOW);
+            assertTrue("Stop-now terminated", nowRunner.awaitTermination(10, TimeUnit.SECONDS));
+            ShutdownReport<Integer> nowReport = nowRunner.getReport();
+            assertTrue("Queued items returned", !nowReport.getUnprocessed().isEmpty());
+            assertEquals("Nothing left in flight", 0, nowReport.getItemsInFlight());
+            assertEquals("Every source item accounted for", 10000,
+                         nowReport.getItemsConsumed() + nowReport.getUnprocessed().size()
+                         + nowReport.getItemsUnsent());
+            List<Integer> seen = new ArrayList<>(stopped.getItems());
+            seen.addAll(nowReport.getUnprocessed());
+            assertEquals("Consumed and unprocessed are disjoint", seen.size(), new HashSet<>(seen).size());
+            
+            pass("testPipelineShutdown");
+        } catch (Exception e) {
+            fail("testPipelineShutdown", e);
+        }
+    }
+
+    static void testStagedPipeline() {
+        try {
+            List<Integer> source = new ArrayList<>();
+            for (int i = 1; i <= 1000; i++) {
+                source.add(i);
+            }
+            
+            // map -> filter -> batch -> sink, each stage with its own parallelism
+            List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+            StagedPipeline pipeline = StagedPipeline.from(source)
+                .withQueueCapacity(8)
+                .map("double", 3, x -> x * 2)
+                .filter("multiple-of-3", 2, x -> x % 3 == 0)
+                .batch("batch", 1, 10)
+                .to(batches, 2);
+            pipeline.run();
+            
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 1; i <= 1000; i++) {
+                if (i * 2 % 3 == 0) {
+                    expected.add(i * 2);
+                }
+            }
+            List<Integer> flattened = new ArrayList<>();
+            for (List<Integer> batch : batches) {
+                assertTrue("Batch size at most 10", batch.size() <= 10);
+                flattened.addAll(batch);
+            }
+            Collections.sort(flattened);
+            assertEquals("Every item transformed once", expected, flattened);
+            assertEquals("Full batches from a single batch worker", 34, batches.size());
+            
+            List<StageStats> stats = pipeline.getStageStats();
+            assertEquals("Stage count", 5, stats.size());
+            assertEquals("Source out", 1000L, stats.get(0).getItemsOut());
+            assertEquals("Map in", 1000L, stats.get(1).getItemsIn());
+            assertEquals("Map parallelism", 3, stats.get(1).getParallelism());
+            assertEquals("Filter out", (long) expected.size(), stats.get(2).getItemsOut());
+            assertEquals("Sink in", 34L, stats.get(4).getItemsIn());
+            assertTrue("Throughput reported", stats.get(1).getItemsPerSecond() > 0);
+            
+            // The sources and latches are used up, so a second run is refused
+            boolean rerunRejected = false;
+            try {
+                pipeline.run();
+            } catch (IllegalStateException expectedException) {
+                rerunRejected = true;
+            }
+            assertTrue("Second run rejected", rerunRejected);
+            assertEquals("Second run delivered nothing", 34, batches.size());
+            
+            // Fan-out copies to each branch, fan-in merges the branch outputs
+            List<String> tagged = Collections.synchronizedList(new ArrayList<>());
+            StagedPipeline.from(source.subList(0, 100))
+                .<String>fanOut("split", 2,
+                    branch -> branch.filter("even", 1, x -> x % 2 == 0).map("tag-even", 1, x -> "even-" + x),
+                    branch -> branch.filter("odd", 1, x -> x % 2 != 0).map("tag-odd", 2, x -> "odd-" + x))
+                .to(tagged, 1)
+                .run();
+            assertEquals("Every item routed to exactly one branch", 100, tagged.size());
+            assertTrue("Even branch output", tagged.contains("even-42"));
+            assertTrue("Odd branch output", tagged.contains("odd-41"));
+            
+            // The slowest stage is reported as the bottleneck
+            StagedPipeline slow = StagedPipeline.from(source.subList(0, 100))
+                .map("fast", 1, x -> x + 1)
+                .map("slow", 1, x -> {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return x;
+                })
+                .to(new ArrayList<>(), 1);
+            slow.run();
+            assertEquals("Bottleneck", "slow", slow.getBottleneck().getName());
+            
+            // A failing stage stops the whole pipeline instead of hanging it
+            try {
+                StagedPipeline.from(source)
+                    .withQueueCapacity(4)
+                    .map("explode", 1, x -> {
+                        if (x == 500) {
+                            throw new IllegalArgumentException("bad item");
+                        }
+                        return x;
+                    })
+                    .to(new ArrayList<>(), 1)
+                    .run();
+                throw new AssertionError("Stage failure not reported");
+            } catch (IllegalStateException expectedException) {
+                assertEquals("Cause kept", "bad item", expectedException.getCause().getMessage());
+            }
+            
+            // Results a stopped stage could not hand on are counted, not lost
+            StagedPipeline stalled = StagedPipeline.from(source)
+                .withQueueCapacity(4)
+                .map("upstream", 1, x -> x)
+                .map("stall", 1, x -> {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalArgumentException("stalled");
+                })
+                .to(new ArrayList<>(), 1);
+            try {
+                stalled.run();
+                throw new AssertionError("Stage failure not reported");
+            } catch (IllegalStateException expectedException) {
+                // The upstream worker was interrupted while its queue was full
+            }
+            StageStats upstream = stalled.getStageStats().get(1);
+            long deadline = System.currentTimeMillis() + 1000;
+            while (upstream.getItemsDropped() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue("Interrupted put counted as dropped", upstream.getItemsDropped() > 0);
+            assertEquals("Every result sent or dropped", upstream.getItemsIn(),
+                         upstream.getItemsOut() + upstream.getItemsDropped());
+            assertTrue("Drops reported", upstream.toString().contains("dropped="));
+            
+            pass("testStagedPipeline");
+        } catch (Exception e) {
+            fail("testStagedPipeline", e);
+        }
+    }
+
+    static void testFlowAdapters() {
+        try {
+            // Demand-driven delivery: never more than requested, in queue order
+            QueuePublisher<Integer> publisher = new QueuePublisher<>(new LockingBoundedQueue<>(4));
+            List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger overDelivered = new AtomicInteger();
+            CountDownLatch completed = new CountDownLatch(1);
+            publisher.subscribe(new Flow.Subscriber<Integer>() {
+                private Flow.Subscription subscription;
+                private long credit;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    credit = 3;
+                    subscription.request(3);
+                }
+
+                @Override
+                public void onNext(Integer item) {
+                    if (--credit < 0) {
+                        overDelivered.incrementAndGet();
+                    }
+                    received.add(item);
+                    if (credit == 0) {
+                        credit = 3;
+                        subscription.request(3);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    completed.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    completed.countDown();
+                }
+            });
+            for (int i = 0; i < 100; i++) {
+                publisher.put(i);
+            }
+            publisher.close();
+            assertTrue("onComplete after close", completed.await(5, TimeUnit.SECONDS));
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                expected.add(i);
+            }
+            assertEquals("All items in order", expected, received);
+            assertEquals("Demand respected", 0, overDelivered.get());
+            assertEquals("Completed subscription removed", 0, publisher.getSubscriberCount());
+            
+            // Invalid demand is reported through onError
+            QueuePublisher<Integer> strict = new QueuePublisher<>(new LockingBoundedQueue<>(4));
+            List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch failed = new CountDownLatch(1);
+            strict.subscribe(new Flow.Subscriber<Integer>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(0);
+                }
+
+                @Override
+                public void onNext(Integer item) {
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    errors.add(throwable);
+                    failed.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+            assertTrue("onError delivered", failed.await(5, TimeUnit.SECONDS));
+            assertTrue("request(0) rejected", errors.get(0) instanceof IllegalArgumentException);
+            
+            // A throwing onNext cancels the subscriber, which learns of the items lost
+            for (RuntimeException failure : Arrays.asList(new RuntimeException("bad item"), null)) {
+                QueuePublisher<Integer> fragile = new QueuePublisher<>(new LockingBoundedQueue<>(8));
+                for (int i = 0; i < 5; i++) {
+                    fragile.put(i);
+                }
+                List<Throwable> onNextErrors = Collections.synchronizedList(new ArrayList<>());
+                CountDownLatch errored = new CountDownLatch(1);
+                fragile.subscribe(new Flow.Subscriber<Integer>() {
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        subscription.request(10);
+                    }
+
+                    @Override
+                    public void onNext(Integer item) {
+                        if (item == 1) {
+                            if (failure != null) {
+                                throw failure;
+                            }
+                            throw new AssertionError("bad item");
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        onNextErrors.add(throwable);
+                        errored.countDown();
+                    }
+
+                    @Override
+                    public void onComplete() {
+                    }
+                });
+                String kind = failure == null ? "Error" : "RuntimeException";
+                assertTrue("onError after throwing onNext (" + kind + ")", errored.await(5, TimeUnit.SECONDS));
+                assertEquals("Cause kept (" + kind + ")", "bad item", onNextErrors.get(0).getCause().getMessage());
+                assertEquals("Failed item and rest of batch dropped (" + kind + ")", 4L, fragile.getDroppedCount());
+                assertEquals("Failed subscriber removed (" + kind + ")", 0, fragile.getSubscriberCount());
+            }
+            
+            // A subscriber cancelling mid-batch gets nothing more; the rest of the batch is counted
+            QueuePublisher<Integer> cancelling = new QueuePublisher<>(new LockingBoundedQueue<>(8), Runnable::run);
+            for (int i = 0; i < 3; i++) {
+                cancelling.put(i);
+            }
+            List<Integer> beforeCancel = new ArrayList<>();
+            cancelling.subscribe(new Flow.Subscriber<Integer>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(10);
+                }
+
+                @Override
+                public void onNext(Integer item) {
+                    beforeCancel.add(item);
+                    subscription.cancel();
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+            assertEquals("No onNext after cancel", Arrays.asList(0), beforeCancel);
+            assertEquals("Undelivered rest of batch dropped", 2L, cancelling.getDroppedCount());
+            
+            // An interrupted put in onNext cancels the subscriber and counts the lost item
+            LockingBoundedQueue<Integer> filled = new LockingBoundedQueue<>(1);
+            filled.put(0);
+            QueueSubscriber<Integer> interrupted = new QueueSubscriber<>(filled);
+            boolean[] cancelled = {false};
+            interrupted.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled[0] = true;
+                }
+            });
+            Thread.currentThread().interrupt();
+            interrupted.onNext(1);
+            assertTrue("Interrupt restored", Thread.interrupted());
+            assertEquals("Lost item counted", 1L, interrupted.getDroppedCount());
+            assertTrue("Subscription cancelled", cancelled[0]);
+            assertTrue("Failure reported", interrupted.getError() instanceof IllegalStateException);
+            assertEquals("Readers see the end", 0L, interrupted.getCompletionLatch().getCount());
+            
+            // A subscriber queue of capacity 1 keeps requesting
+            QueuePublisher<Integer> single = new QueuePublisher<>(new LockingBoundedQueue<>(4));
+            QueueSubscriber<Integer> singleSubscriber = new QueueSubscriber<>(new LockingBoundedQueue<>(1));
+            single.subscribe(singleSubscriber);
+            List<Integer> singleConsumed = Collections.synchronizedList(new ArrayList<>());
+            Thread singleConsumer = new Thread(new Consumer<>(singleSubscriber.asQueue(), singleConsumed, "Flow-single")
+                .withProductionMode()
+                .untilProducersDone(singleSubscriber.getCompletionLatch()));
+            singleConsumer.start();
+            for (int i = 0; i < 500; i++) {
+                single.put(i);
+            }
+            single.close();
+            singleConsumer.join(5000);
+            assertEquals("Capacity-1 subscriber received everything", 500, singleConsumed.size());
+            
+            // Publisher -> subscriber queue -> blocking Consumer, with two competing subscribers
+            QueuePublisher<Integer> shared = new QueuePublisher<>(new LockingBoundedQueue<>(8));
+            List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+            List<Thread> consumers = new ArrayList<>();
+            for (int c = 0; c < 2; c++) {
+                QueueSubscriber<Integer> subscriber = new QueueSubscriber<>(new LockingBoundedQueue<>(16));
+                shared.subscribe(subscriber);
+                Consumer<Integer> consumer = new Consumer<>(subscriber.asQueue(), consumed, "Flow-" + c)
+                    .withProductionMode()
+                    .untilProducersDone(subscriber.getCompletionLatch());
+                consumers.add(new Thread(consumer));
+            }
+            for (Thread consumer : consumers) {
+                consumer.start();
+            }
+            for (int i = 0; i < 1000; i++) {
+                shared.put(i);
+            }
+            shared.close();
+            for (Thread consumer : consumers) {
+                consumer.join(5000);
+            }
+            List<Integer> sorted = new ArrayList<>(consumed);
+            Collections.sort(sorted);
+            List<Integer> all = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                all.add(i);
+            }
+            assertEquals("Each item delivered to exactly one subscriber", all, sorted);
+            
+            try {
+                shared.put(1);
+                throw new AssertionError("Put after close accepted");
+            } catch (IllegalStateException expectedException) {
+                // Closed publishers reject items
+            }
+            
+            pass("testFlowAdapters");
+        } catch (Exception e) {
+            fail("testFlowAdapters", e);
+        }
+    }
+
+    static void testOrderedParallelConsumption() {
+        try {
+            List<Integer> source = new ArrayList<>();
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                source.add(i);
+                expected.add(i * 2);
+            }
+            
+            List<Integer> destination = Collections.synchronizedList(new ArrayList<>());
+            ReorderBuffer<Integer> reorder = new ReorderBuffer<>(Sink.of(destination), 32);
+            // Uneven per-item work, so consumers finish out of order
+            Sink<Sequenced<Integer>> process = item -> {
+                if (item.getSequence() % 7 == 0) {
+                    Thread.yield();
+                }
+                reorder.accept(item.map(x -> x * 2));
+            };
+            
+            LockingBoundedQueue<Sequenced<Integer>> queue = new LockingBoundedQueue<>(32);
+            CountDownLatch producerDone = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            threads.add(new Thread(Producer.sequenced(queue, source, "Producer")
+                .withProductionMode()
+                .withBatchSize(16)
+                .withCompletionLatch(producerDone)));
+            for (int c = 0; c < 4; c++) {
+                threads.add(new Thread(new Consumer<>(queue, process, "Consumer-" + c)
+                    .withProductionMode()
+                    .withBatchSize(4)
+                    .untilProducersDone(producerDone)));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join(10000);
+            }
+            
+            assertEquals("Source order restored", expected, destination);
+            assertEquals("Everything released", 5000L, reorder.getNextSequence());
+            assertEquals("Nothing left waiting", 0, reorder.getBuffered());
+            assertTrue("Window bounded memory", reorder.getHighWaterMark() <= reorder.getWindow());
+            
+            try {
+                reorder.accept(new Sequenced<>(10, 0));
+                throw new AssertionError("Duplicate sequence accepted");
+            } catch (IllegalArgumentException expectedException) {
+                // Every sequence number may arrive only once
+            }
+            
+            pass("testOrderedParallelConsumption");
+        } catch (Exception e) {
+            fail("testOrderedParallelConsumption", e);
+        }
+    }
+
+    /**
+     * Consumers sleep 1ms per item, so the queue stays full and producers
+     * are still running when the test shuts the pipeline down.
+     */
+    static PipelineRunner<Integer> slowConsumerPipeline(List<List<Integer>> sources,
+                                                        ConcurrentCollectorSink<Integer> sink) {
+        PipelineRunner<Integer> runner = new PipelineRunner<>(
+            new ClosableQueue<>(new LockingBoundedQueue<>(16)), sources, 2, sink).withProductionMode();
+        for (Consumer<Integer> consumer : runner.getConsumers()) {
+            consumer.withDelay(1);
+        }
+        return runner;
+    }
+
     // Helper methods
     static void assertEquals(String message, Object expected, Object actual) {
         if (expected == null ? actual != null : !expected.equals(actual)) {
@@ -0,0 +1,432 @@
+package tests;
+import utils.AdaptiveBoundedQueue;
+import utils.BlockingBuffer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+
+/**
+ * Concurrency stress tests, run against every queue variant of
+ * {@link TestBoundedBlockingQueue#queueFactories()}.
+ *
+ * Random histories: producers and consumers call a random mix of the
+ * blocking, timed, non-blocking and batch operations on a small queue, so
+ * it keeps switching between full and empty. Afterwards every item must
+ * have been taken exactly once, and each consumer must have seen the items
+ * of each producer in the order they were put (per-producer FIFO). A round
+ * that makes no progress for {@link #STALL_MILLIS} fails with a thread dump
+ * and any deadlock the JVM can detect, which catches lost wake-ups too.
+ *
+ * Races: two threads start the same operation together thousands of times,
+ * jcstress style, and every outcome must be one a sequential queue allows.
+ *
+ * Thread scheduling is not reproducible, but the operation mix is: a failed
+ * round prints its seed, which can be passed back as the first argument.
+ */
+public class TestQueueStress {
+
+    private static final int ROUNDS = 3;
+    private static final int PRODUCERS = 3;
+    private static final int CONSUMERS = 3;
+    private static final int ITEMS_PER_PRODUCER = 2000;
+    private static final int RACE_ITERATIONS = 2000;
+    private static final long STALL_MILLIS = 5000;
+    // Variants that allow one producer thread and one consumer thread only
+    private static final Set<String> SINGLE_PRODUCER_CONSUMER = Set.of("RingBufferQueue-SPSC");
+
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        System.out.println("=== Stress Testing Queue Implementations ===\n");
+
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+        System.out.println("Seed: " + seed + "\n");
+
+        Map<String, IntFunction<BlockingBuffer<Integer>>> queues = TestBoundedBlockingQueue.queueFactories();
+        // Starts at capacity 1 and re-evaluates every millisecond, so it grows
+        // and shrinks while producers and consumers race on it
+        queues.put("AdaptiveBoundedQueue-resizing",
+                capacity -> new AdaptiveBoundedQueue<>(1, capacity, 1, TimeUnit.MILLISECONDS));
+        for (Map.Entry<String, IntFunction<BlockingBuffer<Integer>>> entry : queues.entrySet()) {
+            String impl = entry.getKey();
+            IntFunction<BlockingBuffer<Integer>> factory = entry.getValue();
+
+            testRandomHistories(impl, factory, seed);
+            if (!SINGLE_PRODUCER_CONSUMER.contains(impl)) {
+                testOfferRace(impl, factory);
+                testPollRace(impl, factory);
+            }
+        }
+        TestBoundedBlockingQueue.deleteTempDirs();
+
+        System.out.println("\n=== Test Results ===");
+        System.out.println("Passed: " + testsPassed);
+        System.out.println("Failed: " + testsFailed);
+
+        if (testsFailed == 0) {
+            System.out.println("\n✓ ALL TESTS PASSED!");
+        } else {
+            System.out.println("\n✗ SOME TESTS FAILED!");
+        }
+    }
+
+    static void testRandomHistories(String impl, IntFunction<BlockingBuffer<Integer>> factory, long seed) {
+        try {
+            boolean single = SINGLE_PRODUCER_CONSUMER.contains(impl);
+            int producers = single ? 1 : PRODUCERS;
+            int consumers = single ? 1 : CONSUMERS;
+            for (int round = 0; round < ROUNDS; round++) {
+                long roundSeed = seed + 31L * round + impl.hashCode();
+                int capacity = 1 + new Random(roundSeed).nextInt(8);
+                String problem = runHistory(factory.apply(capacity), capacity, producers, consumers, roundSeed);
+                if (problem != null) {
+                    throw new AssertionError(problem + " (seed " + roundSeed + ", capacity " + capacity + ")");
+                }
+            }
+            pass(impl + " - Random Histories (" + producers + "P/" + consumers + "C)");
+        } catch (Exception | AssertionError e) {
+            fail(impl + " - Random Histories", e);
+        }
+    }
+
+    static void testOfferRace(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
+        try {
+            BlockingBuffer<Integer> queue = factory.apply(1);
+            // Two offers into the last free slot: exactly one wins, and its item is the one queued
+            String problem = race(() -> queue.offer(0), () -> queue.offer(1), (first, second) -> {
+                Integer head = queue.poll();
+                if (first == second) {
+                    return "both offers returned " + first;
+                }
+                Integer winner = first ? 0 : 1;
+                if (!winner.equals(head)) {
+                    return "offer " + winner + " won but the queue held " + head;
+                }
+                return queue.isEmpty() ? null : "queue not empty after taking its only item";
+            });
+            assertTrue(problem, problem == null);
+            pass(impl + " - Offer Race");
+        } catch (Exception | AssertionError e) {
+            fail(impl + " - Offer Race", e);
+        }
+    }
+
+    static void testPollRace(String impl, IntFunction<BlockingBuffer<Integer>> factory) {
+        try {
+            BlockingBuffer<Integer> queue = factory.apply(1);
+            queue.put(7);
+            // Two polls for the only item: exactly one gets it
+            String problem = race(() -> queue.poll() != null, () -> queue.poll() != null, (first, second) -> {
+                if (first == second) {
+                    return first ? "both polls took the item" : "neither poll took the item";
+                }
+                if (!queue.isEmpty()) {
+                    return "queue not empty after its only item was taken";
+                }
+                return queue.offer(7) ? null : "offer rejected by an empty queue";
+            });
+            assertTrue(problem, problem == null);
+            pass(impl + " - Poll Race");
+        } catch (Exception | AssertionError e) {
+            fail(impl + " - Poll Race", e);
+        }
+    }
+
+    /**
+     * Runs one random history and returns what went wrong, or null.
+     * Items are numbered {@code producer * ITEMS_PER_PRODUCER + sequence}.
+     */
+    static String runHistory(BlockingBuffer<Integer> queue, int capacity, int producerCount,
+                             int consumerCount, long seed) throws InterruptedException {
+        int total = producerCount * ITEMS_PER_PRODUCER;
+        AtomicLong progress = new AtomicLong();
+        AtomicInteger consumed = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        List<List<Integer>> received = new ArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        List<Thread> consumers = new ArrayList<>();
+        AtomicBoolean stop = new AtomicBoolean();
+
+        for (int p = 0; p < producerCount; p++) {
+            Random random = new Random(seed * 1_000_003 + p);
+            int first = p * ITEMS_PER_PRODUCER;
+            producers.add(new Thread(() -> {
+                try {
+                    int next = first;
+                    while (next < first + ITEMS_PER_PRODUCER) {
+                        switch (random.nextInt(4)) {
+                            case 0:
+                                queue.put(next++);
+                                break;
+                            case 1:
+                                while (!queue.offer(next)) {
+                                    Thread.yield();
+                                }
+                                next++;
+                                break;
+                            case 2:
+                                while (!queue.offer(next, 1, TimeUnit.MILLISECONDS)) {
+                                    progress.incrementAndGet();
+                                }
+                                next++;
+                                break;
+                            default:
+                                List<Integer> chunk = new ArrayList<>();
+                                int size = 1 + random.nextInt(4);
+                                while (chunk.size() < size && next < first + ITEMS_PER_PRODUCER) {
+                                    chunk.add(next++);
+                                }
+                                queue.putAll(chunk);
+                        }
+                        progress.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException | Error e) {
+                    errors.add(e);
+                }
+            }, "Stress-Producer-" + p));
+        }
+
+        for (int c = 0; c < consumerCount; c++) {
+            Random random = new Random(seed * 1_000_033 + c);
+            List<Integer> items = new ArrayList<>();
+            received.add(items);
+            consumers.add(new Thread(() -> {
+                List<Integer> batch = new ArrayList<>();
+                try {
+                    while (!stop.get()) {
+                        batch.clear();
+                        switch (random.nextInt(5)) {
+                            case 0:
+                                batch.add(queue.take());
+                                break;
+                            case 1:
+                                addIfPresent(batch, queue.poll());
+                                break;
+                            case 2:
+                                addIfPresent(batch, queue.poll(1, TimeUnit.MILLISECONDS));
+                                break;
+                            case 3:
+                                queue.drainTo(batch, 1 + random.nextInt(4));
+                                break;
+                            default:
+                                batch.addAll(queue.takeBatch(1 + random.nextInt(4), 1, TimeUnit.MILLISECONDS));
+                        }
+                        items.addAll(batch);
+                        consumed.addAndGet(batch.size());
+                        progress.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    // Interrupted by the runner once every item was taken
+                } catch (RuntimeException | Error e) {
+                    errors.add(e);
+                }
+            }, "Stress-Consumer-" + c));
+        }
+
+        List<Thread> workers = new ArrayList<>(producers);
+        workers.addAll(consumers);
+        workers.forEach(Thread::start);
+
+        String problem = null;
+        long lastProgress = -1;
+        long lastChange = System.nanoTime();
+        while (consumed.get() < total && errors.isEmpty() && problem == null) {
+            Thread.sleep(1);
+            int size = queue.size();
+            if (size < 0 || size > capacity) {
+                problem = "size " + size + " outside 0.." + capacity;
+            }
+            long current = progress.get();
+            if (current != lastProgress) {
+                lastProgress = current;
+                lastChange = System.nanoTime();
+            } else if (System.nanoTime() - lastChange > TimeUnit.MILLISECONDS.toNanos(STALL_MILLIS)) {
+                problem = describeStall(workers, consumed.get(), total);
+            }
+        }
+
+        // Consumers may be blocked in take() on the now empty queue
+        stop.set(true);
+        for (Thread worker : problem == null ? consumers : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            worker.join(1000);
+            if (worker.isAlive() && problem == null) {
+                problem = worker.getName() + " did not stop after an interrupt";
+            }
+        }
+        if (!errors.isEmpty()) {
+            Throwable error = errors.peek();
+            return "worker failed: " + error;
+        }
+        if (problem != null) {
+            return problem;
+        }
+        return checkHistory(received, producerCount, queue);
+    }
+
+    /**
+     * Checks that every item was taken exactly once and that each consumer
+     * saw each producer's items in order.
+     */
+    static String checkHistory(List<List<Integer>> received, int producerCount, BlockingBuffer<Integer> queue) {
+        boolean[] seen = new boolean[producerCount * ITEMS_PER_PRODUCER];
+        for (int c = 0; c < received.size(); c++) {
+            int[] last = new int[producerCount];
+            Arrays.fill(last, -1);
+            for (Integer item : received.get(c)) {
+                if (item == null || item < 0 || item >= seen.length) {
+                    return "consumer " + c + " received unknown item " + item;
+                }
+                if (seen[item]) {
+                    return "item " + describe(item) + " was taken twice";
+                }
+                seen[item] = true;
+                int producer = item / ITEMS_PER_PRODUCER;
+                int sequence = item % ITEMS_PER_PRODUCER;
+                if (sequence <= last[producer]) {
+                    return "consumer " + c + " received " + describe(item)
+                            + " after item " + last[producer] + " of the same producer";
+                }
+                last[producer] = sequence;
+            }
+        }
+        int lost = 0;
+        int firstLost = -1;
+        for (int item = 0; item < seen.length; item++) {
+            if (!seen[item]) {
+                lost++;
+                firstLost = firstLost < 0 ? item : firstLost;
+            }
+        }
+        if (lost > 0) {
+            return lost + " items lost, first " + describe(firstLost);
+        }
+        return queue.isEmpty() ? null : "queue reports size " + queue.size() + " after every item was taken";
+    }
+
+    /**
+     * Prints the stack of every worker and returns a summary, naming the
+     * threads in any deadlock the JVM detects on monitors or locks.
+     */
+    static String describeStall(List<Thread> workers, int consumed, int total) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        StringBuilder summary = new StringBuilder("no progress for " + STALL_MILLIS + "ms after "
+                + consumed + "/" + total + " items");
+        long[] deadlocked = threads.findDeadlockedThreads();
+        if (deadlocked != null) {
+            summary.append(", deadlocked:");
+            for (ThreadInfo info : threads.getThreadInfo(deadlocked)) {
+                summary.append(' ').append(info.getThreadName());
+            }
+        }
+        System.out.println("Thread dump (" + summary + "):");
+        for (Thread worker : workers) {
+            System.out.println("  " + worker.getName() + " " + worker.getState());
+            for (StackTraceElement frame : worker.getStackTrace()) {
+                System.out.println("      at " + frame);
+            }
+        }
+        return summary.toString();
+    }
+
+    @FunctionalInterface
+    interface Actor {
+        boolean act() throws InterruptedException;
+    }
+
+    /**
+     * Runs two actors against each other, jcstress style: both start every
+     * iteration together, and the arbiter checks the pair of outcomes (and
+     * resets the queue) before the next one. Returns the first problem the
+     * arbiter reports, or null.
+     */
+    static String race(Actor first, Actor second, BiFunction<Boolean, Boolean, String> arbiter)
+            throws InterruptedException {
+        boolean[] outcome = new boolean[2];
+        AtomicReference<String> problem = new AtomicReference<>();
+        CyclicBarrier start = new CyclicBarrier(2);
+        // The barrier action runs after both actors arrived and before either continues
+        CyclicBarrier end = new CyclicBarrier(2, () -> {
+            String result = arbiter.apply(outcome[0], outcome[1]);
+            if (result != null) {
+                problem.compareAndSet(null, result);
+            }
+        });
+
+        Actor[] actors = {first, second};
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < 2; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int iteration = 0; iteration < RACE_ITERATIONS && problem.get() == null; iteration++) {
+                        start.await();
+                        outcome[index] = actors[index].act();
+                        end.await();
+                    }
+                } catch (InterruptedException | BrokenBarrierException | RuntimeException e) {
+                    problem.compareAndSet(null, "actor " + index + " failed: " + e);
+                    start.reset();
+                    end.reset();
+                }
+            }, "Race-Actor-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(STALL_MILLIS);
+            if (thread.isAlive()) {
+                problem.compareAndSet(null, thread.getName() + " stalled");
+                thread.interrupt();
+            }
+        }
+        return problem.get();
+    }
+
+    private static void addIfPresent(List<Integer> batch, Integer item) {
+        if (item != null) {
+            batch.add(item);
+        }
+    }
+
+    private static String describe(int item) {
+        return "P" + (item / ITEMS_PER_PRODUCER) + "#" + (item % ITEMS_PER_PRODUCER);
+    }
+
+    static void assertTrue(String message, boolean condition) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static void pass(String testName) {
+        testsPassed++;
+        System.out.println("✓ " + testName + " PASSED");
+    }
+
+    static void fail(String testName, Throwable e) {
+        testsFailed++;
+        System.out.println("✗ " + testName + " FAILED: " + e.getMessage());
+        e.printStackTrace();
+    }
+}
@@ -0,0 +1,522 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded blocking queue whose capacity adapts to the load between a
+ * minimum and a maximum.
+ *
+ * Load is judged over fixed windows (100ms by default):
+ * - if producers spent at least 5% of the window blocked on a full queue,
+ *   the capacity doubles, up to the maximum
+ * - if nobody blocked and occupancy never exceeded a quarter of the
+ *   capacity, it halves, down to the minimum
+ * A burst is therefore absorbed by a larger buffer instead of stalling the
+ * producers, and the memory is given back once the burst is over.
+ *
+ * When producers keep blocking although the maximum has been reached, the
+ * queue reports backpressure through a {@link BackpressureListener}, so the
+ * upstream source can be throttled instead of just piling up blocked threads.
+ *
+ * Locking follows {@link LockingBoundedQueue}; the circular array is
+ * reallocated on each resize.
+ */
+public class AdaptiveBoundedQueue<T> implements BlockingBuffer<T> {
+    private static final long DEFAULT_WINDOW_MILLIS = 100;
+    private static final double GROW_BLOCKED_FRACTION = 0.05;
+    /** The clock is read on one operation in this many (a power of two), plus every wait. */
+    private static final int CLOCK_SAMPLE_RATE = 64;
+
+    /**
+     * Receives capacity and backpressure changes. Callbacks run on the thread
+     * that triggered the change while it holds the queue lock, so they must
+     * be quick and must not call back into the queue.
+     */
+    public interface BackpressureListener {
+        /**
+         * Called after the capacity has changed.
+         *
+         * @param oldCapacity the previous capacity
+         * @param newCapacity the new capacity
+         */
+        default void onCapacityChanged(int oldCapacity, int newCapacity) {
+        }
+
+        /**
+         * Called when backpressure starts (the queue is at its maximum and
+         * producers still block) or stops (a window passed without blocking).
+         *
+         * @param underPressure true if upstream should slow down
+         */
+        default void onPressureChanged(boolean underPressure) {
+        }
+    }
+
+    private final int minCapacity;
+    private final int maxCapacity;
+    private final long windowNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private BackpressureListener listener = new BackpressureListener() { };
+    private Object[] items;
+    private int head;
+    private int tail;
+    private int count;
+    private int operations;
+    private volatile int capacity;
+    private volatile boolean underPressure;
+    /** Set by {@link #releaseWaiters()}; timed waits then end at once. */
+    private boolean waitersReleased;
+
+    // Current window, guarded by the lock
+    private long windowStart;
+    private long accountedAt;
+    private long blockedNanos;
+    private int waitingProducers;
+    private int peakCount;
+
+    /**
+     * Creates a queue adapting between the given bounds, re-evaluated every 100ms.
+     *
+     * @param minCapacity the initial and smallest capacity
+     * @param maxCapacity the largest capacity
+     * @throws IllegalArgumentException if minCapacity <= 0 or maxCapacity < minCapacity
+     */
+    public AdaptiveBoundedQueue(int minCapacity, int maxCapacity) {
+        this(minCapacity, maxCapacity, DEFAULT_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a queue adapting between the given bounds.
+     *
+     * @param minCapacity the initial and smallest capacity
+     * @param maxCapacity the largest capacity
+     * @param window how long load is observed before the capacity is re-evaluated
+     * @param unit the unit of the window
+     * @throws IllegalArgumentException if minCapacity <= 0, maxCapacity < minCapacity
+     *         or the window is not positive
+     */
+    public AdaptiveBoundedQueue(int minCapacity, int maxCapacity, long window, TimeUnit unit) {
+        if (minCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        if (maxCapacity < minCapacity) {
+            throw new IllegalArgumentException("Maximum capacity must not be less than minimum capacity");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window must be greater than 0");
+        }
+        this.minCapacity = minCapacity;
+        this.maxCapacity = maxCapacity;
+        this.windowNanos = unit.toNanos(window);
+        this.items = new Object[minCapacity];
+        this.capacity = minCapacity;
+        this.windowStart = System.nanoTime();
+        this.accountedAt = windowStart;
+    }
+
+    /**
+     * Sets the listener notified of capacity and backpressure changes.
+     *
+     * @param listener the listener
+     * @return this queue
+     */
+    public AdaptiveBoundedQueue<T> withBackpressureListener(BackpressureListener listener) {
+        lock.lock();
+        try {
+            this.listener = listener;
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            tick();
+            while (count == items.length) {
+                awaitNotFull(Long.MAX_VALUE);
+            }
+            enqueue(item);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            tick();
+            while (count == 0) {
+                awaitNotEmpty(Long.MAX_VALUE);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(T item) {
+        lock.lock();
+        try {
+            tick();
+            if (count == items.length) {
+                return false;
+            }
+            enqueue(item);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            tick();
+            while (count == items.length) {
+                if (nanos <= 0 || waitersReleased) {
+                    return false;
+                }
+                nanos = awaitNotFull(nanos);
+            }
+            enqueue(item);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T poll() {
+        lock.lock();
+        try {
+            tick();
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            tick();
+            while (count == 0) {
+                if (nanos <= 0 || waitersReleased) {
+                    return null;
+                }
+                nanos = awaitNotEmpty(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(Collection<? extends T> elements) throws InterruptedException {
+        Iterator<? extends T> it = elements.iterator();
+        lock.lockInterruptibly();
+        try {
+            tick();
+            while (it.hasNext()) {
+                while (count == items.length) {
+                    awaitNotFull(Long.MAX_VALUE);
+                }
+                while (it.hasNext() && count < items.length) {
+                    enqueue(it.next());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int offerAll(List<? extends T> elements) {
+        lock.lock();
+        try {
+            tick();
+            int n = Math.min(elements.size(), items.length - count);
+            for (int i = 0; i < n; i++) {
+                enqueue(elements.get(i));
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxElements) {
+        if (maxElements <= 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            tick();
+            int n = Math.min(maxElements, count);
+            for (int i = 0; i < n; i++) {
+                destination.add(dequeue());
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<T> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        if (maxElements <= 0) {
+            throw new IllegalArgumentException("maxElements must be greater than 0");
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            tick();
+            while (count == 0) {
+                if (nanos <= 0 || waitersReleased) {
+                    return new ArrayList<>();
+                }
+                nanos = awaitNotEmpty(nanos);
+            }
+            int n = Math.min(maxElements, count);
+            List<T> batch = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                batch.add(dequeue());
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean canReleaseWaiters() {
+        return true;
+    }
+
+    @Override
+    public void releaseWaiters() {
+        lock.lock();
+        try {
+            waitersReleased = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for space, at most one window at a time so a queue that stays
+     * full is still re-evaluated (and can grow) while producers wait.
+     * Caller must hold the lock.
+     *
+     * @return the remaining wait budget
+     */
+    private long awaitNotFull(long nanos) throws InterruptedException {
+        long slice = Math.min(nanos, windowNanos);
+        accountBlocked(System.nanoTime());
+        waitingProducers++;
+        try {
+            long left = notFull.awaitNanos(slice);
+            return nanos - (slice - left);
+        } finally {
+            long now = System.nanoTime();
+            accountBlocked(now);
+            waitingProducers--;
+            maybeAdjust(now);
+        }
+    }
+
+    /**
+     * Waits for an element, at most one window at a time so an idle queue
+     * can still shrink. Caller must hold the lock.
+     *
+     * @return the remaining wait budget
+     */
+    private long awaitNotEmpty(long nanos) throws InterruptedException {
+        long slice = Math.min(nanos, windowNanos);
+        try {
+            long left = notEmpty.awaitNanos(slice);
+            return nanos - (slice - left);
+        } finally {
+            maybeAdjust(System.nanoTime());
+        }
+    }
+
+    /**
+     * Adds the time the currently waiting producers have been blocked since
+     * the last call. Caller must hold the lock.
+     */
+    private void accountBlocked(long now) {
+        blockedNanos += waitingProducers * (now - accountedAt);
+        accountedAt = now;
+    }
+
+    /**
+     * Checks the window on a sample of operations so the uncontended path
+     * does not read the clock every time. Caller must hold the lock.
+     */
+    private void tick() {
+        if ((++operations & (CLOCK_SAMPLE_RATE - 1)) == 0) {
+            maybeAdjust(System.nanoTime());
+        }
+    }
+
+    /**
+     * Resizes if the current window is over. Caller must hold the lock.
+     */
+    private void maybeAdjust(long now) {
+        long elapsed = now - windowStart;
+        if (elapsed < windowNanos) {
+            return;
+        }
+        accountBlocked(now);
+        int current = items.length;
+        boolean blocked = blockedNanos >= elapsed * GROW_BLOCKED_FRACTION;
+        if (blocked && current < maxCapacity) {
+            resize((int) Math.min(maxCapacity, current * 2L));
+        } else if (!blocked && peakCount <= current / 4 && current > minCapacity) {
+            resize(Math.max(minCapacity, Math.max(count, current / 2)));
+        }
+        boolean pressure = blocked && current == maxCapacity;
+        if (pressure != underPressure) {
+            underPressure = pressure;
+            listener.onPressureChanged(pressure);
+        }
+        windowStart = now;
+        blockedNanos = 0;
+        peakCount = count;
+    }
+
+    /**
+     * Copies the elements into a new array of the given size, which must be
+     * at least count. Caller must hold the lock.
+     */
+    private void resize(int newCapacity) {
+        int oldCapacity = items.length;
+        Object[] resized = new Object[newCapacity];
+        for (int i = 0; i < count; i++) {
+            resized[i] = items[(head + i) % oldCapacity];
+        }
+        items = resized;
+        head = 0;
+        tail = count == newCapacity ? 0 : count;
+        capacity = newCapacity;
+        if (newCapacity > oldCapacity) {
+            notFull.signalAll();
+        }
+        listener.onCapacityChanged(oldCapacity, newCapacity);
+    }
+
+    /**
+     * Adds an element at the tail and wakes one consumer. Caller must hold the lock.
+     */
+    private void enqueue(T item) {
+        items[tail] = item;
+        if (++tail == items.length) {
+            tail = 0;
+        }
+        count++;
+        if (count > peakCount) {
+            peakCount = count;
+        }
+        notEmpty.signal();
+    }
+
+    /**
+     * Removes the head element and wakes one producer. Caller must hold the lock.
+     */
+    @SuppressWarnings("unchecked")
+    private T dequeue() {
+        T item = (T) items[head];
+        items[head] = null;
+        if (++head == items.length) {
+            head = 0;
+        }
+        count--;
+        notFull.signal();
+        return item;
+    }
+
+    /**
+     * Returns true while the queue is at its maximum capacity and producers
+     * still block, i.e. while upstream should slow down.
+     *
+     * @return the current backpressure state
+     */
+    public boolean isUnderPressure() {
+        return underPressure;
+    }
+
+    /**
+     * Returns the smallest capacity the queue shrinks to.
+     *
+     * @return the minimum capacity
+     */
+    public int getMinCapacity() {
+        return minCapacity;
+    }
+
+    /**
+     * Returns the largest capacity the queue grows to.
+     *
+     * @return the maximum capacity
+     */
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the current capacity, which changes as the queue adapts.
+     *
+     * @return the current capacity
+     */
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return items.length - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package utils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Common contract for the bounded queues used by {@link Producer} and {@link Consumer}.
+ *
+ * Implementations block when:
+ * - put() is called and the buffer is at capacity
+ * - take() is called and the buffer is empty
+ *
+ * Null elements are permitted so that a null "poison pill" can be used to
+ * signal the end of data. Because of that, a null returned from poll()
+ * only means "nothing was available" when the caller never puts nulls.
+ */
+public interface BlockingBuffer<T> {
+
+    /**
+     * Inserts the specified element, waiting if necessary for space to become available.
+     *
+     * @param item the element to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void put(T item) throws InterruptedException;
+
+    /**
+     * Retrieves and removes the head element, waiting if necessary
+     * until an element becomes available.
+     *
+     * @return the head element
+     * @throws InterruptedException if interrupted while waiting
+     */
+    T take() throws InterruptedException;
+
+    /**
+     * Inserts the specified element if space is available right now.
+     *
+     * @param item the element to add
+     * @return true if the element was added, false if the buffer is full
+     */
+    boolean offer(T item);
+
+    /**
+     * Inserts the specified element, waiting up to the given timeout for space.
+     *
+     * @param item the element to add
+     * @param timeout how long to wait for space
+     * @param unit the unit of the timeout
+     * @return true if the element was added, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Retrieves and removes the head element if one is available right now.
+     *
+     * @return the head element, or null if the buffer is empty
+     */
+    T poll();
+
+    /**
+     * Retrieves and removes the head element, waiting up to the given timeout.
+     *
+     * @param timeout how long to wait for an element
+     * @param unit the unit of the timeout
+     * @return the head element, or null if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    T poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Inserts all elements of the collection in iteration order, waiting for
+     * space as needed. Elements are added in as few lock acquisitions as
+     * space allows; the batch as a whole is not atomic with respect to
+     * other producers.
+     *
+     * @param items the elements to add
+     * @throws InterruptedException if interrupted while waiting; elements
+     *         already inserted stay in the buffer
+     */
+    void putAll(Collection<? extends T> items) throws InterruptedException;
+
+    /**
+     * Inserts elements from the start of the list for as long as there is
+     * space right now, without waiting. Unlike {@link #putAll(Collection)},
+     * the caller learns exactly how many went in, so it can wait for space
+     * for the rest in whatever way suits it.
+     *
+     * The default offers the elements one by one; lock-based queues insert
+     * them under a single lock acquisition.
+     *
+     * @param items the elements to add
+     * @return the number of elements inserted, always a prefix of the list
+     */
+    default int offerAll(List<? extends T> items) {
+        int n = 0;
+        while (n < items.size() && offer(items.get(n))) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Removes up to {@code maxElements} available elements without blocking
+     * and adds them to the destination in FIFO order.
+     *
+     * @param destination the collection to transfer elements into
+     * @param maxElements the maximum number of elements to transfer
+     * @return the number of elements transferred
+     */
+    int drainTo(Collection<? super T> destination, int maxElements);
+
+    /**
+     * Waits until at least one element is available, then removes up to
+     * {@code maxElements} elements in FIFO order.
+     *
+     * @param maxElements the maximum number of elements to return
+     * @param timeout how long to wait for the first element
+     * @param unit the unit of the timeout
+     * @return the removed elements; empty if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalArgumentException if maxElements <= 0
+     */
+    List<T> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Returns true if this buffer supports {@link #releaseWaiters()}, so a
+     * caller can wait on it for as long as it likes and still be woken when
+     * it has to stop.
+     *
+     * @return true if releaseWaiters() ends timed waits; false by default
+     */
+    default boolean canReleaseWaiters() {
+        return false;
+    }
+
+    /**
+     * Ends timed waits on this buffer, now and from then on: threads in a
+     * timed offer, timed poll or takeBatch are woken and return as if their
+     * timeout had elapsed, and later timed calls return at once instead of
+     * waiting. Untimed put/take/putAll and non-blocking calls are not
+     * affected. {@link ClosableQueue#close()} uses this to wake the threads
+     * waiting on the queue it wraps. Does nothing unless
+     * {@link #canReleaseWaiters()} returns true.
+     */
+    default void releaseWaiters() {
+    }
+
+    /**
+     * Returns the number of elements currently buffered.
+     *
+     * @return the number of elements
+     */
+    int size();
+
+    /**
+     * Returns true if no elements are currently buffered.
+     *
+     * @return true if empty
+     */
+    boolean isEmpty();
+
+    /**
+     * Returns the maximum capacity of this buffer.
+     *
+     * @return the capacity
+     */
+    int getCapacity();
+
+    /**
+     * Returns the number of additional elements that can be accepted without blocking.
+     *
+     * @return the remaining capacity
+     */
+    int remainingCapacity();
+}
@@ -1,8 +1,13 @@
 
 package utils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A bounded blocking queue implementation using wait/notify mechanism.
@@ -12,9 +17,11 @@ import java.util.Queue;
  * 
  * Thread-safe implementation using synchronized methods and wait/notify.
  */
-public class BoundedBlockingQueue<T> {
+public class BoundedBlockingQueue<T> implements BlockingBuffer<T> {
     private final Queue<T> queue = new LinkedList<>();
     private final int capacity;
+    /** Set by {@link #releaseWaiters()}; timed waits then end at once. */
+    private boolean waitersReleased;
 
     /**
      * Creates a bounded blocking queue with the specified capacity.
@@ -64,6 +71,197 @@ public class BoundedBlockingQueue<T> {
         return item;
     }
 
+    /**
+     * Inserts the specified element if the queue is not full.
+     * 
+     * @param item the element to add
+     * @return true if the element was added, false if the queue is full
+     */
+    public synchronized boolean offer(T item) {
+        if (queue.size() == capacity) {
+            return false;
+        }
+        queue.add(item);
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Inserts the specified element, waiting up to the given timeout for space.
+     * The wait is bounded by a deadline, so spurious wake-ups and lost races
+     * for the freed slot do not extend it.
+     * 
+     * @param item the element to add
+     * @param timeout how long to wait for space
+     * @param unit the unit of the timeout
+     * @return true if the element was added, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + remaining;
+        while (queue.size() == capacity) {
+            if (remaining <= 0 || waitersReleased) {
+                return false;
+            }
+            // Queue is full, wait for space or the deadline
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        queue.add(item);
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue if one is available.
+     * 
+     * @return the head of this queue, or null if the queue is empty
+     */
+    public synchronized T poll() {
+        if (queue.isEmpty()) {
+            return null;
+        }
+        T item = queue.poll();
+        notifyAll();
+        return item;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, waiting up to the
+     * given timeout for an element to become available.
+     * 
+     * @param timeout how long to wait for an element
+     * @param unit the unit of the timeout
+     * @return the head of this queue, or null if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + remaining;
+        while (queue.isEmpty()) {
+            if (remaining <= 0 || waitersReleased) {
+                return null;
+            }
+            // Queue is empty, wait for elements or the deadline
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        T item = queue.poll();
+        notifyAll();
+        return item;
+    }
+
+    /**
+     * Inserts all elements of the collection, waiting for space as needed.
+     * Each time the monitor is held, as many elements as fit are added and
+     * waiting threads are notified once for the whole chunk.
+     * 
+     * @param items the elements to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void putAll(Collection<? extends T> items) throws InterruptedException {
+        Iterator<? extends T> it = items.iterator();
+        while (it.hasNext()) {
+            while (queue.size() == capacity) {
+                // Queue is full, wait for space
+                wait();
+            }
+            while (it.hasNext() && queue.size() < capacity) {
+                queue.add(it.next());
+            }
+            // Notify waiting consumers once per chunk
+            notifyAll();
+        }
+    }
+
+    /**
+     * Inserts as many elements as fit right now in one monitor acquisition.
+     * 
+     * @param items the elements to add
+     * @return the number of elements inserted
+     */
+    public synchronized int offerAll(List<? extends T> items) {
+        int n = Math.min(items.size(), capacity - queue.size());
+        for (int i = 0; i < n; i++) {
+            queue.add(items.get(i));
+        }
+        if (n > 0) {
+            notifyAll();
+        }
+        return n;
+    }
+
+    /**
+     * Removes up to maxElements available elements without blocking and
+     * adds them to the destination.
+     * 
+     * @param destination the collection to transfer elements into
+     * @param maxElements the maximum number of elements to transfer
+     * @return the number of elements transferred
+     */
+    public synchronized int drainTo(Collection<? super T> destination, int maxElements) {
+        if (maxElements <= 0) {
+            return 0;
+        }
+        int count = Math.min(maxElements, queue.size());
+        for (int i = 0; i < count; i++) {
+            destination.add(queue.poll());
+        }
+        if (count > 0) {
+            // Notify waiting producers once for the whole batch
+            notifyAll();
+        }
+        return count;
+    }
+
+    /**
+     * Waits up to the given timeout for at least one element, then removes
+     * up to maxElements elements in a single monitor acquisition.
+     * 
+     * @param maxElements the maximum number of elements to return
+     * @param timeout how long to wait for the first element
+     * @param unit the unit of the timeout
+     * @return the removed elements; empty if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized List<T> takeBatch(int maxElements, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (maxElements <= 0) {
+            throw new IllegalArgumentException("maxElements must be greater than 0");
+        }
+        long remaining = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + remaining;
+        while (queue.isEmpty()) {
+            if (remaining <= 0 || waitersReleased) {
+                return new ArrayList<>();
+            }
+            // Queue is empty, wait for elements or the deadline
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        List<T> batch = new ArrayList<>(Math.min(maxElements, queue.size()));
+        drainTo(batch, maxElements);
+        return batch;
+    }
+
+    /**
+     * Returns true: timed waits can be ended by {@link #releaseWaiters()}.
+     * 
+     * @return true
+     */
+    public boolean canReleaseWaiters() {
+        return true;
+    }
+
+    /**
+     * Ends timed waits now and from then on; see {@link BlockingBuffer#releaseWaiters()}.
+     */
+    public synchronized void releaseWaiters() {
+        waitersReleased = true;
+        notifyAll();
+    }
+
     /**
      * Returns the number of elements currently in this queue.
      * 
@@ -0,0 +1,310 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded blocking queue that hands out the highest-priority element first.
+ *
+ * Elements are kept in a binary heap in a preallocated array, so put and
+ * take are O(log n). The comparator orders elements ascending, like
+ * {@link java.util.PriorityQueue}: the smallest element is taken first.
+ * Elements that compare equal come out in insertion order, and null (the
+ * poison pill) sorts after every element. Locking follows
+ * {@link LockingBoundedQueue}.
+ */
+public class BoundedPriorityQueue<T> implements BlockingBuffer<T> {
+    private final Object[] heap;
+    private final long[] sequence;
+    private final Comparator<? super T> comparator;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int count;
+    private long nextSequence;
+    /** Set by {@link #releaseWaiters()}; timed waits then end at once. */
+    private boolean waitersReleased;
+
+    /**
+     * Creates a queue with the specified capacity and ordering.
+     *
+     * @param capacity the maximum number of elements the queue can hold
+     * @param comparator orders elements; the smallest is taken first
+     * @throws IllegalArgumentException if capacity <= 0
+     */
+    public BoundedPriorityQueue(int capacity, Comparator<? super T> comparator) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        this.heap = new Object[capacity];
+        this.sequence = new long[capacity];
+        this.comparator = Comparator.nullsLast(comparator);
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == heap.length) {
+                notFull.await();
+            }
+            enqueue(item);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(T item) {
+        lock.lock();
+        try {
+            if (count == heap.length) {
+                return false;
+            }
+            enqueue(item);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == heap.length) {
+                if (nanos <= 0 || waitersReleased) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(item);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0 || waitersReleased) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(Collection<? extends T> elements) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            for (T item : elements) {
+                while (count == heap.length) {
+                    notFull.await();
+                }
+                enqueue(item);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int offerAll(List<? extends T> elements) {
+        lock.lock();
+        try {
+            int n = Math.min(elements.size(), heap.length - count);
+            for (int i = 0; i < n; i++) {
+                enqueue(elements.get(i));
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxElements) {
+        if (maxElements <= 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            int n = Math.min(maxElements, count);
+            for (int i = 0; i < n; i++) {
+                destination.add(dequeue());
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<T> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        if (maxElements <= 0) {
+            throw new IllegalArgumentException("maxElements must be greater than 0");
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0 || waitersReleased) {
+                    return new ArrayList<>();
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            int n = Math.min(maxElements, count);
+            List<T> batch = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                batch.add(dequeue());
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean canReleaseWaiters() {
+        return true;
+    }
+
+    @Override
+    public void releaseWaiters() {
+        lock.lock();
+        try {
+            waitersReleased = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an element to the heap and wakes one consumer. Caller must hold the lock.
+     */
+    private void enqueue(T item) {
+        int child = count++;
+        long seq = nextSequence++;
+        // Sift up: move larger parents down until the item's slot is found
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (compare(item, seq, parent) >= 0) {
+                break;
+            }
+            heap[child] = heap[parent];
+            sequence[child] = sequence[parent];
+            child = parent;
+        }
+        heap[child] = item;
+        sequence[child] = seq;
+        notEmpty.signal();
+    }
+
+    /**
+     * Removes the smallest element and wakes one producer. Caller must hold the lock.
+     */
+    @SuppressWarnings("unchecked")
+    private T dequeue() {
+        T result = (T) heap[0];
+        int last = --count;
+        T item = (T) heap[last];
+        long seq = sequence[last];
+        heap[last] = null;
+        // Sift down: move the last element from the root to its slot
+        int parent = 0;
+        int half = last >>> 1;
+        while (parent < half) {
+            int child = 2 * parent + 1;
+            int right = child + 1;
+            if (right < last && compare(heap[right], sequence[right], child) < 0) {
+                child = right;
+            }
+            if (compare(item, seq, child) <= 0) {
+                break;
+            }
+            heap[parent] = heap[child];
+            sequence[parent] = sequence[child];
+            parent = child;
+        }
+        if (last > 0) {
+            heap[parent] = item;
+            sequence[parent] = seq;
+        }
+        notFull.signal();
+        return result;
+    }
+
+    /**
+     * Compares an element with the one in a heap slot, breaking ties by insertion order.
+     */
+    @SuppressWarnings("unchecked")
+    private int compare(Object item, long seq, int slot) {
+        int order = comparator.compare((T) item, (T) heap[slot]);
+        return order != 0 ? order : Long.compare(seq, sequence[slot]);
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int getCapacity() {
+        return heap.length;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return heap.length - size();
+    }
+}
@@ -0,0 +1,326 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decorator that adds a close lifecycle to any {@link BlockingBuffer}.
+ *
+ * After {@link #close()}:
+ * - put/offer/putAll throw {@link QueueClosedException}; puts still
+ *   waiting for space are rejected at their next check
+ * - items queued before the close can still be taken
+ * - once the queue is also empty, blocking takes (take, timed poll,
+ *   takeBatch) throw {@link QueueClosedException} instead of waiting, so
+ *   consumers see a clean end of data without poison pills
+ *
+ * "Closed and empty" only counts once every put that started before the
+ * close has finished, so an item racing with close() is either rejected or
+ * delivered, never stranded.
+ *
+ * close() wakes threads waiting on the wrapped queue through
+ * {@link BlockingBuffer#releaseWaiters()}, so when the wrapped queue
+ * supports it (every queue in this package does) blocking calls wait on it
+ * for their full timeout and still notice a close at once. The release is
+ * permanent: timed waits made directly on the wrapped queue after the close
+ * return at once too. A wrapped queue without that support is waited on in
+ * short slices, re-checking the closed flag in between, which bounds how
+ * long a waiting thread takes to notice a close.
+ *
+ * Usage: {@code new ClosableQueue<Integer>(new LockingBoundedQueue<>(16))}
+ */
+public class ClosableQueue<T> implements BlockingBuffer<T> {
+    /** Wait slice for a wrapped queue that cannot release its waiters. */
+    private static final long CLOSE_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final BlockingBuffer<T> delegate;
+    private final AtomicInteger activePuts = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * Wraps the given queue.
+     *
+     * @param delegate the queue that stores the elements
+     */
+    public ClosableQueue(BlockingBuffer<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Stops accepting new elements and wakes the threads waiting in a put or
+     * take. Elements already queued stay available to consumers. Calling
+     * close() again has no effect.
+     */
+    public void close() {
+        closed = true;
+        delegate.releaseWaiters();
+    }
+
+    /**
+     * Returns true once {@link #close()} has been called.
+     *
+     * @return true if the queue rejects new elements
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns true once the queue is closed, every in-progress put has
+     * finished and no elements are left, i.e. nothing more will ever be taken.
+     *
+     * @return true if the queue is closed and drained
+     */
+    public boolean isDrained() {
+        return closed && activePuts.get() == 0 && delegate.isEmpty();
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        beginPut();
+        try {
+            while (!delegate.offer(item, waitNanos(Long.MAX_VALUE), TimeUnit.NANOSECONDS)) {
+                checkOpen();
+            }
+        } finally {
+            activePuts.decrementAndGet();
+        }
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        while (true) {
+            List<T> one = delegate.takeBatch(1, waitNanos(Long.MAX_VALUE), TimeUnit.NANOSECONDS);
+            if (!one.isEmpty()) {
+                return one.get(0);
+            }
+            checkNotDrained();
+            awaitPutsAfterClose();
+        }
+    }
+
+    @Override
+    public boolean offer(T item) {
+        beginPut();
+        try {
+            return delegate.offer(item);
+        } finally {
+            activePuts.decrementAndGet();
+        }
+    }
+
+    @Override
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        beginPut();
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if (delegate.offer(item, waitNanos(remaining), TimeUnit.NANOSECONDS)) {
+                    return true;
+                }
+                checkOpen();
+                if (deadline - System.nanoTime() <= 0) {
+                    return false;
+                }
+            }
+        } finally {
+            activePuts.decrementAndGet();
+        }
+    }
+
+    @Override
+    public T poll() {
+        return delegate.poll();
+    }
+
+    /**
+     * Retrieves and removes the head element, waiting up to the given timeout.
+     * Returns null without waiting once the queue is closed and drained.
+     *
+     * @param timeout how long to wait for an element
+     * @param unit the unit of the timeout
+     * @return the head element, or null if none arrived in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        List<T> one = takeBatch(1, timeout, unit, false);
+        return one.isEmpty() ? null : one.get(0);
+    }
+
+    /**
+     * Inserts all elements in order. Whatever fits goes in with one
+     * {@link BlockingBuffer#offerAll(List)} of the wrapped queue; while it is
+     * full, the next element waits for space with a timed offer, which a
+     * close ends as in {@link #put(Object)}. On close the elements not yet
+     * inserted are rejected and those already inserted stay queued (their
+     * count is reported by {@link QueueClosedException#getItemsAccepted()}).
+     *
+     * @param items the elements to add
+     * @throws InterruptedException if interrupted while waiting
+     * @throws QueueClosedException if the queue is or becomes closed
+     */
+    @Override
+    public void putAll(Collection<? extends T> items) throws InterruptedException {
+        List<? extends T> list = items instanceof List && items instanceof RandomAccess
+                ? (List<? extends T>) items : new ArrayList<>(items);
+        beginPut();
+        try {
+            int accepted = 0;
+            while (accepted < list.size()) {
+                if (closed) {
+                    throw new QueueClosedException("Queue is closed", accepted);
+                }
+                int n = delegate.offerAll(list.subList(accepted, list.size()));
+                if (n > 0) {
+                    accepted += n;
+                } else if (delegate.offer(list.get(accepted), waitNanos(Long.MAX_VALUE), TimeUnit.NANOSECONDS)) {
+                    accepted++;
+                }
+            }
+        } finally {
+            activePuts.decrementAndGet();
+        }
+    }
+
+    /**
+     * Inserts as many elements as fit right now.
+     *
+     * @param items the elements to add
+     * @return the number of elements inserted
+     * @throws QueueClosedException if the queue is closed
+     */
+    @Override
+    public int offerAll(List<? extends T> items) {
+        beginPut();
+        try {
+            return delegate.offerAll(items);
+        } finally {
+            activePuts.decrementAndGet();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxElements) {
+        return delegate.drainTo(destination, maxElements);
+    }
+
+    /**
+     * Waits up to the given timeout for at least one element, then removes
+     * up to maxElements elements.
+     *
+     * @param maxElements the maximum number of elements to return
+     * @param timeout how long to wait for the first element
+     * @param unit the unit of the timeout
+     * @return the removed elements; empty if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     * @throws QueueClosedException if the queue is closed and drained
+     */
+    @Override
+    public List<T> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        return takeBatch(maxElements, timeout, unit, true);
+    }
+
+    private List<T> takeBatch(int maxElements, long timeout, TimeUnit unit, boolean throwIfDrained)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            List<T> batch = delegate.takeBatch(maxElements, waitNanos(remaining), TimeUnit.NANOSECONDS);
+            if (!batch.isEmpty()) {
+                return batch;
+            }
+            if (isDrained()) {
+                if (throwIfDrained) {
+                    throw new QueueClosedException("Queue is closed and empty");
+                }
+                return batch;
+            }
+            if (deadline - System.nanoTime() <= 0) {
+                return batch;
+            }
+            awaitPutsAfterClose();
+        }
+    }
+
+    /**
+     * Returns how long one wait on the wrapped queue may last: all of the
+     * remaining time if close() can wake it, one slice otherwise.
+     */
+    private long waitNanos(long remaining) {
+        if (remaining <= 0) {
+            return 0;
+        }
+        return delegate.canReleaseWaiters() ? remaining : Math.min(remaining, CLOSE_CHECK_NANOS);
+    }
+
+    /**
+     * Once closed, waits on the released wrapped queue return at once, so a
+     * consumer that finds it empty while puts from before the close are
+     * still finishing spins politely until they do.
+     */
+    private void awaitPutsAfterClose() {
+        if (closed) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Registers an in-progress put, or rejects it if the queue is closed.
+     * The count is raised before the flag is read, so a consumer that sees
+     * "closed and no active puts" can be sure no element is still on its way.
+     */
+    private void beginPut() {
+        activePuts.incrementAndGet();
+        if (closed) {
+            activePuts.decrementAndGet();
+            throw new QueueClosedException("Queue is closed");
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new QueueClosedException("Queue is closed");
+        }
+    }
+
+    private void checkNotDrained() {
+        if (isDrained()) {
+            throw new QueueClosedException("Queue is closed and empty");
+        }
+    }
+
+    /**
+     * Returns the wrapped queue.
+     *
+     * @return the queue that stores the elements
+     */
+    public BlockingBuffer<T> getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public int getCapacity() {
+        return delegate.getCapacity();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return delegate.remainingCapacity();
+    }
+}
@@ -0,0 +1,47 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Lock-free sink that any number of consumers can add to at once.
+ *
+ * Items are appended to a {@link ConcurrentLinkedQueue} with a CAS each, so
+ * consumers never block one another. Items from one consumer keep their
+ * order; items from different consumers interleave.
+ */
+public class ConcurrentCollectorSink<T> implements Sink<T> {
+    // ConcurrentLinkedQueue rejects null, so null items are stored as this marker
+    private static final Object NULL = new Object();
+
+    private final ConcurrentLinkedQueue<Object> items = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void accept(T item) {
+        items.add(item == null ? NULL : item);
+    }
+
+    /**
+     * Returns a snapshot of the collected items.
+     *
+     * @return a new list with the items collected so far
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getItems() {
+        List<T> result = new ArrayList<>();
+        for (Object item : items) {
+            result.add(item == NULL ? null : (T) item);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of collected items. This walks the whole queue.
+     *
+     * @return the number of items collected so far
+     */
+    public int size() {
+        return items.size();
+    }
+}
@@ -0,0 +1,100 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PipelineListener} that prints events to the console.
+ *
+ * At {@link Level#ITEM} every item is printed, which is what the demo uses
+ * to show the threads interleaving. A sample rate above 1 prints only every
+ * n-th item event so the log stays readable at high throughput.
+ */
+public class ConsoleListener implements PipelineListener {
+    private final Level level;
+    private final int sampleEvery;
+    private final AtomicLong itemEvents = new AtomicLong();
+
+    /**
+     * Creates a listener printing every event up to the given level.
+     *
+     * @param level the most detailed level to print
+     */
+    public ConsoleListener(Level level) {
+        this(level, 1);
+    }
+
+    /**
+     * Creates a listener printing every n-th item event and all lifecycle events.
+     *
+     * @param level the most detailed level to print
+     * @param sampleEvery print one item event out of this many, must be > 0
+     * @throws IllegalArgumentException if sampleEvery <= 0
+     */
+    public ConsoleListener(Level level, int sampleEvery) {
+        if (sampleEvery <= 0) {
+            throw new IllegalArgumentException("Sample rate must be greater than 0");
+        }
+        this.level = level;
+        this.sampleEvery = sampleEvery;
+    }
+
+    @Override
+    public Level getLevel() {
+        return level;
+    }
+
+    @Override
+    public void onProduced(String worker, Object item, BlockingBuffer<?> queue) {
+        if (sampled()) {
+            System.out.println(worker + " produced: " + item +
+                             " (Queue size: " + queue.size() + "/" + queue.getCapacity() + ")");
+        }
+    }
+
+    @Override
+    public void onProducedBatch(String worker, int count, BlockingBuffer<?> queue) {
+        if (sampled()) {
+            System.out.println(worker + " produced batch of " + count +
+                             " (Queue size: " + queue.size() + "/" + queue.getCapacity() + ")");
+        }
+    }
+
+    @Override
+    public void onDropped(String worker, Object item) {
+        if (sampled()) {
+            System.out.println(worker + " dropped: " + item + " (queue full)");
+        }
+    }
+
+    @Override
+    public void onConsumed(String worker, Object item, int totalConsumed, BlockingBuffer<?> queue) {
+        if (sampled()) {
+            System.out.println(worker + " consumed: " + item +
+                             " (Queue size: " + queue.size() + "/" + queue.getCapacity() +
+                             ", Total consumed: " + totalConsumed + ")");
+        }
+    }
+
+    @Override
+    public void onConsumedBatch(String worker, int count, int totalConsumed, BlockingBuffer<?> queue) {
+        if (sampled()) {
+            System.out.println(worker + " consumed batch of " + count +
+                             " (Queue size: " + queue.size() + "/" + queue.getCapacity() +
+                             ", Total consumed: " + totalConsumed + ")");
+        }
+    }
+
+    @Override
+    public void onLifecycle(String worker, String message) {
+        System.out.println(worker + " " + message);
+    }
+
+    @Override
+    public void onInterrupted(String worker) {
+        System.err.println(worker + " was interrupted");
+    }
+
+    private boolean sampled() {
+        return sampleEvery == 1 || itemEvents.getAndIncrement() % sampleEvery == 0;
+    }
+}
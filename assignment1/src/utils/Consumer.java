@@ -1,68 +1,312 @@
 package utils;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Consumer that takes items from a bounded queue and adds them to a destination list.
- * Stops when it receives a null "poison pill" from the producer.
+ * Consumer that takes items from a bounded queue and hands them to a {@link Sink}
+ * (a destination list is adapted with {@link Sink#of(List)}).
+ * Stops when it receives a null "poison pill" from the producer, or - when
+ * attached to a producer completion latch - once every producer has finished
+ * and the queue is empty. A consumer of a {@link ClosableQueue} also stops
+ * once the queue is closed and drained, and {@link #stop()} stops it after
+ * the item (or batch) it is handling.
  */
 public class Consumer<T> implements Runnable {
-    private final BoundedBlockingQueue<T> queue;
-    private final List<T> destination;
+    private static final long BATCH_WAIT_MILLIS = 100;
+    private static final long COMPLETION_CHECK_MILLIS = 10;
+
+    private final BlockingBuffer<T> queue;
+    private final Sink<? super T> sink;
     private final String name;
-    private int itemsConsumed = 0;
+    private int batchSize = 1;
+    private CountDownLatch producersDone;
+    private long delayMillis = 15;
+    private PipelineListener listener = new ConsoleListener(PipelineListener.Level.ITEM);
+    private volatile int itemsConsumed = 0;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile boolean stopRequested;
 
     /**
      * Creates a new Consumer.
      * 
-     * @param queue the bounded blocking queue to consume items from
+     * @param queue the bounded queue to consume items from
      * @param destination the destination list to add consumed items to
      */
-    public Consumer(BoundedBlockingQueue<T> queue, List<T> destination) {
+    public Consumer(BlockingBuffer<T> queue, List<T> destination) {
         this(queue, destination, "Consumer");
     }
 
     /**
      * Creates a new Consumer with a custom name.
      * 
-     * @param queue the bounded blocking queue to consume items from
+     * @param queue the bounded queue to consume items from
      * @param destination the destination list to add consumed items to
      * @param name the name for this consumer (for logging)
      */
-    public Consumer(BoundedBlockingQueue<T> queue, List<T> destination, String name) {
+    public Consumer(BlockingBuffer<T> queue, List<T> destination, String name) {
+        this(queue, Sink.of(destination), name);
+    }
+
+    /**
+     * Creates a new Consumer that hands items to a sink. The consumer flushes
+     * the sink when it finishes but does not close it.
+     * 
+     * @param queue the bounded queue to consume items from
+     * @param sink the sink receiving consumed items
+     */
+    public Consumer(BlockingBuffer<T> queue, Sink<? super T> sink) {
+        this(queue, sink, "Consumer");
+    }
+
+    /**
+     * Creates a new Consumer with a custom name that hands items to a sink.
+     * 
+     * @param queue the bounded queue to consume items from
+     * @param sink the sink receiving consumed items
+     * @param name the name for this consumer (for logging)
+     */
+    public Consumer(BlockingBuffer<T> queue, Sink<? super T> sink, String name) {
         this.queue = queue;
-        this.destination = destination;
+        this.sink = sink;
         this.name = name;
     }
 
+    /**
+     * Sets the maximum number of items taken from the queue per call. With a
+     * batch size above 1 the consumer uses takeBatch(), so the queue lock and
+     * producer wake-ups are amortized over the whole batch.
+     * 
+     * @param batchSize the maximum number of items per take, must be > 0
+     * @return this consumer
+     * @throws IllegalArgumentException if batchSize <= 0
+     */
+    public Consumer<T> withBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets the artificial delay after each item (or batch). The default of
+     * 15ms makes the demo output easy to follow; use 0 for real workloads.
+     * 
+     * @param delayMillis the delay in milliseconds, 0 for none
+     * @return this consumer
+     */
+    public Consumer<T> withDelay(long delayMillis) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("Delay must not be negative");
+        }
+        this.delayMillis = delayMillis;
+        return this;
+    }
+
+    /**
+     * Sets the listener that receives progress events. The default prints
+     * every item to the console.
+     * 
+     * @param listener the listener, e.g. {@link PipelineListener#NONE}
+     * @return this consumer
+     */
+    public Consumer<T> withListener(PipelineListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Configures this consumer for throughput: no artificial delay and no
+     * per-item console logging.
+     * 
+     * @return this consumer
+     */
+    public Consumer<T> withProductionMode() {
+        return withDelay(0).withListener(PipelineListener.NONE);
+    }
+
+    /**
+     * Stops this consumer once the latch reaches zero and the queue is empty,
+     * instead of on a null poison pill. In this mode null is an ordinary
+     * element, so any number of consumers can share one queue and all of
+     * them terminate. On a {@link ClosableQueue} the last producer closes
+     * the queue, which ends the consumer's wait. Other queues cannot wake
+     * the consumer, so it polls them instead: while the queue is empty it
+     * wakes every 10 ms to re-check the latch. This is the case for a plain
+     * queue passed to {@link PipelineRunner} and for the stage queues of
+     * {@link StagedPipeline}.
+     * 
+     * @param producersDone latch counted down by each producer when it finishes
+     * @return this consumer
+     */
+    public Consumer<T> untilProducersDone(CountDownLatch producersDone) {
+        this.producersDone = producersDone;
+        return this;
+    }
+
+    /**
+     * Asks this consumer to stop after the item (or batch) it is handling,
+     * leaving the rest in the queue. A batched consumer notices within its
+     * wait timeout; one blocked in take() on an empty queue only after its
+     * next item.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
     @Override
     public void run() {
+        startNanos = System.nanoTime();
         try {
-            while (true) {
-                T value = queue.take();
+            if (batchSize > 1 || producersDone != null) {
+                runBatched();
+            } else {
+                runSingle();
+            }
+        } finally {
+            sink.flush();
+            endNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Consumes one item at a time until the poison pill arrives.
+     */
+    private void runSingle() {
+        boolean logItems = listener.isEnabled(PipelineListener.Level.ITEM);
+        boolean logLifecycle = listener.isEnabled(PipelineListener.Level.LIFECYCLE);
+        try {
+            while (!stopRequested) {
+                T value;
+                try {
+                    value = queue.take();
+                } catch (QueueClosedException e) {
+                    if (logLifecycle) {
+                        listener.onLifecycle(name, "queue closed and drained - stopping");
+                    }
+                    break;
+                }
                 
                 // Check for poison pill (null signals end of data)
                 if (value == null) {
-                    System.out.println(name + " received poison pill - stopping");
+                    if (logLifecycle) {
+                        listener.onLifecycle(name, "received poison pill - stopping");
+                    }
                     break;
                 }
                 
-                destination.add(value);
+                sink.accept(value);
                 itemsConsumed++;
-                System.out.println(name + " consumed: " + value + 
-                                 " (Queue size: " + queue.size() + "/" + queue.getCapacity() + 
-                                 ", Total consumed: " + itemsConsumed + ")");
-                
-                // Optional: Add small delay to better observe threading behavior
-                Thread.sleep(15);
+                if (logItems) {
+                    listener.onConsumed(name, value, itemsConsumed, queue);
+                }
+                pause();
+            }
+            if (logLifecycle) {
+                listener.onLifecycle(name, "finished - total items consumed: " + itemsConsumed);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (logLifecycle) {
+                listener.onInterrupted(name);
+            }
+        }
+    }
+
+    /**
+     * Consumes in batches. Items drained in the same batch as the poison
+     * pill are still delivered before stopping.
+     */
+    private void runBatched() {
+        boolean logItems = listener.isEnabled(PipelineListener.Level.ITEM);
+        boolean logLifecycle = listener.isEnabled(PipelineListener.Level.LIFECYCLE);
+        // A closable queue is closed by the last producer, which ends the wait;
+        // any other queue has no wake-up, so the latch is checked between waits
+        long waitMillis = producersDone == null || queue instanceof ClosableQueue
+                ? BATCH_WAIT_MILLIS : COMPLETION_CHECK_MILLIS;
+        try {
+            boolean done = false;
+            while (!done && !stopRequested) {
+                List<T> batch;
+                try {
+                    batch = queue.takeBatch(batchSize, waitMillis, TimeUnit.MILLISECONDS);
+                } catch (QueueClosedException e) {
+                    if (logLifecycle) {
+                        listener.onLifecycle(name, "queue closed and drained - stopping");
+                    }
+                    break;
+                }
+                if (batch.isEmpty()) {
+                    // Producers count down only after their last put, so an empty
+                    // queue after the latch opens means nothing more will arrive
+                    if (producersDone != null && producersDone.getCount() == 0 && queue.isEmpty()) {
+                        if (logLifecycle) {
+                            listener.onLifecycle(name, "saw all producers finish - stopping");
+                        }
+                        break;
+                    }
+                    continue;
+                }
+                List<T> items = batch;
+                if (producersDone == null && batch.contains(null)) {
+                    // Keep the items drained together with the poison pill
+                    done = true;
+                    items = new ArrayList<>(batch);
+                    items.removeIf(value -> value == null);
+                }
+                int added = items.size();
+                if (added > 0) {
+                    sink.acceptAll(items);
+                }
+                itemsConsumed += added;
+                if (logItems) {
+                    if (batchSize == 1 && added == 1) {
+                        listener.onConsumed(name, items.get(0), itemsConsumed, queue);
+                    } else {
+                        listener.onConsumedBatch(name, added, itemsConsumed, queue);
+                    }
+                }
+                if (done) {
+                    if (logLifecycle) {
+                        listener.onLifecycle(name, "received poison pill - stopping");
+                    }
+                } else {
+                    pause();
+                }
+            }
+            if (logLifecycle) {
+                listener.onLifecycle(name, "finished - total items consumed: " + itemsConsumed);
             }
-            System.out.println(name + " finished - total items consumed: " + itemsConsumed);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            System.err.println(name + " was interrupted");
+            if (logLifecycle) {
+                listener.onInterrupted(name);
+            }
+        }
+    }
+
+    /**
+     * Optional delay between items to make the threading behaviour observable.
+     */
+    private void pause() throws InterruptedException {
+        if (delayMillis > 0) {
+            Thread.sleep(delayMillis);
         }
     }
 
+    /**
+     * Gets the maximum number of items taken from the queue per call.
+     * 
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
     /**
      * Gets the name of this consumer.
      * 
@@ -80,4 +324,14 @@ public class Consumer<T> implements Runnable {
     public int getItemsConsumed() {
         return itemsConsumed;
     }
+
+    /**
+     * Gets the consumption rate, measured from the start of {@link #run()}
+     * until it returns (or until now while it is still running).
+     * 
+     * @return items consumed per second, or 0 if the consumer has not started
+     */
+    public double getItemsPerSecond() {
+        return Throughput.perSecond(itemsConsumed, startNanos, endNanos);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts queue elements to and from bytes for {@link MappedFileQueue}.
+ *
+ * Codecs never see null; the queue stores null elements itself.
+ */
+public interface ElementCodec<T> {
+
+    /**
+     * Serializes one element.
+     *
+     * @param item the element, never null
+     * @return the encoded bytes
+     */
+    byte[] encode(T item);
+
+    /**
+     * Restores one element.
+     *
+     * @param bytes bytes produced by {@link #encode(Object)}
+     * @return the element
+     */
+    T decode(byte[] bytes);
+
+    /**
+     * Returns a codec storing strings as UTF-8.
+     *
+     * @return the string codec
+     */
+    static ElementCodec<String> utf8() {
+        return new ElementCodec<String>() {
+            @Override
+            public byte[] encode(String item) {
+                return item.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String decode(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    /**
+     * Returns a codec storing integers as 4 big-endian bytes.
+     *
+     * @return the integer codec
+     */
+    static ElementCodec<Integer> integers() {
+        return new ElementCodec<Integer>() {
+            @Override
+            public byte[] encode(Integer item) {
+                return ByteBuffer.allocate(Integer.BYTES).putInt(item).array();
+            }
+
+            @Override
+            public Integer decode(byte[] bytes) {
+                return ByteBuffer.wrap(bytes).getInt();
+            }
+        };
+    }
+
+    /**
+     * Returns a codec storing longs as 8 big-endian bytes.
+     *
+     * @return the long codec
+     */
+    static ElementCodec<Long> longs() {
+        return new ElementCodec<Long>() {
+            @Override
+            public byte[] encode(Long item) {
+                return ByteBuffer.allocate(Long.BYTES).putLong(item).array();
+            }
+
+            @Override
+            public Long decode(byte[] bytes) {
+                return ByteBuffer.wrap(bytes).getLong();
+            }
+        };
+    }
+}
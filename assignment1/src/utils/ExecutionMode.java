@@ -0,0 +1,86 @@
+package utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How {@link PipelineRunner} runs its producers and consumers.
+ *
+ * Producers and consumers block on the queue for their whole lifetime, so
+ * every mode gives each task its own thread; the modes differ in what kind
+ * of thread that is:
+ * - PLATFORM_THREADS: a new platform thread per task (the original behaviour)
+ * - PLATFORM_POOL: a fixed-size pool of platform threads, which caps the
+ *   thread count and must be at least producers + consumers
+ * - VIRTUAL_THREADS: one virtual thread per task (Java 21+), so tens of
+ *   thousands of I/O-bound consumers can block cheaply
+ *
+ * Virtual threads are pinned to their carrier while blocked inside
+ * synchronized + wait(), so {@link PipelineRunner} refuses to run
+ * VIRTUAL_THREADS over a {@link BoundedBlockingQueue}; use
+ * {@link LockingBoundedQueue} or {@link RingBufferQueue} in that mode.
+ */
+public enum ExecutionMode {
+    PLATFORM_THREADS,
+    PLATFORM_POOL,
+    VIRTUAL_THREADS;
+
+    /**
+     * Creates an executor for this mode.
+     *
+     * @param poolSize the number of threads for PLATFORM_POOL; ignored otherwise
+     * @param namePrefix prefix for platform thread names
+     * @return a new executor service; the caller must shut it down
+     * @throws UnsupportedOperationException if virtual threads are requested
+     *         on a JVM older than Java 21
+     */
+    public ExecutorService newExecutor(int poolSize, String namePrefix) {
+        switch (this) {
+            case PLATFORM_POOL:
+                if (poolSize <= 0) {
+                    throw new IllegalArgumentException("Pool size must be greater than 0");
+                }
+                return Executors.newFixedThreadPool(poolSize, namedThreads(namePrefix));
+            case VIRTUAL_THREADS:
+                return newVirtualThreadExecutor();
+            default:
+                return Executors.newCachedThreadPool(namedThreads(namePrefix));
+        }
+    }
+
+    /**
+     * Returns true if the running JVM supports virtual threads.
+     *
+     * @return true on Java 21 or newer
+     */
+    public static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Looked up reflectively so the project still compiles and runs on Java 11+.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create virtual thread executor", e);
+        }
+    }
+
+    private static ThreadFactory namedThreads(String namePrefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return task -> new Thread(task, namePrefix + "-" + counter.incrementAndGet());
+    }
+}
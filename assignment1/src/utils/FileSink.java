@@ -0,0 +1,84 @@
+package utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Sink that streams items to a file, one formatted item per line.
+ *
+ * Nothing is retained in memory beyond the writer's buffer, so the output
+ * can be far larger than the heap. Consumers share one writer; a batch is
+ * written under a single lock so its lines stay together. I/O failures are
+ * rethrown as {@link UncheckedIOException}.
+ */
+public class FileSink<T> implements Sink<T> {
+    private final BufferedWriter writer;
+    private final Function<? super T, String> formatter;
+
+    /**
+     * Creates a sink writing each item's {@code String.valueOf}.
+     *
+     * @param file the file to create or truncate
+     * @throws IOException if the file cannot be opened
+     */
+    public FileSink(Path file) throws IOException {
+        this(file, String::valueOf);
+    }
+
+    /**
+     * Creates a sink writing each item through the given formatter.
+     *
+     * @param file the file to create or truncate
+     * @param formatter turns an item into one line, without the line separator
+     * @throws IOException if the file cannot be opened
+     */
+    public FileSink(Path file, Function<? super T, String> formatter) throws IOException {
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        this.formatter = formatter;
+    }
+
+    @Override
+    public synchronized void accept(T item) {
+        write(item);
+    }
+
+    @Override
+    public synchronized void acceptAll(List<? extends T> items) {
+        for (T item : items) {
+            write(item);
+        }
+    }
+
+    private void write(T item) {
+        try {
+            writer.write(formatter.apply(item));
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
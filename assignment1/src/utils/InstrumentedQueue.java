@@ -0,0 +1,282 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorator that records {@link QueueMetrics} for any {@link BlockingBuffer}.
+ *
+ * Each element is wrapped with the time the queue accepted it, so the
+ * consumer side can record time-in-queue. An element that had to wait for
+ * space is stamped when the blocking put returns, so the wait is counted
+ * as producer blocking, not as time in queue. Blocking is measured only when it
+ * happens: every operation first tries the non-blocking path and starts the
+ * clock only if that fails, so an uncontended hand-off costs two extra
+ * counter increments and one timestamp. Occupancy is read from the wrapped
+ * queue after every enqueue, so short peaks reach the high-water mark.
+ *
+ * Usage: {@code new InstrumentedQueue<Integer>(new LockingBoundedQueue<>(16))}
+ */
+public class InstrumentedQueue<T> implements BlockingBuffer<T> {
+    private final BlockingBuffer<Stamped<T>> delegate;
+    private final QueueMetrics metrics = new QueueMetrics();
+
+    /**
+     * Wraps the given queue.
+     *
+     * @param delegate the queue that stores the stamped elements
+     */
+    public InstrumentedQueue(BlockingBuffer<Stamped<T>> delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the wrapped queue, which holds the stamped elements.
+     *
+     * @return the queue that stores the elements
+     */
+    public BlockingBuffer<Stamped<T>> getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the metrics recorded so far.
+     *
+     * @return the live metrics of this queue
+     */
+    public QueueMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        Stamped<T> stamped = new Stamped<>(item);
+        if (!delegate.offer(stamped)) {
+            // Full queue: capacity is the occupancy right now
+            metrics.recordOccupancy(delegate.getCapacity());
+            stamped.clear();
+            long start = System.nanoTime();
+            delegate.put(stamped);
+            long accepted = System.nanoTime();
+            stamped.stamp(accepted);
+            metrics.recordProducerBlocked(accepted - start);
+        }
+        enqueued(1);
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        Stamped<T> stamped = delegate.poll();
+        if (stamped == null) {
+            long start = System.nanoTime();
+            stamped = delegate.take();
+            metrics.recordConsumerBlocked(System.nanoTime() - start);
+        }
+        return unwrap(stamped);
+    }
+
+    @Override
+    public boolean offer(T item) {
+        if (!delegate.offer(new Stamped<>(item))) {
+            return false;
+        }
+        enqueued(1);
+        return true;
+    }
+
+    @Override
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        Stamped<T> stamped = new Stamped<>(item);
+        if (!delegate.offer(stamped)) {
+            metrics.recordOccupancy(delegate.getCapacity());
+            stamped.clear();
+            long start = System.nanoTime();
+            boolean added = delegate.offer(stamped, timeout, unit);
+            long end = System.nanoTime();
+            metrics.recordProducerBlocked(end - start);
+            if (!added) {
+                return false;
+            }
+            stamped.stamp(end);
+        }
+        enqueued(1);
+        return true;
+    }
+
+    @Override
+    public T poll() {
+        Stamped<T> stamped = delegate.poll();
+        return stamped == null ? null : unwrap(stamped);
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Stamped<T> stamped = delegate.poll();
+        if (stamped == null) {
+            long start = System.nanoTime();
+            stamped = delegate.poll(timeout, unit);
+            metrics.recordConsumerBlocked(System.nanoTime() - start);
+            if (stamped == null) {
+                return null;
+            }
+        }
+        return unwrap(stamped);
+    }
+
+    @Override
+    public void putAll(Collection<? extends T> items) throws InterruptedException {
+        List<Stamped<T>> batch = new ArrayList<>(items.size());
+        for (T item : items) {
+            batch.add(new Stamped<>(item));
+        }
+        // One probe per batch decides whether the call is expected to wait
+        if (delegate.remainingCapacity() < batch.size()) {
+            for (Stamped<T> stamped : batch) {
+                stamped.clear();
+            }
+            long start = System.nanoTime();
+            delegate.putAll(batch);
+            long accepted = System.nanoTime();
+            for (Stamped<T> stamped : batch) {
+                stamped.stamp(accepted);
+            }
+            metrics.recordProducerBlocked(accepted - start);
+            metrics.recordOccupancy(delegate.getCapacity());
+        } else {
+            delegate.putAll(batch);
+        }
+        enqueued(batch.size());
+    }
+
+    @Override
+    public int offerAll(List<? extends T> items) {
+        List<Stamped<T>> batch = new ArrayList<>(items.size());
+        for (T item : items) {
+            batch.add(new Stamped<>(item));
+        }
+        int n = delegate.offerAll(batch);
+        if (n < batch.size()) {
+            metrics.recordOccupancy(delegate.getCapacity());
+        }
+        if (n > 0) {
+            enqueued(n);
+        }
+        return n;
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxElements) {
+        List<Stamped<T>> batch = new ArrayList<>();
+        delegate.drainTo(batch, maxElements);
+        return unwrapAll(batch, destination);
+    }
+
+    @Override
+    public List<T> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        if (maxElements <= 0) {
+            throw new IllegalArgumentException("maxElements must be greater than 0");
+        }
+        List<Stamped<T>> batch = new ArrayList<>();
+        if (delegate.drainTo(batch, maxElements) == 0) {
+            long start = System.nanoTime();
+            batch = delegate.takeBatch(maxElements, timeout, unit);
+            metrics.recordConsumerBlocked(System.nanoTime() - start);
+        }
+        List<T> result = new ArrayList<>(batch.size());
+        unwrapAll(batch, result);
+        return result;
+    }
+
+    @Override
+    public boolean canReleaseWaiters() {
+        return delegate.canReleaseWaiters();
+    }
+
+    @Override
+    public void releaseWaiters() {
+        delegate.releaseWaiters();
+    }
+
+    private void enqueued(int count) {
+        metrics.recordEnqueued(count);
+        metrics.recordOccupancy(delegate.size());
+    }
+
+    private T unwrap(Stamped<T> stamped) {
+        metrics.recordDequeued(1);
+        metrics.recordTimeInQueue(stamped.timeInQueue(System.nanoTime()));
+        return stamped.value;
+    }
+
+    private int unwrapAll(List<Stamped<T>> batch, Collection<? super T> destination) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        for (Stamped<T> stamped : batch) {
+            metrics.recordTimeInQueue(stamped.timeInQueue(now));
+            destination.add(stamped.value);
+        }
+        metrics.recordDequeued(batch.size());
+        return batch.size();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public int getCapacity() {
+        return delegate.getCapacity();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return delegate.remainingCapacity();
+    }
+
+    /**
+     * An element together with the time the queue accepted it.
+     */
+    public static final class Stamped<T> {
+        private final T value;
+        /** Written by the producer after a blocking put, possibly after a consumer took the element. */
+        private volatile long enqueuedAt;
+        private volatile boolean stamped;
+
+        Stamped(T value) {
+            this.value = value;
+            this.enqueuedAt = System.nanoTime();
+            this.stamped = true;
+        }
+
+        /**
+         * Marks the acceptance time as unknown until {@link #stamp(long)};
+         * only called while the element is not in the queue.
+         */
+        void clear() {
+            stamped = false;
+        }
+
+        void stamp(long acceptedAt) {
+            enqueuedAt = acceptedAt;
+            stamped = true;
+        }
+
+        /**
+         * Returns the time since acceptance, or 0 if the element was taken
+         * before its blocking put had even returned.
+         */
+        long timeInQueue(long now) {
+            return stamped ? now - enqueuedAt : 0;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package utils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumer that takes ints from an {@link IntBoundedQueue} and passes each
+ * one to a {@link Handler}.
+ *
+ * Values are taken in batches into one buffer allocated up front, so the
+ * consumer allocates nothing while it runs. It stops at the end marker, or -
+ * when attached to a producer completion latch - once every producer has
+ * finished and the queue is empty; in that mode the end marker is ordinary data.
+ * It also stops once the queue is closed and empty.
+ */
+public class IntConsumer implements Runnable {
+    /**
+     * Receives each consumed value.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Handles one value.
+         *
+         * @param value the consumed value
+         */
+        void accept(int value);
+    }
+
+    private final IntBoundedQueue queue;
+    private final int endMarker;
+    private final Handler handler;
+    private final String name;
+    private int batchSize = 64;
+    private CountDownLatch producersDone;
+    private volatile int itemsConsumed = 0;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    /**
+     * Creates a new IntConsumer.
+     *
+     * @param queue the queue to consume values from
+     * @param endMarker the value that signals the end of the stream
+     * @param handler receives every value except the end marker
+     */
+    public IntConsumer(IntBoundedQueue queue, int endMarker, Handler handler) {
+        this(queue, endMarker, handler, "IntConsumer");
+    }
+
+    /**
+     * Creates a new IntConsumer with a custom name.
+     *
+     * @param queue the queue to consume values from
+     * @param endMarker the value that signals the end of the stream
+     * @param handler receives every value except the end marker
+     * @param name the name for this consumer
+     */
+    public IntConsumer(IntBoundedQueue queue, int endMarker, Handler handler, String name) {
+        this.queue = queue;
+        this.endMarker = endMarker;
+        this.handler = handler;
+        this.name = name;
+    }
+
+    /**
+     * Sets the maximum number of values taken from the queue per call.
+     *
+     * @param batchSize the maximum number of values per take, must be > 0
+     * @return this consumer
+     * @throws IllegalArgumentException if batchSize <= 0
+     */
+    public IntConsumer withBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Stops this consumer once the latch reaches zero and the queue is empty,
+     * instead of at the end marker. The last producer to count down closes
+     * the queue, so the consumer wakes as soon as it has taken the last value.
+     *
+     * @param producersDone the latch the producers count down when finished
+     * @return this consumer
+     */
+    public IntConsumer untilProducersDone(CountDownLatch producersDone) {
+        this.producersDone = producersDone;
+        return this;
+    }
+
+    /**
+     * Values taken in the same batch as the end marker are still handled.
+     */
+    @Override
+    public void run() {
+        startNanos = System.nanoTime();
+        int[] buffer = new int[batchSize];
+        try {
+            boolean done = false;
+            while (!done) {
+                int n = queue.takeBatch(buffer, 0, batchSize, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                if (n == 0) {
+                    // Only a closed and empty queue returns nothing without a timeout
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    int value = buffer[i];
+                    if (producersDone == null && value == endMarker) {
+                        done = true;
+                        continue;
+                    }
+                    handler.accept(value);
+                    itemsConsumed++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Gets the number of values handled, not counting the end marker.
+     *
+     * @return the number of consumed values
+     */
+    public int getItemsConsumed() {
+        return itemsConsumed;
+    }
+
+    /**
+     * Gets the consumption rate, measured from the start of {@link #run()}
+     * until it returns (or until now while it is still running).
+     *
+     * @return values consumed per second, or 0 if the consumer has not started
+     */
+    public double getItemsPerSecond() {
+        return Throughput.perSecond(itemsConsumed, startNanos, endNanos);
+    }
+
+    /**
+     * Gets the name of this consumer.
+     *
+     * @return the consumer name
+     */
+    public String getName() {
+        return name;
+    }
+}
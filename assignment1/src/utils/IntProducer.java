@@ -0,0 +1,138 @@
+package utils;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Producer that copies ints from a source array into an {@link IntBoundedQueue}.
+ *
+ * Values are handed over in batches straight from the source array, so the
+ * producer allocates nothing while it runs. Completion is signalled with an
+ * end marker value (the primitive counterpart of the poison pill), unless
+ * the producer is attached to a completion latch shared with the consumers.
+ */
+public class IntProducer implements Runnable {
+    private final IntBoundedQueue queue;
+    private final int[] source;
+    private final int endMarker;
+    private final String name;
+    private int batchSize = 64;
+    private CountDownLatch completion;
+    private volatile int itemsProduced = 0;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    /**
+     * Creates a new IntProducer.
+     *
+     * @param queue the queue to produce values into
+     * @param source the values to produce; must not contain the end marker
+     * @param endMarker the value sent after the last item
+     */
+    public IntProducer(IntBoundedQueue queue, int[] source, int endMarker) {
+        this(queue, source, endMarker, "IntProducer");
+    }
+
+    /**
+     * Creates a new IntProducer with a custom name.
+     *
+     * @param queue the queue to produce values into
+     * @param source the values to produce; must not contain the end marker
+     * @param endMarker the value sent after the last item
+     * @param name the name for this producer
+     */
+    public IntProducer(IntBoundedQueue queue, int[] source, int endMarker, String name) {
+        this.queue = queue;
+        this.source = source;
+        this.endMarker = endMarker;
+        this.name = name;
+    }
+
+    /**
+     * Sets the number of values handed to the queue per call.
+     *
+     * @param batchSize the number of values per putAll, must be > 0
+     * @return this producer
+     * @throws IllegalArgumentException if batchSize <= 0
+     */
+    public IntProducer withBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Counts the latch down when finished instead of sending the end marker.
+     * The producer that brings the latch to zero closes the queue, which
+     * wakes every consumer waiting on it.
+     *
+     * @param completion the latch shared with the other producers and the consumers
+     * @return this producer
+     */
+    public IntProducer withCompletionLatch(CountDownLatch completion) {
+        this.completion = completion;
+        return this;
+    }
+
+    @Override
+    public void run() {
+        startNanos = System.nanoTime();
+        try {
+            for (int from = 0; from < source.length; from += batchSize) {
+                int n = Math.min(batchSize, source.length - from);
+                try {
+                    queue.putAll(source, from, n);
+                } catch (QueueClosedException e) {
+                    itemsProduced += e.getItemsAccepted();
+                    throw e;
+                }
+                itemsProduced += n;
+            }
+            if (completion == null) {
+                queue.put(endMarker);
+            }
+        } catch (QueueClosedException e) {
+            // Closed by someone else; nothing more can be sent
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            endNanos = System.nanoTime();
+            if (completion != null) {
+                completion.countDown();
+                if (completion.getCount() == 0) {
+                    // Last producer out: wake the consumers waiting on the empty queue
+                    queue.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of values handed to the queue, not counting the end marker.
+     *
+     * @return the number of produced values
+     */
+    public int getItemsProduced() {
+        return itemsProduced;
+    }
+
+    /**
+     * Gets the production rate, measured from the start of {@link #run()}
+     * until it returns (or until now while it is still running).
+     *
+     * @return values produced per second, or 0 if the producer has not started
+     */
+    public double getItemsPerSecond() {
+        return Throughput.perSecond(itemsProduced, startNanos, endNanos);
+    }
+
+    /**
+     * Gets the name of this producer.
+     *
+     * @return the producer name
+     */
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,395 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded blocking queue guarded by a {@link ReentrantLock} with two conditions.
+ *
+ * Unlike {@link BoundedBlockingQueue}, which wakes every waiting thread with
+ * notifyAll(), this queue keeps producers and consumers in separate wait sets:
+ * - put() signals one waiter on "notEmpty"
+ * - take() signals one waiter on "notFull"
+ * so only a thread that can actually make progress is woken.
+ *
+ * Elements are stored in a preallocated circular array.
+ */
+public class LockingBoundedQueue<T> implements BlockingBuffer<T> {
+    private final Object[] items;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private int head;
+    private int tail;
+    private int count;
+    /** Set by {@link #releaseWaiters()}; timed waits then end at once. */
+    private boolean waitersReleased;
+
+    /**
+     * Creates a queue with the specified capacity and a non-fair lock.
+     *
+     * @param capacity the maximum number of elements the queue can hold
+     * @throws IllegalArgumentException if capacity <= 0
+     */
+    public LockingBoundedQueue(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * Creates a queue with the specified capacity and lock fairness.
+     * A fair lock grants access to the longest-waiting thread, trading
+     * throughput for predictable latency.
+     *
+     * @param capacity the maximum number of elements the queue can hold
+     * @param fair true to use a fair lock
+     * @throws IllegalArgumentException if capacity <= 0
+     */
+    public LockingBoundedQueue(int capacity, boolean fair) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        this.items = new Object[capacity];
+        this.lock = new ReentrantLock(fair);
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+    }
+
+    /**
+     * Inserts the specified element into this queue, waiting if necessary
+     * for space to become available.
+     *
+     * @param item the element to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void put(T item) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == items.length) {
+                // Queue is full, wait for space
+                notFull.await();
+            }
+            enqueue(item);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, waiting if necessary
+     * until an element becomes available.
+     *
+     * @return the head of this queue
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                // Queue is empty, wait for elements
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the specified element if the queue is not full.
+     *
+     * @param item the element to add
+     * @return true if the element was added, false if the queue is full
+     */
+    @Override
+    public boolean offer(T item) {
+        lock.lock();
+        try {
+            if (count == items.length) {
+                return false;
+            }
+            enqueue(item);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the specified element, waiting up to the given timeout for space.
+     *
+     * @param item the element to add
+     * @param timeout how long to wait for space
+     * @param unit the unit of the timeout
+     * @return true if the element was added, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == items.length) {
+                if (nanos <= 0 || waitersReleased) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(item);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the head of this queue if one is available.
+     *
+     * @return the head of this queue, or null if the queue is empty
+     */
+    @Override
+    public T poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, waiting up to the
+     * given timeout for an element to become available.
+     *
+     * @param timeout how long to wait for an element
+     * @param unit the unit of the timeout
+     * @return the head of this queue, or null if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0 || waitersReleased) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts all elements of the collection, waiting for space as needed.
+     * The lock is held across the batch except while waiting for space.
+     *
+     * @param elements the elements to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void putAll(Collection<? extends T> elements) throws InterruptedException {
+        Iterator<? extends T> it = elements.iterator();
+        lock.lockInterruptibly();
+        try {
+            while (it.hasNext()) {
+                while (count == items.length) {
+                    notFull.await();
+                }
+                while (it.hasNext() && count < items.length) {
+                    enqueue(it.next());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts as many elements as fit right now under one lock acquisition.
+     *
+     * @param elements the elements to add
+     * @return the number of elements inserted
+     */
+    @Override
+    public int offerAll(List<? extends T> elements) {
+        lock.lock();
+        try {
+            int n = Math.min(elements.size(), items.length - count);
+            for (int i = 0; i < n; i++) {
+                enqueue(elements.get(i));
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes up to maxElements available elements without blocking and
+     * adds them to the destination.
+     *
+     * @param destination the collection to transfer elements into
+     * @param maxElements the maximum number of elements to transfer
+     * @return the number of elements transferred
+     */
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxElements) {
+        if (maxElements <= 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            int n = Math.min(maxElements, count);
+            for (int i = 0; i < n; i++) {
+                destination.add(dequeue());
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to the given timeout for at least one element, then removes
+     * up to maxElements elements under a single lock acquisition.
+     *
+     * @param maxElements the maximum number of elements to return
+     * @param timeout how long to wait for the first element
+     * @param unit the unit of the timeout
+     * @return the removed elements; empty if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public List<T> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        if (maxElements <= 0) {
+            throw new IllegalArgumentException("maxElements must be greater than 0");
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0 || waitersReleased) {
+                    return new ArrayList<>();
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            int n = Math.min(maxElements, count);
+            List<T> batch = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                batch.add(dequeue());
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean canReleaseWaiters() {
+        return true;
+    }
+
+    @Override
+    public void releaseWaiters() {
+        lock.lock();
+        try {
+            waitersReleased = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an element at the tail and wakes one consumer. Caller must hold the lock.
+     */
+    private void enqueue(T item) {
+        items[tail] = item;
+        if (++tail == items.length) {
+            tail = 0;
+        }
+        count++;
+        notEmpty.signal();
+    }
+
+    /**
+     * Removes the head element and wakes one producer. Caller must hold the lock.
+     */
+    @SuppressWarnings("unchecked")
+    private T dequeue() {
+        T item = (T) items[head];
+        items[head] = null;
+        if (++head == items.length) {
+            head = 0;
+        }
+        count--;
+        notFull.signal();
+        return item;
+    }
+
+    /**
+     * Returns true if this queue uses a fair lock.
+     *
+     * @return the lock fairness
+     */
+    public boolean isFair() {
+        return lock.isFair();
+    }
+
+    /**
+     * Returns the number of elements currently in this queue.
+     *
+     * @return the number of elements in this queue
+     */
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if this queue contains no elements.
+     *
+     * @return true if this queue is empty
+     */
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the maximum capacity of this queue.
+     *
+     * @return the capacity of this queue
+     */
+    @Override
+    public int getCapacity() {
+        return items.length;
+    }
+
+    /**
+     * Returns the number of additional elements that this queue can
+     * accept without blocking.
+     *
+     * @return the remaining capacity
+     */
+    @Override
+    public int remainingCapacity() {
+        return items.length - size();
+    }
+}
@@ -0,0 +1,350 @@
+package utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded blocking queue of primitive longs backed by a {@code long[]} ring.
+ *
+ * Unlike {@code BlockingBuffer<Long>}, nothing is boxed and no node is
+ * allocated per element, so a pipeline moving longs (e.g. event IDs)
+ * allocates nothing per element; only the lock allocates a wait node when
+ * a thread blocks.
+ * The bulk operations copy to and from caller-owned arrays that can be
+ * reused for every batch. Locking follows {@link LockingBoundedQueue};
+ * see {@link IntBoundedQueue} for ints.
+ *
+ * There is no null, so "nothing available" is reported through return
+ * values: offer() returns false and takeBatch() returns 0.
+ *
+ * {@link #close()} ends the stream without an end marker: puts are then
+ * rejected with {@link QueueClosedException}, and once the remaining values
+ * are taken, waiting takers are woken and return at once.
+ */
+public class LongBoundedQueue {
+    private final long[] items;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int head;
+    private int tail;
+    private int count;
+    private boolean closed;
+
+    /**
+     * Creates a queue with the specified capacity.
+     *
+     * @param capacity the maximum number of elements the queue can hold
+     * @throws IllegalArgumentException if capacity <= 0
+     */
+    public LongBoundedQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        this.items = new long[capacity];
+    }
+
+    /**
+     * Inserts the value, waiting if necessary for space to become available.
+     *
+     * @param value the value to add
+     * @throws InterruptedException if interrupted while waiting
+     * @throws QueueClosedException if the queue is or becomes closed
+     */
+    public void put(long value) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            checkOpen();
+            while (count == items.length) {
+                notFull.await();
+                checkOpen();
+            }
+            enqueue(value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the head value, waiting if necessary until one is available.
+     *
+     * @return the head value
+     * @throws InterruptedException if interrupted while waiting
+     * @throws QueueClosedException if the queue is closed and empty
+     */
+    public long take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (closed) {
+                    throw new QueueClosedException("Queue is closed and empty");
+                }
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the value if the queue is not full.
+     *
+     * @param value the value to add
+     * @return true if the value was added, false if the queue is full
+     * @throws QueueClosedException if the queue is closed
+     */
+    public boolean offer(long value) {
+        lock.lock();
+        try {
+            checkOpen();
+            if (count == items.length) {
+                return false;
+            }
+            enqueue(value);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the value, waiting up to the given timeout for space.
+     *
+     * @param value the value to add
+     * @param timeout how long to wait for space
+     * @param unit the unit of the timeout
+     * @return true if the value was added, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     * @throws QueueClosedException if the queue is or becomes closed
+     */
+    public boolean offer(long value, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            checkOpen();
+            while (count == items.length) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+                checkOpen();
+            }
+            enqueue(value);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts a range of values, waiting for space as needed. The lock is
+     * held across the batch except while waiting for space.
+     *
+     * @param source the array holding the values
+     * @param offset the index of the first value
+     * @param length the number of values to add
+     * @throws InterruptedException if interrupted while waiting
+     * @throws QueueClosedException if the queue is or becomes closed; values
+     *         already inserted stay queued
+     */
+    public void putAll(long[] source, int offset, int length) throws InterruptedException {
+        int end = offset + length;
+        int next = offset;
+        lock.lockInterruptibly();
+        try {
+            while (next < end) {
+                if (closed) {
+                    throw new QueueClosedException("Queue is closed", next - offset);
+                }
+                if (count == items.length) {
+                    notFull.await();
+                    continue;
+                }
+                int n = Math.min(end - next, items.length - count);
+                // Copy in at most two runs, before and after the wrap-around
+                int first = Math.min(n, items.length - tail);
+                System.arraycopy(source, next, items, tail, first);
+                System.arraycopy(source, next + first, items, 0, n - first);
+                tail = (tail + n) % items.length;
+                count += n;
+                next += n;
+                notEmpty.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes up to maxElements available values without blocking.
+     *
+     * @param destination the array to copy the values into
+     * @param offset the index of the first slot to fill
+     * @param maxElements the maximum number of values to transfer
+     * @return the number of values transferred
+     */
+    public int drainTo(long[] destination, int offset, int maxElements) {
+        lock.lock();
+        try {
+            return copyOut(destination, offset, maxElements);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to the given timeout for at least one value, then removes up
+     * to maxElements values under a single lock acquisition.
+     *
+     * @param destination the array to copy the values into
+     * @param offset the index of the first slot to fill
+     * @param maxElements the maximum number of values to return
+     * @param timeout how long to wait for the first value
+     * @param unit the unit of the timeout
+     * @return the number of values transferred; 0 if the timeout elapsed
+     *         first, or at once if the queue is closed and empty
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalArgumentException if maxElements <= 0
+     */
+    public int takeBatch(long[] destination, int offset, int maxElements, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (maxElements <= 0) {
+            throw new IllegalArgumentException("maxElements must be greater than 0");
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0 || closed) {
+                    return 0;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return copyOut(destination, offset, maxElements);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting values and wakes every waiting thread: blocked puts
+     * fail, and blocked takes return once the queue is empty. Values
+     * already queued can still be taken. Calling close() again has no effect.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true once {@link #close()} has been called.
+     *
+     * @return true if the queue rejects new values
+     */
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new QueueClosedException("Queue is closed");
+        }
+    }
+
+    /**
+     * Copies up to maxElements values out and wakes producers. Caller must hold the lock.
+     */
+    private int copyOut(long[] destination, int offset, int maxElements) {
+        int n = Math.min(maxElements, count);
+        if (n <= 0) {
+            return 0;
+        }
+        int first = Math.min(n, items.length - head);
+        System.arraycopy(items, head, destination, offset, first);
+        System.arraycopy(items, 0, destination, offset + first, n - first);
+        head = (head + n) % items.length;
+        count -= n;
+        notFull.signalAll();
+        return n;
+    }
+
+    /**
+     * Adds a value at the tail and wakes one consumer. Caller must hold the lock.
+     */
+    private void enqueue(long value) {
+        items[tail] = value;
+        if (++tail == items.length) {
+            tail = 0;
+        }
+        count++;
+        notEmpty.signal();
+    }
+
+    /**
+     * Removes the head value and wakes one producer. Caller must hold the lock.
+     */
+    private long dequeue() {
+        long value = items[head];
+        if (++head == items.length) {
+            head = 0;
+        }
+        count--;
+        notFull.signal();
+        return value;
+    }
+
+    /**
+     * Returns the number of values currently in this queue.
+     *
+     * @return the number of values in this queue
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if this queue contains no values.
+     *
+     * @return true if this queue is empty
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the maximum capacity of this queue.
+     *
+     * @return the capacity of this queue
+     */
+    public int getCapacity() {
+        return items.length;
+    }
+
+    /**
+     * Returns the number of additional values that this queue can accept
+     * without blocking.
+     *
+     * @return the remaining capacity
+     */
+    public int remainingCapacity() {
+        return items.length - size();
+    }
+}
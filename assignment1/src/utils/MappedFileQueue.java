@@ -0,0 +1,651 @@
+package utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * A bounded blocking queue that keeps its elements in memory-mapped files, so
+ * they survive a JVM crash and do not occupy the heap.
+ *
+ * Elements are serialized with an {@link ElementCodec} and appended to
+ * fixed-size segment files ({@code segment-0000000000.dat}, ...) in a
+ * directory. Each record is a 4-byte header followed by the payload:
+ * - 0: not written yet (the header is written after the payload, so a
+ *   record cut short by a crash is never read)
+ * - 1: a null element
+ * - n + 2: a payload of n bytes
+ * - -1: end of segment, continue with the next file
+ * A separate checkpoint file holds the read position (segment index and
+ * offset packed into one 8-byte store, so a crash never leaves half of it
+ * written) and is updated inside every take. Opening a queue on an existing
+ * directory recovers every item that was put but not taken. Delivery is
+ * therefore at-most-once: an item that was taken but not yet processed when
+ * the JVM dies is not delivered again. Segments are deleted once fully
+ * consumed, and their mappings are released right away rather than when
+ * the buffers are garbage collected, so the disk space is freed (and
+ * Windows allows the delete) at once.
+ *
+ * Writes reach the OS page cache immediately, which is enough to survive a
+ * JVM crash; call {@link #sync()} to also force them to disk. After an OS
+ * crash or power loss only what sync() forced is guaranteed: later puts may
+ * be lost and later takes delivered again. The capacity
+ * counts elements, like the in-memory queues; a recovered backlog larger
+ * than the capacity is kept and blocks producers until it drains.
+ * Serialization happens outside the lock. Locking follows
+ * {@link LockingBoundedQueue}.
+ */
+public class MappedFileQueue<T> implements BlockingBuffer<T>, AutoCloseable {
+    /** Default segment file size: 64 MB. */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final int UNWRITTEN = 0;
+    private static final int NULL_RECORD = 1;
+    private static final int PAYLOAD_OFFSET = 2;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String CHECKPOINT_FILE = "checkpoint.dat";
+    // sun.misc.Unsafe.invokeCleaner (Java 9+), or null if it is not available
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Mappings are then released by the garbage collector
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Path directory;
+    private final ElementCodec<T> codec;
+    private final int capacity;
+    private final int segmentSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final FileChannel checkpointChannel;
+    private final MappedByteBuffer checkpoint;
+    private Segment writeSegment;
+    private Segment readSegment;
+    private int writeOffset;
+    private int readOffset;
+    private int count;
+    private boolean closed;
+    /** Set by {@link #releaseWaiters()}; timed waits then end at once. */
+    private boolean waitersReleased;
+
+    /**
+     * Opens (or creates) a queue in the directory with 64 MB segments.
+     *
+     * @param directory where the segment and checkpoint files live
+     * @param codec serializes the elements
+     * @param capacity the maximum number of elements the queue can hold
+     * @throws IOException if the files cannot be created or read
+     * @throws IllegalArgumentException if capacity <= 0
+     */
+    public MappedFileQueue(Path directory, ElementCodec<T> codec, int capacity) throws IOException {
+        this(directory, codec, capacity, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens (or creates) a queue in the directory, recovering any items left
+     * by a previous instance.
+     *
+     * @param directory where the segment and checkpoint files live
+     * @param codec serializes the elements
+     * @param capacity the maximum number of elements the queue can hold
+     * @param segmentSize the size of each segment file in bytes; bounds the record size
+     * @throws IOException if the files cannot be created or read
+     * @throws IllegalArgumentException if capacity <= 0 or segmentSize is too small
+     */
+    public MappedFileQueue(Path directory, ElementCodec<T> codec, int capacity, int segmentSize)
+            throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        if (segmentSize <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Segment size must be greater than " + HEADER_BYTES);
+        }
+        this.directory = directory;
+        this.codec = codec;
+        this.capacity = capacity;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+        checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        recover();
+    }
+
+    /**
+     * Restores the read position from the checkpoint, deletes consumed
+     * segments and scans forward to find the write position and item count.
+     */
+    private void recover() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith("segment-") && name.endsWith(".dat")) {
+                    segments.put(Long.parseLong(name.substring(8, name.length() - 4)), file);
+                }
+            });
+        }
+        long position = checkpoint.getLong(0);
+        long readIndex = position >>> 32;
+        readOffset = (int) position;
+        if (segments.isEmpty() || readIndex < segments.firstKey()) {
+            readIndex = segments.isEmpty() ? 0 : segments.firstKey();
+            readOffset = 0;
+        }
+        for (Path consumed : segments.headMap(readIndex).values()) {
+            Files.delete(consumed);
+        }
+
+        readSegment = openSegment(readIndex);
+        Segment scan = readSegment;
+        int offset = readOffset;
+        while (true) {
+            int header = offset + HEADER_BYTES <= segmentSize ? scan.buffer.getInt(offset) : END_OF_SEGMENT;
+            if (header == UNWRITTEN) {
+                break;
+            }
+            if (header == END_OF_SEGMENT) {
+                Segment next = scan == readSegment ? openSegment(scan.index + 1) : nextSegment(scan);
+                scan = next;
+                offset = 0;
+                continue;
+            }
+            count++;
+            offset += HEADER_BYTES + recordLength(header);
+        }
+        writeSegment = scan;
+        writeOffset = offset;
+    }
+
+    /**
+     * Moves a scan past a segment that is neither the read nor the write segment.
+     */
+    private Segment nextSegment(Segment done) throws IOException {
+        release(done);
+        return openSegment(done.index + 1);
+    }
+
+    private Segment openSegment(long index) throws IOException {
+        Path file = directory.resolve(String.format("segment-%010d.dat", index));
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(index, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        byte[] bytes = encode(item);
+        lock.lockInterruptibly();
+        try {
+            while (count >= capacity) {
+                checkOpen();
+                notFull.await();
+            }
+            append(bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        byte[] bytes;
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                checkOpen();
+                notEmpty.await();
+            }
+            bytes = removeRecord();
+        } finally {
+            lock.unlock();
+        }
+        return decode(bytes);
+    }
+
+    @Override
+    public boolean offer(T item) {
+        byte[] bytes = encode(item);
+        lock.lock();
+        try {
+            if (count >= capacity) {
+                return false;
+            }
+            append(bytes);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        byte[] bytes = encode(item);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count >= capacity) {
+                checkOpen();
+                if (nanos <= 0 || waitersReleased) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            append(bytes);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T poll() {
+        byte[] bytes;
+        lock.lock();
+        try {
+            if (count == 0) {
+                return null;
+            }
+            bytes = removeRecord();
+        } finally {
+            lock.unlock();
+        }
+        return decode(bytes);
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        byte[] bytes;
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                checkOpen();
+                if (nanos <= 0 || waitersReleased) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            bytes = removeRecord();
+        } finally {
+            lock.unlock();
+        }
+        return decode(bytes);
+    }
+
+    @Override
+    public void putAll(Collection<? extends T> items) throws InterruptedException {
+        List<byte[]> encoded = new ArrayList<>(items.size());
+        for (T item : items) {
+            encoded.add(encode(item));
+        }
+        lock.lockInterruptibly();
+        try {
+            for (byte[] bytes : encoded) {
+                while (count >= capacity) {
+                    checkOpen();
+                    notFull.await();
+                }
+                append(bytes);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxElements) {
+        if (maxElements <= 0) {
+            return 0;
+        }
+        List<byte[]> records = new ArrayList<>();
+        lock.lock();
+        try {
+            int n = Math.min(maxElements, count);
+            for (int i = 0; i < n; i++) {
+                records.add(removeRecord());
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (byte[] bytes : records) {
+            destination.add(decode(bytes));
+        }
+        return records.size();
+    }
+
+    @Override
+    public List<T> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        if (maxElements <= 0) {
+            throw new IllegalArgumentException("maxElements must be greater than 0");
+        }
+        long nanos = unit.toNanos(timeout);
+        List<byte[]> records = new ArrayList<>();
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                checkOpen();
+                if (nanos <= 0 || waitersReleased) {
+                    return new ArrayList<>();
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            int n = Math.min(maxElements, count);
+            for (int i = 0; i < n; i++) {
+                records.add(removeRecord());
+            }
+        } finally {
+            lock.unlock();
+        }
+        List<T> batch = new ArrayList<>(records.size());
+        for (byte[] bytes : records) {
+            batch.add(decode(bytes));
+        }
+        return batch;
+    }
+
+    @Override
+    public int offerAll(List<? extends T> items) {
+        List<byte[]> encoded = new ArrayList<>(items.size());
+        for (T item : items) {
+            encoded.add(encode(item));
+        }
+        lock.lock();
+        try {
+            int n = Math.max(0, Math.min(encoded.size(), capacity - count));
+            for (int i = 0; i < n; i++) {
+                append(encoded.get(i));
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean canReleaseWaiters() {
+        return true;
+    }
+
+    @Override
+    public void releaseWaiters() {
+        lock.lock();
+        try {
+            waitersReleased = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces written records and the read checkpoint to disk.
+     *
+     * @throws IllegalStateException if the queue is closed
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            checkOpen();
+            writeSegment.buffer.force();
+            if (readSegment != writeSegment) {
+                readSegment.buffer.force();
+            }
+            checkpoint.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Syncs and releases the files. Unconsumed items stay on disk and are
+     * recovered by the next queue opened on the same directory. Threads
+     * waiting in a put or take are woken and fail with
+     * {@link QueueClosedException}, as does every later put or take.
+     *
+     * @throws UncheckedIOException if a file cannot be closed
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            sync();
+            closed = true;
+            // Waiters wake once the lock is released and fail on the closed
+            // flag instead of touching the released segments
+            notEmpty.signalAll();
+            notFull.signalAll();
+            if (readSegment != writeSegment) {
+                release(readSegment);
+            }
+            release(writeSegment);
+            checkpointChannel.close();
+            unmap(checkpoint);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private byte[] encode(T item) {
+        if (item == null) {
+            return null;
+        }
+        byte[] bytes = codec.encode(item);
+        if (HEADER_BYTES + bytes.length > segmentSize) {
+            throw new IllegalArgumentException("Encoded element of " + bytes.length
+                    + " bytes does not fit in a segment of " + segmentSize + " bytes");
+        }
+        return bytes;
+    }
+
+    private T decode(byte[] bytes) {
+        return bytes == null ? null : codec.decode(bytes);
+    }
+
+    private static int recordLength(int header) {
+        return header == NULL_RECORD ? 0 : header - PAYLOAD_OFFSET;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new QueueClosedException("Queue is closed");
+        }
+    }
+
+    /**
+     * Appends one record, rolling over to a new segment if it does not fit,
+     * and wakes one consumer. Caller must hold the lock.
+     */
+    private void append(byte[] bytes) {
+        checkOpen();
+        int length = bytes == null ? 0 : bytes.length;
+        try {
+            if (writeOffset + HEADER_BYTES + length > segmentSize) {
+                if (writeOffset + HEADER_BYTES <= segmentSize) {
+                    writeSegment.buffer.putInt(writeOffset, END_OF_SEGMENT);
+                }
+                Segment full = writeSegment;
+                writeSegment = openSegment(full.index + 1);
+                writeOffset = 0;
+                if (full != readSegment) {
+                    release(full);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (bytes != null) {
+            ByteBuffer payload = writeSegment.buffer.duplicate();
+            payload.position(writeOffset + HEADER_BYTES);
+            payload.put(bytes);
+        }
+        // Header last: a record is only visible once it is complete
+        writeSegment.buffer.putInt(writeOffset, bytes == null ? NULL_RECORD : length + PAYLOAD_OFFSET);
+        writeOffset += HEADER_BYTES + length;
+        count++;
+        notEmpty.signal();
+    }
+
+    /**
+     * Removes the head record, advancing to the next segment (and deleting
+     * the consumed one) when needed, then saves the read position and wakes
+     * one producer. Caller must hold the lock and count > 0.
+     *
+     * @return the payload, or null for a null element
+     */
+    private byte[] removeRecord() {
+        checkOpen();
+        int header = readOffset + HEADER_BYTES <= segmentSize
+                ? readSegment.buffer.getInt(readOffset) : END_OF_SEGMENT;
+        if (header == END_OF_SEGMENT) {
+            advanceReadSegment();
+            header = readSegment.buffer.getInt(readOffset);
+        }
+        byte[] bytes = null;
+        if (header != NULL_RECORD) {
+            bytes = new byte[recordLength(header)];
+            ByteBuffer payload = readSegment.buffer.duplicate();
+            payload.position(readOffset + HEADER_BYTES);
+            payload.get(bytes);
+        }
+        readOffset += HEADER_BYTES + recordLength(header);
+        saveReadPosition();
+        count--;
+        notFull.signal();
+        return bytes;
+    }
+
+    private void advanceReadSegment() {
+        Segment consumed = readSegment;
+        try {
+            readSegment = consumed.index + 1 == writeSegment.index
+                    ? writeSegment : openSegment(consumed.index + 1);
+            readOffset = 0;
+            // Save the new position before the old file disappears
+            saveReadPosition();
+            release(consumed);
+            Files.delete(directory.resolve(String.format("segment-%010d.dat", consumed.index)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes segment index and offset as one 8-byte value, so the checkpoint
+     * is never seen with one updated and the other not.
+     */
+    private void saveReadPosition() {
+        checkpoint.putLong(0, (readSegment.index << 32) | readOffset);
+    }
+
+    /**
+     * Closes a segment's file and unmaps it. The segment must not be used afterwards.
+     */
+    private static void release(Segment segment) throws IOException {
+        segment.channel.close();
+        unmap(segment.buffer);
+    }
+
+    /**
+     * Releases a mapping now instead of when the buffer is garbage
+     * collected. Without invokeCleaner the mapping is left to the GC.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            // Left to the garbage collector
+        }
+    }
+
+    /**
+     * Returns the directory holding the queue files.
+     *
+     * @return the queue directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Math.max(0, capacity - size());
+    }
+
+    /**
+     * One mapped segment file.
+     */
+    private static final class Segment {
+        final long index;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+
+        Segment(long index, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
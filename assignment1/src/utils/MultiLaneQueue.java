@@ -0,0 +1,452 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * A bounded blocking queue split into priority lanes, each with its own
+ * capacity, so urgent items never wait behind a full lane of bulk data.
+ *
+ * Items are routed to a lane by a selector function, or explicitly with
+ * {@link #put(int, Object)}. Consumers take with smooth weighted round-robin
+ * over the non-empty lanes: a lane with weight 8 next to one with weight 1
+ * gets 8 of every 9 takes while both have items, but the low lane is never
+ * starved. Order is FIFO within a lane.
+ *
+ * A null item (the poison pill) goes to the last lane and is only taken once
+ * every other lane is empty, so it still arrives after the items queued
+ * before it. Pills put explicitly into other lanes wait the same way; if
+ * only pills are left at the lane heads, the lowest-index lane goes first.
+ * All lanes share one {@link ReentrantLock}; each lane has its
+ * own "notFull" condition so a producer only wakes when its lane has space.
+ */
+public class MultiLaneQueue<T> implements BlockingBuffer<T> {
+    private final Object[][] lanes;
+    private final int[] weights;
+    private final int[] heads;
+    private final int[] counts;
+    private final int[] currentWeights;
+    private final ToIntFunction<? super T> laneSelector;
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition[] notFull;
+    private int count;
+    /** Set by {@link #releaseWaiters()}; timed waits then end at once. */
+    private boolean waitersReleased;
+
+    /**
+     * Creates a queue with one lane per entry of the arrays. Lane 0 is
+     * conventionally the most urgent.
+     *
+     * @param laneCapacities the capacity of each lane
+     * @param laneWeights the share of takes each lane gets while it has items
+     * @param laneSelector maps a non-null item to its lane index
+     * @throws IllegalArgumentException if there are no lanes, the arrays differ
+     *         in length, or a capacity or weight is not positive
+     */
+    public MultiLaneQueue(int[] laneCapacities, int[] laneWeights, ToIntFunction<? super T> laneSelector) {
+        if (laneCapacities.length == 0 || laneCapacities.length != laneWeights.length) {
+            throw new IllegalArgumentException("Need one capacity and one weight per lane");
+        }
+        int total = 0;
+        for (int i = 0; i < laneCapacities.length; i++) {
+            if (laneCapacities[i] <= 0) {
+                throw new IllegalArgumentException("Capacity must be greater than 0");
+            }
+            if (laneWeights[i] <= 0) {
+                throw new IllegalArgumentException("Lane weight must be greater than 0");
+            }
+            total += laneCapacities[i];
+        }
+        int laneCount = laneCapacities.length;
+        this.lanes = new Object[laneCount][];
+        this.notFull = new Condition[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Object[laneCapacities[i]];
+            notFull[i] = lock.newCondition();
+        }
+        this.weights = laneWeights.clone();
+        this.heads = new int[laneCount];
+        this.counts = new int[laneCount];
+        this.currentWeights = new int[laneCount];
+        this.laneSelector = laneSelector;
+        this.capacity = total;
+    }
+
+    /**
+     * Inserts the element into its lane, waiting if necessary for space in that lane.
+     *
+     * @param item the element to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void put(T item) throws InterruptedException {
+        put(laneOf(item), item);
+    }
+
+    /**
+     * Inserts the element into the given lane, waiting if necessary for space.
+     *
+     * @param lane the lane index
+     * @param item the element to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void put(int lane, T item) throws InterruptedException {
+        checkLane(lane);
+        lock.lockInterruptibly();
+        try {
+            while (counts[lane] == lanes[lane].length) {
+                notFull[lane].await();
+            }
+            enqueue(lane, item);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(T item) {
+        return offer(laneOf(item), item);
+    }
+
+    /**
+     * Inserts the element into the given lane if that lane is not full.
+     *
+     * @param lane the lane index
+     * @param item the element to add
+     * @return true if the element was added, false if the lane is full
+     */
+    public boolean offer(int lane, T item) {
+        checkLane(lane);
+        lock.lock();
+        try {
+            if (counts[lane] == lanes[lane].length) {
+                return false;
+            }
+            enqueue(lane, item);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        int lane = laneOf(item);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (counts[lane] == lanes[lane].length) {
+                if (nanos <= 0 || waitersReleased) {
+                    return false;
+                }
+                nanos = notFull[lane].awaitNanos(nanos);
+            }
+            enqueue(lane, item);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0 || waitersReleased) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts all elements, each into its own lane, waiting for space as needed.
+     *
+     * @param elements the elements to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void putAll(Collection<? extends T> elements) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            for (T item : elements) {
+                int lane = laneOf(item);
+                while (counts[lane] == lanes[lane].length) {
+                    notFull[lane].await();
+                }
+                enqueue(lane, item);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts elements, each into its own lane, until one meets a full lane,
+     * under one lock acquisition.
+     *
+     * @param elements the elements to add
+     * @return the number of elements inserted
+     */
+    @Override
+    public int offerAll(List<? extends T> elements) {
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < elements.size()) {
+                T item = elements.get(n);
+                int lane = laneOf(item);
+                if (counts[lane] == lanes[lane].length) {
+                    break;
+                }
+                enqueue(lane, item);
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxElements) {
+        if (maxElements <= 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            int n = Math.min(maxElements, count);
+            for (int i = 0; i < n; i++) {
+                destination.add(dequeue());
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<T> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        if (maxElements <= 0) {
+            throw new IllegalArgumentException("maxElements must be greater than 0");
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0 || waitersReleased) {
+                    return new ArrayList<>();
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            int n = Math.min(maxElements, count);
+            List<T> batch = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                batch.add(dequeue());
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean canReleaseWaiters() {
+        return true;
+    }
+
+    @Override
+    public void releaseWaiters() {
+        lock.lock();
+        try {
+            waitersReleased = true;
+            notEmpty.signalAll();
+            for (Condition condition : notFull) {
+                condition.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int laneOf(T item) {
+        if (item == null) {
+            return lanes.length - 1;
+        }
+        int lane = laneSelector.applyAsInt(item);
+        checkLane(lane);
+        return lane;
+    }
+
+    private void checkLane(int lane) {
+        if (lane < 0 || lane >= lanes.length) {
+            throw new IllegalArgumentException("No lane " + lane + " (lanes: " + lanes.length + ")");
+        }
+    }
+
+    /**
+     * Adds an element at the tail of a lane and wakes one consumer. Caller must hold the lock.
+     */
+    private void enqueue(int lane, T item) {
+        Object[] ring = lanes[lane];
+        ring[(heads[lane] + counts[lane]) % ring.length] = item;
+        counts[lane]++;
+        count++;
+        notEmpty.signal();
+    }
+
+    /**
+     * Removes the head of the lane chosen by smooth weighted round-robin and
+     * wakes one producer of that lane. Caller must hold the lock and count > 0.
+     */
+    @SuppressWarnings("unchecked")
+    private T dequeue() {
+        int lane = selectLane();
+        Object[] ring = lanes[lane];
+        T item = (T) ring[heads[lane]];
+        ring[heads[lane]] = null;
+        heads[lane] = (heads[lane] + 1) % ring.length;
+        counts[lane]--;
+        count--;
+        notFull[lane].signal();
+        return item;
+    }
+
+    /**
+     * Every eligible lane gains its weight, the lane with the highest running
+     * total wins and pays back the total weight of the eligible lanes. When
+     * pills head every non-empty lane, none is eligible and the lowest-index
+     * non-empty lane is taken from.
+     */
+    private int selectLane() {
+        int best = -1;
+        int totalWeight = 0;
+        for (int lane = 0; lane < lanes.length; lane++) {
+            if (!eligible(lane)) {
+                continue;
+            }
+            currentWeights[lane] += weights[lane];
+            totalWeight += weights[lane];
+            if (best < 0 || currentWeights[lane] > currentWeights[best]) {
+                best = lane;
+            }
+        }
+        if (best < 0) {
+            int lane = 0;
+            while (counts[lane] == 0) {
+                lane++;
+            }
+            return lane;
+        }
+        currentWeights[best] -= totalWeight;
+        return best;
+    }
+
+    /**
+     * A lane is eligible if it has items, unless its head is a null pill
+     * and another lane still has items.
+     */
+    private boolean eligible(int lane) {
+        if (counts[lane] == 0) {
+            return false;
+        }
+        return lanes[lane][heads[lane]] != null || counts[lane] == count;
+    }
+
+    /**
+     * Returns the number of lanes.
+     *
+     * @return the lane count
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Returns the number of elements waiting in one lane.
+     *
+     * @param lane the lane index
+     * @return the number of elements in that lane
+     */
+    public int size(int lane) {
+        checkLane(lane);
+        lock.lock();
+        try {
+            return counts[lane];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the combined capacity of all lanes.
+     *
+     * @return the total capacity
+     */
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the combined free space of all lanes. An item can still block
+     * if its own lane is full.
+     *
+     * @return the remaining capacity across lanes
+     */
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+}
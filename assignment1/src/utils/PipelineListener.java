@@ -0,0 +1,74 @@
+package utils;
+
+/**
+ * Receives progress events from {@link Producer} and {@link Consumer}.
+ *
+ * Events are level-gated: a worker checks {@link #isEnabled(Level)} once
+ * when it starts and never builds or delivers events above the listener's
+ * level, so a quiet listener costs nothing on the per-item hot path.
+ * Callbacks may be invoked concurrently from many worker threads.
+ */
+public interface PipelineListener {
+
+    /**
+     * Event detail, from least to most verbose.
+     */
+    enum Level {
+        /** No events at all. */
+        OFF,
+        /** Start/finish/interruption of each worker. */
+        LIFECYCLE,
+        /** Every item or batch moved through the queue. */
+        ITEM
+    }
+
+    /**
+     * Listener that receives nothing; used for production runs.
+     */
+    PipelineListener NONE = () -> Level.OFF;
+
+    /**
+     * Returns the most detailed level this listener wants to receive.
+     *
+     * @return the listener level
+     */
+    Level getLevel();
+
+    /**
+     * Returns true if events of the given level should be delivered.
+     *
+     * @param level the event level
+     * @return true if enabled
+     */
+    default boolean isEnabled(Level level) {
+        return level != Level.OFF && level.compareTo(getLevel()) <= 0;
+    }
+
+    /** Called after a producer queued one item. */
+    default void onProduced(String worker, Object item, BlockingBuffer<?> queue) {
+    }
+
+    /** Called after a producer queued a batch of items. */
+    default void onProducedBatch(String worker, int count, BlockingBuffer<?> queue) {
+    }
+
+    /** Called when a producer gave up on an item because the queue stayed full. */
+    default void onDropped(String worker, Object item) {
+    }
+
+    /** Called after a consumer handled one item. */
+    default void onConsumed(String worker, Object item, int totalConsumed, BlockingBuffer<?> queue) {
+    }
+
+    /** Called after a consumer handled a batch of items. */
+    default void onConsumedBatch(String worker, int count, int totalConsumed, BlockingBuffer<?> queue) {
+    }
+
+    /** Called when a worker starts, stops or receives the poison pill. */
+    default void onLifecycle(String worker, String message) {
+    }
+
+    /** Called when a worker stops because it was interrupted. */
+    default void onInterrupted(String worker) {
+    }
+}
@@ -0,0 +1,378 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs M producers and N consumers over one shared queue.
+ *
+ * Instead of null poison pills (which only ever stop one consumer), the
+ * producers share a {@link CountDownLatch}. Each producer counts it down
+ * after its last item is queued, and every consumer stops once the latch
+ * has opened and the queue is empty, so all N consumers terminate. With a
+ * {@link ClosableQueue}, the last producer also closes the queue, so idle
+ * consumers learn of the end from the queue instead of re-checking the latch.
+ * Any other queue has no such wake-up: idle consumers still poll it, waking
+ * every 10 ms to re-check the latch until the producers are done. Wrap the
+ * queue in a ClosableQueue to avoid that.
+ *
+ * Tasks run on an executor chosen by {@link ExecutionMode}: dedicated
+ * platform threads (the default), a fixed platform pool, or virtual threads.
+ *
+ * {@link #run()} blocks until the pipeline finishes. For a controlled stop,
+ * e.g. during a rolling deploy, use {@link #start()} and
+ * {@link #shutdown(ShutdownMode)} from another thread:
+ * <pre>
+ *   runner.start();
+ *   ...
+ *   runner.shutdown(ShutdownMode.DRAIN);
+ *   if (!runner.awaitTermination(30, TimeUnit.SECONDS)) {
+ *       runner.shutdown(ShutdownMode.NOW);
+ *       runner.awaitTermination(5, TimeUnit.SECONDS);
+ *   }
+ *   requeue(runner.getReport().getUnprocessed());
+ * </pre>
+ */
+public class PipelineRunner<T> {
+    private static final long SHUTDOWN_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final BlockingBuffer<T> queue;
+    private final List<Producer<T>> producers = new ArrayList<>();
+    private final List<Consumer<T>> consumers = new ArrayList<>();
+    private final List<T> unprocessed = Collections.synchronizedList(new ArrayList<>());
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+    private int poolSize;
+    private ExecutorService executor;
+    private volatile List<Future<?>> futures;
+    private volatile ShutdownMode shutdownMode;
+
+    /**
+     * Creates a pipeline with one producer per source list.
+     *
+     * @param queue the queue shared by all producers and consumers
+     * @param sources the source lists, one per producer
+     * @param consumerCount the number of consumers to run
+     * @param destination the list every consumer adds to; must be thread-safe
+     * @throws IllegalArgumentException if there are no sources or consumerCount <= 0
+     */
+    public PipelineRunner(BlockingBuffer<T> queue, List<List<T>> sources, int consumerCount, List<T> destination) {
+        this(queue, sources, consumerCount, Sink.of(destination));
+    }
+
+    /**
+     * Creates a pipeline whose consumers all hand items to one sink. Each
+     * consumer flushes the sink when it finishes; closing it is left to the caller.
+     *
+     * @param queue the queue shared by all producers and consumers
+     * @param sources the source lists, one per producer
+     * @param consumerCount the number of consumers to run
+     * @param sink the sink shared by every consumer; must be thread-safe
+     * @throws IllegalArgumentException if there are no sources or consumerCount <= 0
+     */
+    public PipelineRunner(BlockingBuffer<T> queue, List<List<T>> sources, int consumerCount, Sink<? super T> sink) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one source is required");
+        }
+        if (consumerCount <= 0) {
+            throw new IllegalArgumentException("Consumer count must be greater than 0");
+        }
+        this.queue = queue;
+
+        CountDownLatch producersDone = new CountDownLatch(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            producers.add(new Producer<>(queue, sources.get(i), "Producer-" + (i + 1))
+                    .withCompletionLatch(producersDone));
+        }
+        for (int i = 0; i < consumerCount; i++) {
+            consumers.add(new Consumer<T>(consumerQueue(queue, i), sink, "Consumer-" + (i + 1))
+                    .untilProducersDone(producersDone));
+        }
+    }
+
+    /**
+     * Attaches consumers of a {@link ShardedQueue} to its shards round-robin,
+     * so each one takes from its own shard and only steals when that is empty.
+     */
+    private static <T> BlockingBuffer<T> consumerQueue(BlockingBuffer<T> queue, int consumerIndex) {
+        if (queue instanceof ShardedQueue) {
+            ShardedQueue<T> sharded = (ShardedQueue<T>) queue;
+            return sharded.shard(consumerIndex % sharded.getShardCount());
+        }
+        return queue;
+    }
+
+    /**
+     * Returns true if waiting on the queue means synchronized + wait(),
+     * looking through any {@link ClosableQueue} and {@link InstrumentedQueue}
+     * decorators to the queue that actually stores the elements.
+     */
+    private static boolean waitsOnMonitor(BlockingBuffer<?> queue) {
+        while (true) {
+            if (queue instanceof ClosableQueue) {
+                queue = ((ClosableQueue<?>) queue).getDelegate();
+            } else if (queue instanceof InstrumentedQueue) {
+                queue = ((InstrumentedQueue<?>) queue).getDelegate();
+            } else {
+                return queue instanceof BoundedBlockingQueue;
+            }
+        }
+    }
+
+    /**
+     * Sets the batch size used by every producer and consumer.
+     *
+     * @param batchSize the number of items per queue call, must be > 0
+     * @return this runner
+     */
+    public PipelineRunner<T> withBatchSize(int batchSize) {
+        for (Producer<T> producer : producers) {
+            producer.withBatchSize(batchSize);
+        }
+        for (Consumer<T> consumer : consumers) {
+            consumer.withBatchSize(batchSize);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the listener used by every producer and consumer.
+     *
+     * @param listener the listener, e.g. {@link PipelineListener#NONE}
+     * @return this runner
+     */
+    public PipelineRunner<T> withListener(PipelineListener listener) {
+        for (Producer<T> producer : producers) {
+            producer.withListener(listener);
+        }
+        for (Consumer<T> consumer : consumers) {
+            consumer.withListener(listener);
+        }
+        return this;
+    }
+
+    /**
+     * Removes the demo delays and per-item logging from every producer and consumer.
+     *
+     * @return this runner
+     */
+    public PipelineRunner<T> withProductionMode() {
+        for (Producer<T> producer : producers) {
+            producer.withProductionMode();
+        }
+        for (Consumer<T> consumer : consumers) {
+            consumer.withProductionMode();
+        }
+        return this;
+    }
+
+    /**
+     * Selects the kind of threads producers and consumers run on.
+     *
+     * @param mode the execution mode
+     * @param poolSize the pool size for {@link ExecutionMode#PLATFORM_POOL}; ignored otherwise
+     * @return this runner
+     */
+    public PipelineRunner<T> withExecution(ExecutionMode mode, int poolSize) {
+        this.executionMode = mode;
+        this.poolSize = poolSize;
+        return this;
+    }
+
+    /**
+     * Runs every producer and consumer on the configured executor and waits
+     * for all of them to finish.
+     *
+     * @throws InterruptedException if interrupted while waiting; the worker
+     *         tasks are interrupted as well
+     * @throws IllegalStateException if a fixed pool is too small to run every
+     *         task at once (blocked tasks would starve the others), or
+     *         virtual threads would wait on a {@link BoundedBlockingQueue}
+     */
+    public void run() throws InterruptedException {
+        start();
+        awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Starts every producer and consumer on the configured executor and
+     * returns without waiting.
+     *
+     * @throws IllegalStateException if the pipeline was already started, a
+     *         fixed pool is too small to run every task at once, or virtual
+     *         threads would wait on a {@link BoundedBlockingQueue}
+     */
+    public synchronized void start() {
+        if (futures != null) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+        int taskCount = producers.size() + consumers.size();
+        if (executionMode == ExecutionMode.PLATFORM_POOL && poolSize < taskCount) {
+            throw new IllegalStateException("Pool size " + poolSize + " is smaller than the "
+                    + taskCount + " producers and consumers");
+        }
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS && waitsOnMonitor(queue)) {
+            throw new IllegalStateException("BoundedBlockingQueue pins virtual threads to their carriers "
+                    + "while waiting; use LockingBoundedQueue or RingBufferQueue");
+        }
+
+        executor = executionMode.newExecutor(poolSize, "Pipeline");
+        List<Future<?>> submitted = new ArrayList<>();
+        for (Producer<T> producer : producers) {
+            submitted.add(executor.submit(producer));
+        }
+        for (Consumer<T> consumer : consumers) {
+            submitted.add(executor.submit(consumer));
+        }
+        futures = submitted;
+    }
+
+    /**
+     * Stops a running pipeline; see {@link ShutdownMode}. Producers stop
+     * before their next item, and a {@link ClosableQueue} is closed so no
+     * one else can add to it either. With DRAIN the consumers then empty the
+     * queue; with NOW they stop after their current item and
+     * {@link #awaitTermination} removes what is left into the report. A NOW
+     * shutdown may follow a DRAIN that is taking too long.
+     *
+     * @param mode whether to drain the queue or stop right away
+     * @throws IllegalStateException if the pipeline was not started
+     */
+    public void shutdown(ShutdownMode mode) {
+        if (futures == null) {
+            throw new IllegalStateException("Pipeline has not been started");
+        }
+        shutdownMode = mode;
+        for (Producer<T> producer : producers) {
+            producer.stop();
+        }
+        if (queue instanceof ClosableQueue) {
+            ((ClosableQueue<T>) queue).close();
+        }
+        if (mode == ShutdownMode.NOW) {
+            for (Consumer<T> consumer : consumers) {
+                consumer.stop();
+            }
+        }
+    }
+
+    /**
+     * Waits for every producer and consumer to finish. After a NOW shutdown,
+     * items left in the queue are moved to {@link ShutdownReport#getUnprocessed()}
+     * while waiting, which also releases producers blocked on a full queue.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the pipeline terminated, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting; the worker
+     *         tasks are interrupted as well
+     * @throws IllegalStateException if the pipeline was not started, or a task failed
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (futures == null) {
+            throw new IllegalStateException("Pipeline has not been started");
+        }
+        long nanos = unit.toNanos(timeout);
+        long start = System.nanoTime();
+        try {
+            for (Future<?> future : futures) {
+                while (true) {
+                    if (shutdownMode == ShutdownMode.NOW) {
+                        queue.drainTo(unprocessed, Integer.MAX_VALUE);
+                    }
+                    long remaining = nanos - (System.nanoTime() - start);
+                    try {
+                        // Short waits, so a NOW shutdown from another thread is noticed
+                        future.get(Math.max(0, Math.min(remaining, SHUTDOWN_CHECK_NANOS)), TimeUnit.NANOSECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        if (remaining <= SHUTDOWN_CHECK_NANOS) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            if (shutdownMode == ShutdownMode.NOW) {
+                queue.drainTo(unprocessed, Integer.MAX_VALUE);
+            }
+            executor.shutdown();
+            return true;
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw e;
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            throw new IllegalStateException("Pipeline task failed", e.getCause());
+        }
+    }
+
+    /**
+     * Returns where the items of this pipeline are right now; after
+     * termination, every source item is accounted for.
+     *
+     * @return a snapshot of the produced, consumed, unprocessed and unsent counts
+     */
+    public ShutdownReport<T> getReport() {
+        int produced = 0;
+        int rejected = 0;
+        int unsent = 0;
+        for (Producer<T> producer : producers) {
+            produced += producer.getItemsProduced();
+            rejected += producer.getItemsRejected();
+            unsent += producer.getItemsUnsent();
+        }
+        List<T> snapshot;
+        synchronized (unprocessed) {
+            snapshot = new ArrayList<>(unprocessed);
+        }
+        return new ShutdownReport<>(produced, getItemsConsumed(),
+                rejected, unsent, snapshot);
+    }
+
+    /**
+     * Returns the total number of items consumed across all consumers.
+     * Only meaningful once {@link #run()} or {@link #awaitTermination} has returned.
+     *
+     * @return the number of items consumed
+     */
+    public int getItemsConsumed() {
+        int total = 0;
+        for (Consumer<T> consumer : consumers) {
+            total += consumer.getItemsConsumed();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the queue shared by this pipeline.
+     *
+     * @return the queue
+     */
+    public BlockingBuffer<T> getQueue() {
+        return queue;
+    }
+
+    /**
+     * Returns the producers of this pipeline.
+     *
+     * @return an unmodifiable list of producers
+     */
+    public List<Producer<T>> getProducers() {
+        return Collections.unmodifiableList(producers);
+    }
+
+    /**
+     * Returns the consumers of this pipeline.
+     *
+     * @return an unmodifiable list of consumers
+     */
+    public List<Consumer<T>> getConsumers() {
+        return Collections.unmodifiableList(consumers);
+    }
+}
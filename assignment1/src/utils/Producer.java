@@ -1,57 +1,324 @@
 package utils;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Producer that reads items from a source list and puts them into a bounded queue.
- * Uses a null "poison pill" to signal completion to consumers.
+ * Uses a null "poison pill" to signal completion to consumers, unless it is
+ * attached to a completion latch shared with the consumers.
+ *
+ * {@link #stop()} ends production early but still signals completion, so
+ * consumers drain what was queued. If the queue is a closed
+ * {@link ClosableQueue} the producer stops without a poison pill, since
+ * consumers see the close themselves.
  */
 public class Producer<T> implements Runnable {
-    private final BoundedBlockingQueue<T> queue;
+    private final BlockingBuffer<T> queue;
     private final List<T> source;
     private final String name;
+    private int batchSize = 1;
+    private long offerTimeoutNanos = -1;
+    private RejectionHandler<? super T> rejectionHandler = item -> { };
+    private volatile int itemsRejected = 0;
+    private volatile int itemsProduced = 0;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile boolean stopRequested;
+    private CountDownLatch completion;
+    private long delayMillis = 10;
+    private PipelineListener listener = new ConsoleListener(PipelineListener.Level.ITEM);
 
     /**
      * Creates a new Producer.
      * 
-     * @param queue the bounded blocking queue to produce items into
+     * @param queue the bounded queue to produce items into
      * @param source the source list to read items from
      */
-    public Producer(BoundedBlockingQueue<T> queue, List<T> source) {
+    public Producer(BlockingBuffer<T> queue, List<T> source) {
         this(queue, source, "Producer");
     }
 
     /**
      * Creates a new Producer with a custom name.
      * 
-     * @param queue the bounded blocking queue to produce items into
+     * @param queue the bounded queue to produce items into
      * @param source the source list to read items from
      * @param name the name for this producer (for logging)
      */
-    public Producer(BoundedBlockingQueue<T> queue, List<T> source, String name) {
+    public Producer(BlockingBuffer<T> queue, List<T> source, String name) {
         this.queue = queue;
         this.source = source;
         this.name = name;
     }
 
+    /**
+     * Creates a producer that wraps every item in a {@link Sequenced} envelope
+     * numbered by its position in the source, so consumers running in
+     * parallel can restore source order with a {@link ReorderBuffer}.
+     * 
+     * @param queue the bounded queue to produce envelopes into
+     * @param source the source list to read items from
+     * @param name the name for this producer (for logging)
+     * @return a producer of numbered items
+     */
+    public static <T> Producer<Sequenced<T>> sequenced(BlockingBuffer<Sequenced<T>> queue, List<T> source,
+                                                       String name) {
+        return new Producer<>(queue, Sequenced.number(source), name);
+    }
+
+    /**
+     * Sets how many items are handed to the queue per call. With a batch
+     * size above 1 the producer uses putAll(), so the queue lock and
+     * consumer wake-ups are amortized over the whole batch.
+     * 
+     * @param batchSize the number of items per put, must be > 0
+     * @return this producer
+     * @throws IllegalArgumentException if batchSize <= 0
+     */
+    public Producer<T> withBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Makes the producer shed load instead of blocking indefinitely: each item
+     * is offered with the given timeout and, if the queue stays full, handed
+     * to the rejection handler (e.g. to drop or reroute it). The poison pill
+     * is still delivered with a blocking put.
+     * 
+     * @param timeout how long to wait for space per item
+     * @param unit the unit of the timeout
+     * @param onRejected called with every item that could not be queued
+     * @return this producer
+     */
+    public Producer<T> withOfferTimeout(long timeout, TimeUnit unit, RejectionHandler<? super T> onRejected) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout must not be negative");
+        }
+        this.offerTimeoutNanos = unit.toNanos(timeout);
+        this.rejectionHandler = onRejected;
+        return this;
+    }
+
+    /**
+     * Sets the artificial delay after each item (or batch). The default of
+     * 10ms makes the demo output easy to follow; use 0 for real workloads.
+     * 
+     * @param delayMillis the delay in milliseconds, 0 for none
+     * @return this producer
+     */
+    public Producer<T> withDelay(long delayMillis) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("Delay must not be negative");
+        }
+        this.delayMillis = delayMillis;
+        return this;
+    }
+
+    /**
+     * Sets the listener that receives progress events. The default prints
+     * every item to the console.
+     * 
+     * @param listener the listener, e.g. {@link PipelineListener#NONE}
+     * @return this producer
+     */
+    public Producer<T> withListener(PipelineListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Configures this producer for throughput: no artificial delay and no
+     * per-item console logging.
+     * 
+     * @return this producer
+     */
+    public Producer<T> withProductionMode() {
+        return withDelay(0).withListener(PipelineListener.NONE);
+    }
+
+    /**
+     * Signals completion through a shared latch instead of a poison pill.
+     * The latch is counted down once this producer stops, after its last
+     * item has been queued (or if it is interrupted). If the queue is a
+     * {@link ClosableQueue}, the producer that brings the latch to zero
+     * closes it, so waiting consumers see the end of data right away.
+     * 
+     * @param completion latch shared by all producers of the queue
+     * @return this producer
+     */
+    public Producer<T> withCompletionLatch(CountDownLatch completion) {
+        this.completion = completion;
+        return this;
+    }
+
+    /**
+     * Asks this producer to stop before its next item (or batch). Completion
+     * is still signalled, so consumers finish the items already queued. An
+     * item the producer is blocked on is still delivered once space frees.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
     @Override
     public void run() {
+        startNanos = System.nanoTime();
+        boolean logItems = listener.isEnabled(PipelineListener.Level.ITEM);
+        boolean logLifecycle = listener.isEnabled(PipelineListener.Level.LIFECYCLE);
         try {
-            for (T value : source) {
-                queue.put(value);
-                System.out.println(name + " produced: " + value + 
-                                 " (Queue size: " + queue.size() + "/" + queue.getCapacity() + ")");
-                
-                // Optional: Add small delay to better observe threading behavior
-                Thread.sleep(10);
+            if (batchSize == 1) {
+                for (T value : source) {
+                    if (stopRequested) {
+                        break;
+                    }
+                    if (!deliver(value)) {
+                        if (logItems) {
+                            listener.onDropped(name, value);
+                        }
+                        continue;
+                    }
+                    if (logItems) {
+                        listener.onProduced(name, value, queue);
+                    }
+                    pause();
+                }
+            } else {
+                for (int from = 0; from < source.size() && !stopRequested; from += batchSize) {
+                    List<T> batch = source.subList(from, Math.min(from + batchSize, source.size()));
+                    if (offerTimeoutNanos < 0) {
+                        try {
+                            queue.putAll(batch);
+                        } catch (QueueClosedException e) {
+                            itemsProduced += e.getItemsAccepted();
+                            throw e;
+                        }
+                        itemsProduced += batch.size();
+                    } else {
+                        // Each item gets its own deadline so rejections stay per item
+                        for (T value : batch) {
+                            if (!deliver(value) && logItems) {
+                                listener.onDropped(name, value);
+                            }
+                        }
+                    }
+                    if (logItems) {
+                        listener.onProducedBatch(name, batch.size(), queue);
+                    }
+                    pause();
+                }
+            }
+            String outcome = stopRequested ? "stopped" : "finished";
+            if (completion == null) {
+                // Send poison pill to signal completion
+                queue.put(null);
+                if (logLifecycle) {
+                    listener.onLifecycle(name, outcome + " - sent poison pill");
+                }
+            } else if (logLifecycle) {
+                listener.onLifecycle(name, outcome);
+            }
+        } catch (QueueClosedException e) {
+            if (logLifecycle) {
+                listener.onLifecycle(name, "queue closed - stopping");
             }
-            // Send poison pill to signal completion
-            queue.put(null);
-            System.out.println(name + " finished - sent poison pill");
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            System.err.println(name + " was interrupted");
+            if (logLifecycle) {
+                listener.onInterrupted(name);
+            }
+        } finally {
+            endNanos = System.nanoTime();
+            if (completion != null) {
+                completion.countDown();
+                if (completion.getCount() == 0 && queue instanceof ClosableQueue) {
+                    // Last producer out: wake the consumers waiting on the empty queue
+                    ((ClosableQueue<T>) queue).close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Optional delay between items to make the threading behaviour observable.
+     */
+    private void pause() throws InterruptedException {
+        if (delayMillis > 0) {
+            Thread.sleep(delayMillis);
+        }
+    }
+
+    /**
+     * Hands one item to the queue, honouring the offer timeout if configured.
+     * 
+     * @return false if the item was rejected
+     */
+    private boolean deliver(T value) throws InterruptedException {
+        if (offerTimeoutNanos < 0) {
+            queue.put(value);
+            itemsProduced++;
+            return true;
         }
+        if (queue.offer(value, offerTimeoutNanos, TimeUnit.NANOSECONDS)) {
+            itemsProduced++;
+            return true;
+        }
+        itemsRejected++;
+        rejectionHandler.rejected(value);
+        return false;
+    }
+
+    /**
+     * Gets the number of items rejected because the queue stayed full
+     * for longer than the offer timeout.
+     * 
+     * @return the number of rejected items
+     */
+    public int getItemsRejected() {
+        return itemsRejected;
+    }
+
+    /**
+     * Gets the number of source items that were neither handed to the queue
+     * nor rejected, e.g. because the producer was stopped early.
+     * 
+     * @return the number of unsent items
+     */
+    public int getItemsUnsent() {
+        return source.size() - itemsProduced - itemsRejected;
+    }
+
+    /**
+     * Gets the number of items successfully handed to the queue.
+     * 
+     * @return the number of produced items
+     */
+    public int getItemsProduced() {
+        return itemsProduced;
+    }
+
+    /**
+     * Gets the production rate, measured from the start of {@link #run()}
+     * until it returns (or until now while it is still running).
+     * 
+     * @return items produced per second, or 0 if the producer has not started
+     */
+    public double getItemsPerSecond() {
+        return Throughput.perSecond(itemsProduced, startNanos, endNanos);
+    }
+
+    /**
+     * Gets the number of items handed to the queue per call.
+     * 
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
     }
 
     /**
@@ -62,4 +329,17 @@ public class Producer<T> implements Runnable {
     public String getName() {
         return name;
     }
+
+    /**
+     * Callback for items that could not be queued within the offer timeout.
+     */
+    @FunctionalInterface
+    public interface RejectionHandler<T> {
+        /**
+         * Called with an item the queue did not accept in time.
+         * 
+         * @param item the rejected item
+         */
+        void rejected(T item);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package utils;
+
+/**
+ * Thrown by a closed {@link ClosableQueue} (or closed {@link IntBoundedQueue}
+ * / {@link LongBoundedQueue}): by puts once the queue is closed, and by
+ * blocking takes once it is closed and fully drained. A closed
+ * {@link MappedFileQueue} has released its files, so it throws this from
+ * every put and take, including those that were waiting.
+ */
+public class QueueClosedException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    private final int itemsAccepted;
+
+    /**
+     * Creates the exception with a message.
+     *
+     * @param message what was rejected
+     */
+    public QueueClosedException(String message) {
+        this(message, 0);
+    }
+
+    /**
+     * Creates the exception for a batch put that was cut short by the close.
+     *
+     * @param message what was rejected
+     * @param itemsAccepted how many items of the batch were queued before the close
+     */
+    public QueueClosedException(String message, int itemsAccepted) {
+        super(message);
+        this.itemsAccepted = itemsAccepted;
+    }
+
+    /**
+     * Returns how many items of a batch put were queued before the close;
+     * they stay in the queue. 0 for single-item operations.
+     *
+     * @return the number of accepted items
+     */
+    public int getItemsAccepted() {
+        return itemsAccepted;
+    }
+}
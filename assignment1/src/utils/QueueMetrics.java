@@ -0,0 +1,135 @@
+package utils;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low-overhead counters describing how a queue is used.
+ *
+ * All counters are striped {@link LongAdder}s, so recording from many
+ * producer and consumer threads does not add a shared point of contention.
+ * Comparing the two blocked times tells whether a pipeline is
+ * producer-bound (consumers wait on empty) or consumer-bound (producers
+ * wait on full). The high-water mark is a {@link LongAccumulator} taking
+ * the maximum, which only writes when the occupancy is a new peak.
+ */
+public class QueueMetrics {
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dequeued = new LongAdder();
+    private final LongAdder producerBlockedNanos = new LongAdder();
+    private final LongAdder consumerBlockedNanos = new LongAdder();
+    private final LongAccumulator highWaterMark = new LongAccumulator(Math::max, 0);
+    private final LatencyHistogram timeInQueue = new LatencyHistogram();
+
+    /**
+     * Records elements added to the queue.
+     *
+     * @param count the number of elements
+     */
+    public void recordEnqueued(int count) {
+        enqueued.add(count);
+    }
+
+    /**
+     * Records elements removed from the queue.
+     *
+     * @param count the number of elements
+     */
+    public void recordDequeued(int count) {
+        dequeued.add(count);
+    }
+
+    /**
+     * Records time a producer spent waiting for space.
+     *
+     * @param nanos the wait in nanoseconds
+     */
+    public void recordProducerBlocked(long nanos) {
+        producerBlockedNanos.add(nanos);
+    }
+
+    /**
+     * Records time a consumer spent waiting for an element.
+     *
+     * @param nanos the wait in nanoseconds
+     */
+    public void recordConsumerBlocked(long nanos) {
+        consumerBlockedNanos.add(nanos);
+    }
+
+    /**
+     * Records an observed occupancy; only raises the high-water mark.
+     * {@link InstrumentedQueue} calls this after every enqueue.
+     *
+     * @param occupancy the number of queued elements
+     */
+    public void recordOccupancy(int occupancy) {
+        highWaterMark.accumulate(occupancy);
+    }
+
+    /**
+     * Records how long one element stayed in the queue.
+     *
+     * @param nanos the time in queue in nanoseconds
+     */
+    public void recordTimeInQueue(long nanos) {
+        timeInQueue.record(nanos);
+    }
+
+    /**
+     * @return the number of elements added
+     */
+    public long getEnqueued() {
+        return enqueued.sum();
+    }
+
+    /**
+     * @return the number of elements removed
+     */
+    public long getDequeued() {
+        return dequeued.sum();
+    }
+
+    /**
+     * @return total time producers waited for space, in nanoseconds
+     */
+    public long getProducerBlockedNanos() {
+        return producerBlockedNanos.sum();
+    }
+
+    /**
+     * @return total time consumers waited for elements, in nanoseconds
+     */
+    public long getConsumerBlockedNanos() {
+        return consumerBlockedNanos.sum();
+    }
+
+    /**
+     * Returns the highest occupancy observed right after an enqueue, or the
+     * capacity once a producer has found the queue full.
+     *
+     * @return the high-water mark
+     */
+    public int getHighWaterMark() {
+        return (int) highWaterMark.get();
+    }
+
+    /**
+     * Returns the distribution of time elements spent in the queue.
+     *
+     * @return the time-in-queue histogram
+     */
+    public LatencyHistogram getTimeInQueue() {
+        return timeInQueue;
+    }
+
+    @Override
+    public String toString() {
+        return "enqueued=" + getEnqueued()
+                + " dequeued=" + getDequeued()
+                + " producerBlocked=" + getProducerBlockedNanos() / 1_000_000 + "ms"
+                + " consumerBlocked=" + getConsumerBlockedNanos() / 1_000_000 + "ms"
+                + " highWaterMark=" + getHighWaterMark()
+                + " timeInQueue[" + timeInQueue + "]";
+    }
+}
@@ -0,0 +1,325 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Publisher} fed by a bounded queue, so queue-fed stages can
+ * be composed with asynchronous code without parking a thread per consumer.
+ *
+ * Producers add items through {@link #put(Object)} or {@link #offer(Object)};
+ * a full queue still blocks (or rejects) producers, which is the upstream
+ * backpressure. On the downstream side each subscription turns its
+ * {@code request(n)} demand into {@code drainTo} calls on the queue, run as
+ * short tasks on an executor (the common pool by default) whenever items or
+ * demand arrive. Nothing waits: an idle subscription holds no thread.
+ *
+ * Several subscribers compete for items like consumers of one queue: every
+ * item goes to exactly one of them. A subscriber whose onNext throws is
+ * cancelled and receives onError; the items of its current batch that it
+ * had not yet accepted were already removed from the queue, so they are
+ * counted by {@link #getDroppedCount()}. The same goes for a subscriber that
+ * cancels in the middle of a batch: delivery stops at once and the rest of
+ * the batch is counted as dropped. After {@link #close()}, each subscriber
+ * receives onComplete once the queue is empty. Items must be added through
+ * the publisher, since a put straight into the queue would not wake the
+ * subscriptions. Reactive Streams forbids null items, so nulls are rejected.
+ */
+public class QueuePublisher<T> implements Flow.Publisher<T>, AutoCloseable {
+    /** The most items handed to one subscriber per drainTo call. */
+    private static final int MAX_DRAIN = 64;
+
+    private final BlockingBuffer<T> queue;
+    private final Executor executor;
+    private final List<QueueSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicInteger activePuts = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Creates a publisher delivering on the common fork/join pool.
+     *
+     * @param queue the queue buffering items between producers and subscribers
+     */
+    public QueuePublisher(BlockingBuffer<T> queue) {
+        this(queue, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a publisher delivering on the given executor.
+     *
+     * @param queue the queue buffering items between producers and subscribers
+     * @param executor runs the delivery tasks; must not run them on the calling thread
+     *        if producers call put() while holding locks subscribers need
+     */
+    public QueuePublisher(BlockingBuffer<T> queue, Executor executor) {
+        this.queue = queue;
+        this.executor = executor;
+    }
+
+    /**
+     * Adds an item, waiting for space if the queue is full.
+     *
+     * @param item the item to publish
+     * @throws InterruptedException if interrupted while waiting
+     * @throws NullPointerException if item is null
+     * @throws IllegalStateException if the publisher is closed
+     */
+    public void put(T item) throws InterruptedException {
+        beginPut(item);
+        try {
+            queue.put(item);
+        } finally {
+            endPut();
+        }
+    }
+
+    /**
+     * Adds an item if the queue has space right now.
+     *
+     * @param item the item to publish
+     * @return true if the item was added, false if the queue is full
+     * @throws NullPointerException if item is null
+     * @throws IllegalStateException if the publisher is closed
+     */
+    public boolean offer(T item) {
+        beginPut(item);
+        try {
+            return queue.offer(item);
+        } finally {
+            endPut();
+        }
+    }
+
+    /**
+     * Adds an item, waiting up to the given timeout for space.
+     *
+     * @param item the item to publish
+     * @param timeout how long to wait for space
+     * @param unit the unit of the timeout
+     * @return true if the item was added, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     * @throws NullPointerException if item is null
+     * @throws IllegalStateException if the publisher is closed
+     */
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        beginPut(item);
+        try {
+            return queue.offer(item, timeout, unit);
+        } finally {
+            endPut();
+        }
+    }
+
+    /**
+     * Stops accepting items. Subscribers still receive everything queued,
+     * then onComplete.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        signalAll();
+    }
+
+    /**
+     * Returns true once {@link #close()} has been called.
+     *
+     * @return true if the publisher rejects new items
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the number of items lost because a subscriber's onNext threw
+     * (the failing item and the rest of the batch drained for it) or because
+     * a subscriber cancelled before its batch was delivered.
+     *
+     * @return the number of dropped items
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of subscribers that have neither cancelled nor completed.
+     *
+     * @return the active subscriber count
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        QueueSubscription subscription = new QueueSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        // Completes at once if the publisher is already closed and drained
+        subscription.schedule();
+    }
+
+    /**
+     * Registers an in-progress put before reading the closed flag, so a
+     * subscription that sees "closed, no active puts, empty queue" can
+     * complete knowing no item is still on its way (as in {@link ClosableQueue}).
+     */
+    private void beginPut(T item) {
+        if (item == null) {
+            throw new NullPointerException("Flow items must not be null");
+        }
+        activePuts.incrementAndGet();
+        if (closed) {
+            activePuts.decrementAndGet();
+            throw new IllegalStateException("Publisher is closed");
+        }
+    }
+
+    private void endPut() {
+        activePuts.decrementAndGet();
+        signalAll();
+    }
+
+    /**
+     * Wakes every subscription that has demand; the first to run takes the new items.
+     */
+    private void signalAll() {
+        for (QueueSubscription subscription : subscriptions) {
+            if (subscription.demand.get() > 0 || closed) {
+                subscription.schedule();
+            }
+        }
+    }
+
+    /**
+     * Delivers items to one subscriber. Delivery runs as an executor task;
+     * a work-in-progress counter guarantees at most one task per
+     * subscription at a time (so onNext calls never overlap) and that a
+     * signal arriving during a task makes it loop once more instead of
+     * being lost.
+     */
+    private final class QueueSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final List<T> buffer = new ArrayList<>(MAX_DRAIN);
+        private volatile boolean done;
+        private volatile Throwable invalidRequest;
+
+        QueueSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("request(" + n + "): demand must be positive");
+            } else {
+                // Saturate at Long.MAX_VALUE, which means unbounded demand
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            subscriptions.remove(this);
+        }
+
+        void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            try {
+                do {
+                    drain();
+                    missed = pending.addAndGet(-missed);
+                } while (missed != 0);
+            } catch (RuntimeException | Error e) {
+                // pending stays raised, so this subscription will not run again:
+                // end it explicitly instead of leaving it silently stuck
+                terminate();
+                throw e;
+            }
+        }
+
+        private void drain() {
+            if (done) {
+                return;
+            }
+            if (invalidRequest != null) {
+                terminate();
+                subscriber.onError(invalidRequest);
+                return;
+            }
+            long requested = demand.get();
+            while (requested > 0 && !done) {
+                buffer.clear();
+                int n = queue.drainTo(buffer, (int) Math.min(requested, MAX_DRAIN));
+                if (n == 0) {
+                    break;
+                }
+                // Re-check done before every item: onNext may cancel
+                int delivered = 0;
+                while (delivered < n && !done) {
+                    try {
+                        subscriber.onNext(buffer.get(delivered));
+                    } catch (Throwable e) {
+                        // A throwing subscriber breaks the protocol and is cancelled;
+                        // the rest of its batch was already removed from the queue
+                        fail(e, n - delivered);
+                        return;
+                    }
+                    delivered++;
+                }
+                requested = requested == Long.MAX_VALUE ? requested : demand.addAndGet(-delivered);
+                if (delivered < n) {
+                    // Cancelled mid-batch; the rest was already removed from the queue
+                    dropped.addAndGet(n - delivered);
+                    break;
+                }
+            }
+            buffer.clear();
+            if (!done && closed && activePuts.get() == 0 && queue.isEmpty()) {
+                terminate();
+                subscriber.onComplete();
+            }
+        }
+
+        private void terminate() {
+            done = true;
+            subscriptions.remove(this);
+        }
+
+        /**
+         * Cancels after onNext threw and tells the subscriber how many items were lost.
+         */
+        private void fail(Throwable cause, int lost) {
+            terminate();
+            buffer.clear();
+            dropped.addAndGet(lost);
+            try {
+                subscriber.onError(new IllegalStateException(
+                        "onNext threw; " + lost + " item(s) of the batch were dropped", cause));
+            } catch (RuntimeException ignored) {
+                // The subscriber is already cancelled
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package utils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Subscriber} that feeds a bounded queue, so the output of an
+ * asynchronous publisher can be consumed by the blocking side of this
+ * project, e.g. a {@link Consumer}.
+ *
+ * Demand follows the free space of the queue: the subscriber requests as
+ * many items as fit, and requests more only as readers of
+ * {@link #asQueue()} take items out. onNext therefore never blocks the
+ * publisher's thread. To avoid a request per item, new demand is signalled
+ * once at least a quarter of the capacity is free.
+ *
+ * The queue should only be filled by this subscriber. When the publisher
+ * completes (or fails), {@link #getCompletionLatch()} opens, which is what
+ * {@link Consumer#untilProducersDone(CountDownLatch)} waits for:
+ * <pre>
+ *   QueueSubscriber&lt;Order&gt; subscriber = new QueueSubscriber&lt;&gt;(new LockingBoundedQueue&lt;&gt;(256));
+ *   publisher.subscribe(subscriber);
+ *   new Consumer&lt;&gt;(subscriber.asQueue(), sink).untilProducersDone(subscriber.getCompletionLatch()).run();
+ * </pre>
+ */
+public class QueueSubscriber<T> implements Flow.Subscriber<T> {
+    private final BlockingBuffer<T> queue;
+    private final CountDownLatch completion = new CountDownLatch(1);
+    private final int requestThreshold;
+    private final BlockingBuffer<T> view = new ReadView();
+    private Flow.Subscription subscription;
+    /** Items requested from the publisher but not yet received. */
+    private long outstanding;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile Throwable error;
+
+    /**
+     * Creates a subscriber feeding the given queue.
+     *
+     * @param queue the queue to fill; should not be shared with other producers
+     */
+    public QueueSubscriber(BlockingBuffer<T> queue) {
+        this.queue = queue;
+        this.requestThreshold = Math.max(1, queue.getCapacity() / 4);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this) {
+            if (this.subscription != null) {
+                // Rule 2.5: only one active subscription
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+        }
+        replenish();
+    }
+
+    /**
+     * Queues one item. Demand never exceeds the free space, so this only
+     * blocks if something else filled the queue. If the publisher's thread
+     * is interrupted while it waits, the item is lost: it is counted by
+     * {@link #getDroppedCount()}, the subscription is cancelled and the
+     * failure is reported by {@link #getError()}, so readers see the stream
+     * end instead of a silent gap.
+     *
+     * @param item the item from the publisher
+     */
+    @Override
+    public void onNext(T item) {
+        try {
+            if (!queue.offer(item)) {
+                queue.put(item);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+            if (error == null) {
+                error = new IllegalStateException("Interrupted while queueing an item; subscription cancelled", e);
+            }
+            cancel();
+            return;
+        }
+        // Count the item as received only once it is in the queue, so the
+        // free space computed by replenish() is never overestimated
+        synchronized (this) {
+            outstanding--;
+        }
+        // A reader may have taken the item before it was counted, when the
+        // space it freed still looked requested; ask for it now
+        replenish();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        completion.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        completion.countDown();
+    }
+
+    /**
+     * Cancels the subscription; items already queued stay available.
+     */
+    public void cancel() {
+        Flow.Subscription current;
+        synchronized (this) {
+            current = subscription;
+        }
+        if (current != null) {
+            current.cancel();
+        }
+        completion.countDown();
+    }
+
+    /**
+     * Returns a latch that opens when the publisher completes, fails, or
+     * the subscription is cancelled.
+     *
+     * @return the completion latch
+     */
+    public CountDownLatch getCompletionLatch() {
+        return completion;
+    }
+
+    /**
+     * Returns the error the publisher failed with, or the interrupt that
+     * made this subscriber drop an item and cancel, if any.
+     *
+     * @return the error, or null if the stream has not failed
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Returns the number of items lost because the publisher's thread was
+     * interrupted while onNext waited for space in the queue.
+     *
+     * @return the number of dropped items
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns a read view of the queue. Every removal through the view
+     * frees space, and thereby signals new demand to the publisher.
+     * Inserting through the view is not supported.
+     *
+     * @return the queue to consume from
+     */
+    public BlockingBuffer<T> asQueue() {
+        return view;
+    }
+
+    /**
+     * Requests as many items as fit in the free space of the queue, once
+     * that is at least the threshold.
+     */
+    private void replenish() {
+        Flow.Subscription current;
+        long request;
+        synchronized (this) {
+            current = subscription;
+            if (current == null || completion.getCount() == 0) {
+                return;
+            }
+            long free = queue.remainingCapacity() - outstanding;
+            if (free < requestThreshold) {
+                return;
+            }
+            request = free;
+            outstanding += request;
+        }
+        current.request(request);
+    }
+
+    /**
+     * The consumer side of the queue: removals signal demand, inserts are rejected.
+     */
+    private final class ReadView implements BlockingBuffer<T> {
+        @Override
+        public void put(T item) {
+            throw new UnsupportedOperationException("Items come from the publisher");
+        }
+
+        @Override
+        public T take() throws InterruptedException {
+            T item = queue.take();
+            replenish();
+            return item;
+        }
+
+        @Override
+        public boolean offer(T item) {
+            throw new UnsupportedOperationException("Items come from the publisher");
+        }
+
+        @Override
+        public boolean offer(T item, long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException("Items come from the publisher");
+        }
+
+        @Override
+        public T poll() {
+            T item = queue.poll();
+            replenish();
+            return item;
+        }
+
+        @Override
+        public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+            T item = queue.poll(timeout, unit);
+            replenish();
+            return item;
+        }
+
+        @Override
+        public void putAll(Collection<? extends T> items) {
+            throw new UnsupportedOperationException("Items come from the publisher");
+        }
+
+        @Override
+        public int drainTo(Collection<? super T> destination, int maxElements) {
+            int n = queue.drainTo(destination, maxElements);
+            replenish();
+            return n;
+        }
+
+        @Override
+        public List<T> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+            List<T> batch = queue.takeBatch(maxElements, timeout, unit);
+            replenish();
+            return batch;
+        }
+
+        @Override
+        public boolean canReleaseWaiters() {
+            return queue.canReleaseWaiters();
+        }
+
+        @Override
+        public void releaseWaiters() {
+            queue.releaseWaiters();
+        }
+
+        @Override
+        public int size() {
+            return queue.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return queue.isEmpty();
+        }
+
+        @Override
+        public int getCapacity() {
+            return queue.getCapacity();
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return queue.remainingCapacity();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A sink that restores source order after parallel consumers: it accepts
+ * {@link Sequenced} items in any order and passes their values to the
+ * destination strictly by sequence number, starting at 0.
+ *
+ * Items that arrive early wait in a ring of {@code window} slots. A consumer
+ * whose item is a full window ahead of the next expected one blocks until
+ * the gap is filled, so memory stays capped at {@code window} items and a
+ * slow consumer throttles the others instead of letting them run ahead.
+ * The consumer that fills a gap releases the whole in-order run behind it
+ * with one {@code acceptAll} on the destination.
+ *
+ * Requirements: every sequence number arrives exactly once, and the queue
+ * in front of the consumers hands out items in sequence order (any FIFO
+ * queue fed by one sequenced producer), so the next expected item is never
+ * stuck behind a blocked consumer. The window should be at least the
+ * number of consumers times their batch size.
+ *
+ * Usage:
+ * <pre>
+ *   ReorderBuffer&lt;Integer&gt; reorder = new ReorderBuffer&lt;&gt;(Sink.of(destination), 64);
+ *   Producer.sequenced(queue, source, "Producer");
+ *   new Consumer&lt;&gt;(queue, reorder, "Consumer-1"); // ... N consumers sharing reorder
+ * </pre>
+ */
+public class ReorderBuffer<T> implements Sink<Sequenced<T>> {
+    private final Sink<? super T> destination;
+    private final Object[] window;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition advanced = lock.newCondition();
+    // Items parked by interrupted consumers beyond the window, so none are lost
+    private final TreeMap<Long, T> overflow = new TreeMap<>();
+    private long next;
+    private int buffered;
+    private int highWaterMark;
+
+    /**
+     * Creates a reorder buffer.
+     *
+     * @param destination receives the values in sequence order
+     * @param window how many items may wait for an earlier one, must be > 0
+     * @throws IllegalArgumentException if window <= 0
+     */
+    public ReorderBuffer(Sink<? super T> destination, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window must be greater than 0");
+        }
+        this.destination = destination;
+        this.window = new Object[window];
+    }
+
+    /**
+     * Accepts one item, blocking while it is a full window ahead of the
+     * next expected sequence number.
+     *
+     * @param item the numbered item
+     * @throws IllegalArgumentException if the sequence number was already accepted
+     */
+    @Override
+    public void accept(Sequenced<T> item) {
+        lock.lock();
+        try {
+            long sequence = item.getSequence();
+            checkNew(sequence);
+            boolean interrupted = false;
+            while (sequence >= next + window.length && !interrupted) {
+                try {
+                    advanced.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                // Sink methods cannot throw InterruptedException: park the item
+                // outside the window and let the consumer see the interrupt next
+                overflow.put(sequence, item.getValue());
+                Thread.currentThread().interrupt();
+            } else {
+                window[slot(sequence)] = item;
+                buffered++;
+                highWaterMark = Math.max(highWaterMark, buffered);
+            }
+            release();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Accepts a batch. Items are handled one by one, so a batch spanning
+     * more than the window still makes progress.
+     *
+     * @param items the numbered items, in the order a consumer took them
+     */
+    @Override
+    public void acceptAll(List<? extends Sequenced<T>> items) {
+        for (Sequenced<T> item : items) {
+            accept(item);
+        }
+    }
+
+    /**
+     * Flushes the destination. Items still waiting for an earlier sequence
+     * number stay buffered.
+     */
+    @Override
+    public void flush() {
+        destination.flush();
+    }
+
+    /**
+     * Returns the sequence number the buffer is waiting for, which is also
+     * the number of values released so far.
+     *
+     * @return the next expected sequence number
+     */
+    public long getNextSequence() {
+        lock.lock();
+        try {
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of items waiting for an earlier one.
+     *
+     * @return the buffered item count
+     */
+    public int getBuffered() {
+        lock.lock();
+        try {
+            return buffered + overflow.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the most items that were waiting in the window at once.
+     *
+     * @return the window high-water mark
+     */
+    public int getHighWaterMark() {
+        lock.lock();
+        try {
+            return highWaterMark;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the window size.
+     *
+     * @return the maximum number of items held back
+     */
+    public int getWindow() {
+        return window.length;
+    }
+
+    private void checkNew(long sequence) {
+        boolean seen = sequence < next
+                || (sequence < next + window.length && window[slot(sequence)] != null)
+                || overflow.containsKey(sequence);
+        if (seen) {
+            throw new IllegalArgumentException("Sequence " + sequence + " was already accepted");
+        }
+    }
+
+    /**
+     * Hands the in-order run starting at {@code next} to the destination and
+     * wakes consumers waiting for the window to move. Caller must hold the lock.
+     */
+    @SuppressWarnings("unchecked")
+    private void release() {
+        List<T> run = null;
+        while (true) {
+            T value;
+            int slot = slot(next);
+            if (window[slot] != null) {
+                value = ((Sequenced<T>) window[slot]).getValue();
+                window[slot] = null;
+                buffered--;
+            } else if (!overflow.isEmpty() && overflow.firstKey() == next) {
+                value = overflow.pollFirstEntry().getValue();
+            } else {
+                break;
+            }
+            if (run == null) {
+                run = new ArrayList<>();
+            }
+            run.add(value);
+            next++;
+        }
+        if (run != null) {
+            // Delivered under the lock, so runs reach the destination in order
+            destination.acceptAll(run);
+            advanced.signalAll();
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % window.length);
+    }
+}
@@ -0,0 +1,397 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, preallocated ring buffer that hands items over without locks.
+ *
+ * Every slot carries a sequence number. A producer claims the slot at the
+ * tail sequence with a CAS, writes the item and then publishes it by
+ * advancing the slot's sequence; consumers do the same from the head.
+ * Slot sequences are kept at twice the position (even = free for that
+ * position, odd = published) so that a capacity of 1 is unambiguous.
+ * No nodes are allocated per item and no thread is woken unless it is
+ * actually waiting on this queue.
+ *
+ * When the queue was created for a single producer and/or a single consumer,
+ * that side skips the CAS and advances its sequence with an ordered store.
+ * The caller is responsible for honouring that promise.
+ *
+ * Blocking put()/take() spin briefly, then yield, then park with a short,
+ * growing back-off until the slot becomes available.
+ */
+public class RingBufferQueue<T> implements BlockingBuffer<T> {
+    /** Marker returned by {@link #dequeue()} when the queue is empty (null is a valid element). */
+    private static final Object EMPTY = new Object();
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 10;
+    private static final long MAX_PARK_NANOS = 50_000;
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int capacity;
+    private final boolean singleProducer;
+    private final boolean singleConsumer;
+
+    /** Next sequence to be written by a producer. */
+    private final AtomicLong tail = new AtomicLong();
+    /** Next sequence to be read by a consumer. */
+    private final AtomicLong head = new AtomicLong();
+    /** Set by {@link #releaseWaiters()}; timed waits then end at once. */
+    private volatile boolean waitersReleased;
+
+    /**
+     * Creates a multi-producer / multi-consumer ring buffer.
+     *
+     * @param capacity the maximum number of elements the queue can hold
+     * @throws IllegalArgumentException if capacity <= 0
+     */
+    public RingBufferQueue(int capacity) {
+        this(capacity, false, false);
+    }
+
+    /**
+     * Creates a ring buffer, optionally specialised for one producer and/or one consumer thread.
+     *
+     * @param capacity the maximum number of elements the queue can hold
+     * @param singleProducer true if at most one thread will ever call put()
+     * @param singleConsumer true if at most one thread will ever call take()
+     * @throws IllegalArgumentException if capacity <= 0
+     */
+    public RingBufferQueue(int capacity, boolean singleProducer, boolean singleConsumer) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.singleProducer = singleProducer;
+        this.singleConsumer = singleConsumer;
+        this.buffer = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, 2L * i);
+        }
+    }
+
+    /**
+     * Inserts the specified element into this queue, waiting if necessary
+     * for space to become available.
+     *
+     * @param item the element to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void put(T item) throws InterruptedException {
+        int attempt = 0;
+        while (!enqueue(item)) {
+            idle(attempt++);
+        }
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, waiting if necessary
+     * until an element becomes available.
+     *
+     * @return the head of this queue
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T take() throws InterruptedException {
+        int attempt = 0;
+        Object item;
+        while ((item = dequeue()) == EMPTY) {
+            idle(attempt++);
+        }
+        return (T) item;
+    }
+
+    /**
+     * Inserts the specified element if the queue is not full.
+     *
+     * @param item the element to add
+     * @return true if the element was added, false if the queue is full
+     */
+    @Override
+    public boolean offer(T item) {
+        return enqueue(item);
+    }
+
+    /**
+     * Inserts the specified element, waiting up to the given timeout for space.
+     *
+     * @param item the element to add
+     * @param timeout how long to wait for space
+     * @param unit the unit of the timeout
+     * @return true if the element was added, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while (!enqueue(item)) {
+            if (waitersReleased || deadline - System.nanoTime() <= 0) {
+                return false;
+            }
+            idle(attempt++);
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue if one is available.
+     *
+     * @return the head of this queue, or null if the queue is empty
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        Object item = dequeue();
+        return item == EMPTY ? null : (T) item;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, waiting up to the
+     * given timeout for an element to become available.
+     *
+     * @param timeout how long to wait for an element
+     * @param unit the unit of the timeout
+     * @return the head of this queue, or null if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        Object item;
+        while ((item = dequeue()) == EMPTY) {
+            if (waitersReleased || deadline - System.nanoTime() <= 0) {
+                return null;
+            }
+            idle(attempt++);
+        }
+        return (T) item;
+    }
+
+    /**
+     * Inserts all elements of the collection, waiting for space as needed.
+     * There is no lock to amortize, so this is equivalent to calling put()
+     * for each element.
+     *
+     * @param items the elements to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void putAll(Collection<? extends T> items) throws InterruptedException {
+        for (T item : items) {
+            put(item);
+        }
+    }
+
+    /**
+     * Removes up to maxElements available elements without blocking and
+     * adds them to the destination.
+     *
+     * @param destination the collection to transfer elements into
+     * @param maxElements the maximum number of elements to transfer
+     * @return the number of elements transferred
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super T> destination, int maxElements) {
+        int count = 0;
+        Object item;
+        while (count < maxElements && (item = dequeue()) != EMPTY) {
+            destination.add((T) item);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Waits up to the given timeout for at least one element, then removes
+     * up to maxElements elements.
+     *
+     * @param maxElements the maximum number of elements to return
+     * @param timeout how long to wait for the first element
+     * @param unit the unit of the timeout
+     * @return the removed elements; empty if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<T> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        if (maxElements <= 0) {
+            throw new IllegalArgumentException("maxElements must be greater than 0");
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        Object first;
+        while ((first = dequeue()) == EMPTY) {
+            if (waitersReleased || deadline - System.nanoTime() <= 0) {
+                return new ArrayList<>();
+            }
+            idle(attempt++);
+        }
+        List<T> batch = new ArrayList<>();
+        batch.add((T) first);
+        drainTo(batch, maxElements - 1);
+        return batch;
+    }
+
+    /**
+     * Returns true: waiters park for at most {@value #MAX_PARK_NANOS} ns at a
+     * time, so they notice {@link #releaseWaiters()} without being unparked.
+     *
+     * @return true
+     */
+    @Override
+    public boolean canReleaseWaiters() {
+        return true;
+    }
+
+    @Override
+    public void releaseWaiters() {
+        waitersReleased = true;
+    }
+
+    /**
+     * Attempts to claim and fill the tail slot.
+     *
+     * @return false if the queue is full
+     */
+    private boolean enqueue(T item) {
+        long pos = tail.get();
+        int index;
+        while (true) {
+            index = (int) (pos % capacity);
+            long diff = sequences.get(index) - 2 * pos;
+            if (diff == 0) {
+                if (singleProducer) {
+                    tail.lazySet(pos + 1);
+                    break;
+                }
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // Slot still holds an item from the previous lap
+                return false;
+            } else {
+                // Another producer claimed this slot first
+                pos = tail.get();
+            }
+        }
+        buffer[index] = item;
+        // Publish the item to consumers
+        sequences.lazySet(index, 2 * pos + 1);
+        return true;
+    }
+
+    /**
+     * Attempts to claim and empty the head slot.
+     *
+     * @return the element, or {@link #EMPTY} if the queue is empty
+     */
+    private Object dequeue() {
+        long pos = head.get();
+        int index;
+        while (true) {
+            index = (int) (pos % capacity);
+            long diff = sequences.get(index) - (2 * pos + 1);
+            if (diff == 0) {
+                if (singleConsumer) {
+                    head.lazySet(pos + 1);
+                    break;
+                }
+                if (head.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                // Slot not yet published
+                return EMPTY;
+            } else {
+                // Another consumer claimed this slot first
+                pos = head.get();
+            }
+        }
+        Object item = buffer[index];
+        buffer[index] = null;
+        // Hand the slot back to producers for the next lap
+        sequences.lazySet(index, 2 * (pos + capacity));
+        return item;
+    }
+
+    /**
+     * Back-off used while waiting for a slot: spin, then yield, then park.
+     */
+    private static void idle(int attempt) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (attempt < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (attempt < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            int shift = Math.min(attempt - SPIN_TRIES - YIELD_TRIES, 16);
+            LockSupport.parkNanos(Math.min(1L << shift, MAX_PARK_NANOS));
+        }
+    }
+
+    /**
+     * Returns the number of elements currently in this queue.
+     * The value is a snapshot and may be stale under concurrent access.
+     *
+     * @return the number of elements in this queue
+     */
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, capacity);
+    }
+
+    /**
+     * Returns true if this queue contains no elements.
+     *
+     * @return true if this queue is empty
+     */
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the maximum capacity of this queue.
+     *
+     * @return the capacity of this queue
+     */
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of additional elements that this queue can
+     * accept without blocking.
+     *
+     * @return the remaining capacity
+     */
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+}
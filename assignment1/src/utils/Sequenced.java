@@ -0,0 +1,93 @@
+package utils;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Function;
+
+/**
+ * An item tagged with its position in the source, so parallel consumers
+ * can process items out of order and a {@link ReorderBuffer} can restore
+ * the source order afterwards.
+ *
+ * Envelopes are immutable; {@link #map(Function)} transforms the value and
+ * keeps the sequence number.
+ */
+public final class Sequenced<T> {
+    private final long sequence;
+    private final T value;
+
+    /**
+     * Creates an envelope.
+     *
+     * @param sequence the position in the source, starting at 0
+     * @param value the item, may be null
+     */
+    public Sequenced(long sequence, T value) {
+        this.sequence = sequence;
+        this.value = value;
+    }
+
+    /**
+     * Returns a view of the list in which element i is wrapped as
+     * sequence i. Envelopes are created on access, so wrapping a large
+     * source costs nothing up front.
+     *
+     * @param source the items to number
+     * @return an unmodifiable view of numbered items
+     */
+    public static <T> List<Sequenced<T>> number(List<T> source) {
+        return new Numbered<>(source);
+    }
+
+    /**
+     * Returns the position of the item in the source.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the wrapped item.
+     *
+     * @return the item, may be null
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Transforms the value, keeping the sequence number.
+     *
+     * @param function the transformation
+     * @return a new envelope with the same sequence number
+     */
+    public <R> Sequenced<R> map(Function<? super T, ? extends R> function) {
+        return new Sequenced<>(sequence, function.apply(value));
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + ":" + value;
+    }
+
+    private static final class Numbered<T> extends AbstractList<Sequenced<T>> implements RandomAccess {
+        private final List<T> source;
+
+        Numbered(List<T> source) {
+            this.source = source;
+        }
+
+        @Override
+        public Sequenced<T> get(int index) {
+            return new Sequenced<>(index, source.get(index));
+        }
+
+        @Override
+        public int size() {
+            return source.size();
+        }
+    }
+}
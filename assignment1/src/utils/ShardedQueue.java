@@ -0,0 +1,611 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded blocking queue split into shards, with work stealing, for
+ * pipelines with many consumers.
+ *
+ * Each shard is a lock-free deque with its own item count and its own
+ * share of the free space, each on a separate cache line. A consumer claims
+ * items from its own shard's count and only scans ("steals from") the other
+ * shards when its own is empty; a producer likewise takes space from its
+ * own share first and borrows from the other shards' shares when that runs
+ * out. So while items flow, producers and consumers mostly touch their own
+ * shard instead of all contending on one counter, and the capacity still
+ * holds across all shards. Threads only take the shared lock when they have
+ * to park: a consumer when every shard is empty, a producer when no space
+ * is left anywhere. Producers and consumers read the number of parked
+ * threads (a volatile field) and signal only if there are any.
+ *
+ * Every thread is given a home shard on first use, round-robin, and
+ * {@link #shard(int)} returns a view pinned to one shard so a consumer (or
+ * producer) can be attached explicitly. Ordering modes:
+ * - ordered (default): a producer always adds to its home shard and everyone
+ *   takes the oldest item of a shard, so items from one producer are taken
+ *   in the order they were put (like a FIFO queue), but items from different
+ *   producers are not ordered against each other
+ * - relaxed: producers spread items over random shards, and a consumer takes
+ *   the newest item of its own shard (cache-hot) while thieves take the
+ *   oldest; no order is guaranteed
+ */
+public class ShardedQueue<T> implements BlockingBuffer<T> {
+    // ConcurrentLinkedDeque rejects null, so null items are stored as this marker
+    private static final Object NULL = new Object();
+    // Returned by tryTake() when nothing was available
+    private static final Object EMPTY = new Object();
+    // Counter slots are 16 ints (64 bytes) apart, one cache line per shard
+    private static final int STRIDE = 16;
+
+    private final ConcurrentLinkedDeque<Object>[] shards;
+    /** Items added to each shard and not yet claimed by a consumer. */
+    private final AtomicIntegerArray available;
+    /** Each shard's share of the free space; the shares sum to the free capacity. */
+    private final AtomicIntegerArray space;
+    private final ReentrantLock parkLock = new ReentrantLock();
+    private final Condition notEmpty = parkLock.newCondition();
+    private final Condition notFull = parkLock.newCondition();
+    // Written under parkLock, read without it to skip signalling when nobody is parked
+    private volatile int parkedConsumers;
+    private volatile int parkedProducers;
+    /** Set by {@link #releaseWaiters()}; timed waits then end at once. */
+    private volatile boolean waitersReleased;
+    private final int capacity;
+    private final boolean relaxed;
+    private final AtomicInteger nextHome = new AtomicInteger();
+    private final ThreadLocal<Integer> homeShard;
+
+    /**
+     * Creates an ordered queue with one shard per available processor.
+     *
+     * @param capacity the maximum number of elements across all shards
+     * @throws IllegalArgumentException if capacity <= 0
+     */
+    public ShardedQueue(int capacity) {
+        this(capacity, Runtime.getRuntime().availableProcessors(), false);
+    }
+
+    /**
+     * Creates a queue with the given number of shards and ordering mode.
+     *
+     * @param capacity the maximum number of elements across all shards
+     * @param shardCount the number of shards, typically the number of consumers
+     * @param relaxed true to trade ordering for locality (see class comment)
+     * @throws IllegalArgumentException if capacity <= 0 or shardCount <= 0
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ShardedQueue(int capacity, int shardCount, boolean relaxed) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be greater than 0");
+        }
+        this.shards = new ConcurrentLinkedDeque[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new ConcurrentLinkedDeque<>();
+        }
+        this.available = new AtomicIntegerArray(shardCount * STRIDE);
+        this.space = new AtomicIntegerArray(shardCount * STRIDE);
+        for (int i = 0; i < shardCount; i++) {
+            space.set(i * STRIDE, capacity / shardCount + (i < capacity % shardCount ? 1 : 0));
+        }
+        this.capacity = capacity;
+        this.relaxed = relaxed;
+        this.homeShard = ThreadLocal.withInitial(() -> Math.floorMod(nextHome.getAndIncrement(), shardCount));
+    }
+
+    /**
+     * Returns a view of this queue pinned to one shard: puts go to that shard
+     * and takes prefer it, stealing from the others only when it is empty.
+     * Capacity is shared with the whole queue.
+     *
+     * @param index the shard index
+     * @return a queue view attached to that shard
+     * @throws IllegalArgumentException if there is no such shard
+     */
+    public BlockingBuffer<T> shard(int index) {
+        if (index < 0 || index >= shards.length) {
+            throw new IllegalArgumentException("No shard " + index + " (shards: " + shards.length + ")");
+        }
+        return new ShardView(index);
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the shard count
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns true if this queue trades ordering for locality.
+     *
+     * @return the ordering mode
+     */
+    public boolean isRelaxed() {
+        return relaxed;
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        put(producerShard(), item);
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        return take(homeShard.get());
+    }
+
+    @Override
+    public boolean offer(T item) {
+        return offer(producerShard(), item);
+    }
+
+    @Override
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        return offer(producerShard(), item, timeout, unit);
+    }
+
+    @Override
+    public T poll() {
+        return poll(homeShard.get());
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return poll(homeShard.get(), timeout, unit);
+    }
+
+    @Override
+    public void putAll(Collection<? extends T> items) throws InterruptedException {
+        putAll(producerShard(), items);
+    }
+
+    @Override
+    public int offerAll(List<? extends T> items) {
+        return offerAll(producerShard(), items);
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> destination, int maxElements) {
+        return drainTo(homeShard.get(), destination, maxElements);
+    }
+
+    @Override
+    public List<T> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        return takeBatch(homeShard.get(), maxElements, timeout, unit);
+    }
+
+    @Override
+    public boolean canReleaseWaiters() {
+        return true;
+    }
+
+    /**
+     * Ends timed waits on the whole queue, including those made through
+     * {@link #shard(int) shard views}.
+     */
+    @Override
+    public void releaseWaiters() {
+        parkLock.lock();
+        try {
+            waitersReleased = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            parkLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of items that can be taken right now. Items being
+     * added or removed concurrently may not be counted yet.
+     *
+     * @return the number of available elements
+     */
+    @Override
+    public int size() {
+        return sum(available);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return sum(space);
+    }
+
+    private int producerShard() {
+        return relaxed ? ThreadLocalRandom.current().nextInt(shards.length) : homeShard.get();
+    }
+
+    private void put(int shard, T item) throws InterruptedException {
+        while (claim(space, shard, 1) == 0) {
+            awaitSpace(Long.MAX_VALUE, false);
+        }
+        push(shard, item);
+        publish(shard, 1);
+    }
+
+    private boolean offer(int shard, T item) {
+        if (claim(space, shard, 1) == 0) {
+            return false;
+        }
+        push(shard, item);
+        publish(shard, 1);
+        return true;
+    }
+
+    private boolean offer(int shard, T item, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        while (claim(space, shard, 1) == 0) {
+            if (nanos <= 0 || waitersReleased) {
+                return false;
+            }
+            nanos = awaitSpace(nanos, true);
+        }
+        push(shard, item);
+        publish(shard, 1);
+        return true;
+    }
+
+    /**
+     * Adds the batch in chunks of whatever space is free, and waits only
+     * when there is none. A batch larger than the free space therefore
+     * makes progress as single items are taken, instead of waiting for
+     * room for all of it while smaller puts keep taking the space.
+     */
+    private void putAll(int shard, Collection<? extends T> items) throws InterruptedException {
+        Iterator<? extends T> it = items.iterator();
+        int remaining = items.size();
+        while (remaining > 0) {
+            int chunk = claim(space, shard, remaining);
+            if (chunk == 0) {
+                awaitSpace(Long.MAX_VALUE, false);
+                continue;
+            }
+            for (int i = 0; i < chunk; i++) {
+                push(shard, it.next());
+            }
+            publish(shard, chunk);
+            remaining -= chunk;
+        }
+    }
+
+    /**
+     * Adds as much of the list as there is free space for right now.
+     */
+    private int offerAll(int shard, List<? extends T> items) {
+        int n = claim(space, shard, items.size());
+        for (int i = 0; i < n; i++) {
+            push(shard, items.get(i));
+        }
+        if (n > 0) {
+            publish(shard, n);
+        }
+        return n;
+    }
+
+    private T take(int shard) throws InterruptedException {
+        Object item;
+        while ((item = tryTake(shard)) == EMPTY) {
+            awaitItems(Long.MAX_VALUE, false);
+        }
+        return cast(item);
+    }
+
+    private T poll(int shard) {
+        Object item = tryTake(shard);
+        return item == EMPTY ? null : cast(item);
+    }
+
+    private T poll(int shard, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        Object item;
+        while ((item = tryTake(shard)) == EMPTY) {
+            if (nanos <= 0 || waitersReleased) {
+                return null;
+            }
+            nanos = awaitItems(nanos, true);
+        }
+        return cast(item);
+    }
+
+    /**
+     * Takes one item, preferring the local shard, or returns {@link #EMPTY}
+     * if there is none (null is a valid item).
+     */
+    private Object tryTake(int local) {
+        for (int i = 0; i < shards.length; i++) {
+            int shard = (local + i) % shards.length;
+            if (claimFrom(available, shard, 1) == 1) {
+                T item = remove(shard, shard == local);
+                release(local, 1);
+                return item;
+            }
+        }
+        return EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T cast(Object item) {
+        return (T) item;
+    }
+
+    /**
+     * Claims items from the local shard first, then from the others, and
+     * removes as many as were claimed from each.
+     */
+    private int drainTo(int local, Collection<? super T> destination, int maxElements) {
+        int n = 0;
+        for (int i = 0; i < shards.length && n < maxElements; i++) {
+            int shard = (local + i) % shards.length;
+            int claimed = claimFrom(available, shard, maxElements - n);
+            for (int k = 0; k < claimed; k++) {
+                destination.add(remove(shard, shard == local));
+            }
+            n += claimed;
+        }
+        if (n > 0) {
+            release(local, n);
+        }
+        return n;
+    }
+
+    private List<T> takeBatch(int shard, int maxElements, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (maxElements <= 0) {
+            throw new IllegalArgumentException("maxElements must be greater than 0");
+        }
+        long nanos = unit.toNanos(timeout);
+        List<T> batch = new ArrayList<>();
+        while (drainTo(shard, batch, maxElements) == 0 && nanos > 0 && !waitersReleased) {
+            nanos = awaitItems(nanos, true);
+        }
+        return batch;
+    }
+
+    private void push(int shard, T item) {
+        shards[shard].addLast(item == null ? NULL : item);
+    }
+
+    /**
+     * Removes one claimed item of the shard. Counts are raised only after
+     * the items were added and lowered before they are removed, so a
+     * claimed item is always there. In relaxed mode the owner takes the
+     * newest item, thieves the oldest.
+     */
+    @SuppressWarnings("unchecked")
+    private T remove(int shard, boolean local) {
+        Object item = relaxed && local ? shards[shard].pollLast() : shards[shard].pollFirst();
+        return item == NULL ? null : (T) item;
+    }
+
+    /**
+     * Makes items of the shard available and wakes parked consumers, if any.
+     */
+    private void publish(int shard, int n) {
+        available.addAndGet(shard * STRIDE, n);
+        if (parkedConsumers > 0) {
+            signal(notEmpty, n);
+        }
+    }
+
+    /**
+     * Returns space to the shard's share and wakes parked producers, if any.
+     */
+    private void release(int shard, int n) {
+        space.addAndGet(shard * STRIDE, n);
+        if (parkedProducers > 0) {
+            signal(notFull, n);
+        }
+    }
+
+    private void signal(Condition condition, int n) {
+        parkLock.lock();
+        try {
+            if (n == 1) {
+                condition.signal();
+            } else {
+                condition.signalAll();
+            }
+        } finally {
+            parkLock.unlock();
+        }
+    }
+
+    /**
+     * Takes up to max from the counters, the local shard's first and then
+     * the others in turn.
+     */
+    private int claim(AtomicIntegerArray counters, int local, int max) {
+        int n = 0;
+        for (int i = 0; i < shards.length && n < max; i++) {
+            n += claimFrom(counters, (local + i) % shards.length, max - n);
+        }
+        return n;
+    }
+
+    private static int claimFrom(AtomicIntegerArray counters, int shard, int max) {
+        int index = shard * STRIDE;
+        while (true) {
+            int current = counters.get(index);
+            if (current == 0) {
+                return 0;
+            }
+            int n = Math.min(current, max);
+            if (counters.compareAndSet(index, current, current - n)) {
+                return n;
+            }
+        }
+    }
+
+    private int sum(AtomicIntegerArray counters) {
+        int total = 0;
+        for (int i = 0; i < shards.length; i++) {
+            total += counters.get(i * STRIDE);
+        }
+        return total;
+    }
+
+    /**
+     * Parks until some shard has items or the time is up; a timed wait
+     * also ends once waiters are released. The parked count
+     * is raised before the counts are checked, and publish() raises a
+     * count before it reads the parked count, so one of the two always
+     * sees the other and no wake-up is lost.
+     *
+     * @return the remaining wait time
+     */
+    private long awaitItems(long nanos, boolean timed) throws InterruptedException {
+        parkLock.lockInterruptibly();
+        try {
+            parkedConsumers++;
+            try {
+                while (sum(available) == 0 && nanos > 0 && !(timed && waitersReleased)) {
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                return nanos;
+            } finally {
+                parkedConsumers--;
+            }
+        } finally {
+            parkLock.unlock();
+        }
+    }
+
+    /**
+     * Parks until some shard has free space or the time is up; see
+     * {@link #awaitItems(long, boolean)}.
+     *
+     * @return the remaining wait time
+     */
+    private long awaitSpace(long nanos, boolean timed) throws InterruptedException {
+        parkLock.lockInterruptibly();
+        try {
+            parkedProducers++;
+            try {
+                while (sum(space) == 0 && nanos > 0 && !(timed && waitersReleased)) {
+                    nanos = notFull.awaitNanos(nanos);
+                }
+                return nanos;
+            } finally {
+                parkedProducers--;
+            }
+        } finally {
+            parkLock.unlock();
+        }
+    }
+
+    /**
+     * A view pinned to one shard. Capacity and parking are those of the queue.
+     */
+    private final class ShardView implements BlockingBuffer<T> {
+        private final int index;
+
+        ShardView(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void put(T item) throws InterruptedException {
+            ShardedQueue.this.put(index, item);
+        }
+
+        @Override
+        public T take() throws InterruptedException {
+            return ShardedQueue.this.take(index);
+        }
+
+        @Override
+        public boolean offer(T item) {
+            return ShardedQueue.this.offer(index, item);
+        }
+
+        @Override
+        public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+            return ShardedQueue.this.offer(index, item, timeout, unit);
+        }
+
+        @Override
+        public T poll() {
+            return ShardedQueue.this.poll(index);
+        }
+
+        @Override
+        public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return ShardedQueue.this.poll(index, timeout, unit);
+        }
+
+        @Override
+        public void putAll(Collection<? extends T> items) throws InterruptedException {
+            ShardedQueue.this.putAll(index, items);
+        }
+
+        @Override
+        public int offerAll(List<? extends T> items) {
+            return ShardedQueue.this.offerAll(index, items);
+        }
+
+        @Override
+        public int drainTo(Collection<? super T> destination, int maxElements) {
+            return ShardedQueue.this.drainTo(index, destination, maxElements);
+        }
+
+        @Override
+        public List<T> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+            return ShardedQueue.this.takeBatch(index, maxElements, timeout, unit);
+        }
+
+        @Override
+        public boolean canReleaseWaiters() {
+            return true;
+        }
+
+        @Override
+        public void releaseWaiters() {
+            ShardedQueue.this.releaseWaiters();
+        }
+
+        @Override
+        public int size() {
+            return ShardedQueue.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return ShardedQueue.this.isEmpty();
+        }
+
+        @Override
+        public int getCapacity() {
+            return capacity;
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return ShardedQueue.this.remainingCapacity();
+        }
+    }
+}
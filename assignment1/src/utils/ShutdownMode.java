@@ -0,0 +1,22 @@
+package utils;
+
+/**
+ * How {@link PipelineRunner#shutdown(ShutdownMode)} stops a running pipeline.
+ *
+ * - DRAIN: producers stop before their next item (or batch) and consumers
+ *   keep going until everything already queued has been consumed, so no
+ *   queued work is lost
+ * - NOW: producers and consumers stop after the item (or batch) they are
+ *   handling; items still in the queue are removed and returned in the
+ *   {@link ShutdownReport} so they can be re-queued elsewhere
+ *
+ * Neither mode interrupts threads; both work through stop flags. A producer
+ * blocked on a full queue is released as the queue drains (with NOW,
+ * {@link PipelineRunner#awaitTermination} drains it), or is rejected by a
+ * closed {@link ClosableQueue}. A consumer waiting on an empty queue notices
+ * the stop when its wait times out or the queue is closed.
+ */
+public enum ShutdownMode {
+    DRAIN,
+    NOW
+}
@@ -0,0 +1,96 @@
+package utils;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Where the items of a {@link PipelineRunner} ended up, for checking that a
+ * shutdown neither lost nor duplicated work.
+ *
+ * Every source item is in exactly one of: consumed, unprocessed (taken out
+ * of the queue by a {@link ShutdownMode#NOW} shutdown), still queued,
+ * rejected by a producer's offer timeout, or unsent (never handed to the
+ * queue). While the pipeline is running the counts are a live snapshot and
+ * "queued" includes items a consumer is handling right now.
+ */
+public final class ShutdownReport<T> {
+    private final int itemsProduced;
+    private final int itemsConsumed;
+    private final int itemsRejected;
+    private final int itemsUnsent;
+    private final List<T> unprocessed;
+
+    ShutdownReport(int itemsProduced, int itemsConsumed, int itemsRejected, int itemsUnsent, List<T> unprocessed) {
+        this.itemsProduced = itemsProduced;
+        this.itemsConsumed = itemsConsumed;
+        this.itemsRejected = itemsRejected;
+        this.itemsUnsent = itemsUnsent;
+        this.unprocessed = Collections.unmodifiableList(unprocessed);
+    }
+
+    /**
+     * Returns the number of items producers handed to the queue.
+     *
+     * @return the number of produced items
+     */
+    public int getItemsProduced() {
+        return itemsProduced;
+    }
+
+    /**
+     * Returns the number of items consumers delivered to the sink.
+     *
+     * @return the number of consumed items
+     */
+    public int getItemsConsumed() {
+        return itemsConsumed;
+    }
+
+    /**
+     * Returns the number of items producers dropped after their offer timeout.
+     *
+     * @return the number of rejected items
+     */
+    public int getItemsRejected() {
+        return itemsRejected;
+    }
+
+    /**
+     * Returns the number of source items producers never handed to the queue.
+     *
+     * @return the number of unsent items
+     */
+    public int getItemsUnsent() {
+        return itemsUnsent;
+    }
+
+    /**
+     * Returns the items removed from the queue by a stop-now shutdown,
+     * in queue order. They were never consumed and can be re-queued.
+     *
+     * @return an unmodifiable list of unprocessed items
+     */
+    public List<T> getUnprocessed() {
+        return unprocessed;
+    }
+
+    /**
+     * Returns the number of produced items that are neither consumed nor
+     * unprocessed: items still in the queue or being handled by a consumer.
+     *
+     * @return the number of items in flight; 0 once the pipeline has terminated
+     */
+    public int getItemsInFlight() {
+        return itemsProduced - itemsConsumed - unprocessed.size();
+    }
+
+    @Override
+    public String toString() {
+        return "produced=" + itemsProduced
+                + ", consumed=" + itemsConsumed
+                + ", inFlight=" + getItemsInFlight()
+                + ", unprocessed=" + unprocessed.size()
+                + ", rejected=" + itemsRejected
+                + ", unsent=" + itemsUnsent;
+    }
+}
@@ -0,0 +1,69 @@
+package utils;
+
+import java.util.List;
+
+/**
+ * Destination for the items a {@link Consumer} takes from the queue.
+ *
+ * Consumers hand over whole batches through {@link #acceptAll(List)}, so an
+ * implementation can pay for synchronization once per batch rather than once
+ * per item. A consumer calls {@link #flush()} when it finishes; a sink shared
+ * by several consumers is closed by whoever created it, after all of them
+ * have finished.
+ */
+public interface Sink<T> extends AutoCloseable {
+
+    /**
+     * Accepts one item.
+     *
+     * @param item the item, may be null if the queue carries nulls as data
+     */
+    void accept(T item);
+
+    /**
+     * Accepts a batch of items. The default calls {@link #accept(Object)} for each.
+     *
+     * @param items the items, in queue order
+     */
+    default void acceptAll(List<? extends T> items) {
+        for (T item : items) {
+            accept(item);
+        }
+    }
+
+    /**
+     * Makes items accepted so far by the calling consumer visible to readers
+     * of the sink. The default does nothing.
+     */
+    default void flush() {
+    }
+
+    /**
+     * Flushes and releases any resources held by the sink.
+     */
+    @Override
+    default void close() {
+        flush();
+    }
+
+    /**
+     * Adapts a list to a sink. Batches are added with one {@code addAll}, so
+     * a {@code Collections.synchronizedList} is locked once per batch.
+     *
+     * @param list the list to add to; must be thread-safe if shared by consumers
+     * @return a sink adding to the list
+     */
+    static <T> Sink<T> of(List<T> list) {
+        return new Sink<T>() {
+            @Override
+            public void accept(T item) {
+                list.add(item);
+            }
+
+            @Override
+            public void acceptAll(List<? extends T> items) {
+                list.addAll(items);
+            }
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-stage counters of a {@link StagedPipeline}.
+ *
+ * Throughput is measured over the stage's wall-clock time, from its first
+ * worker starting to its last worker finishing. Utilization is the share of
+ * that time the workers spent inside the stage function (not waiting on the
+ * queues); a stage near 1.0 is the bottleneck and is the one to give more
+ * parallelism.
+ */
+public class StageStats {
+    private final String name;
+    private final int parallelism;
+    private final LongAdder itemsIn = new LongAdder();
+    private final LongAdder itemsOut = new LongAdder();
+    private final LongAdder itemsDropped = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    StageStats(String name, int parallelism) {
+        this.name = name;
+        this.parallelism = parallelism;
+    }
+
+    void workerStarted() {
+        if (running.getAndIncrement() == 0 && startNanos == 0) {
+            startNanos = System.nanoTime();
+        }
+    }
+
+    void workerFinished() {
+        if (running.decrementAndGet() == 0) {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    void recordIn(int count, long nanos) {
+        itemsIn.add(count);
+        busyNanos.add(nanos);
+    }
+
+    void recordOut(int count) {
+        itemsOut.add(count);
+    }
+
+    void recordDropped(long count) {
+        itemsDropped.add(count);
+    }
+
+    /**
+     * Returns the stage name given to the builder.
+     *
+     * @return the stage name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of workers running the stage.
+     *
+     * @return the parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the number of items the stage received.
+     *
+     * @return the items in
+     */
+    public long getItemsIn() {
+        return itemsIn.sum();
+    }
+
+    /**
+     * Returns the number of items the stage emitted: fewer than received
+     * for a filter or batch, more for a fan-out.
+     *
+     * @return the items out
+     */
+    public long getItemsOut() {
+        return itemsOut.sum();
+    }
+
+    /**
+     * Returns the number of results the stage computed but never handed on,
+     * because its worker was interrupted (e.g. by a failing stage stopping
+     * the pipeline) while waiting for space in the next queue. A fan-out
+     * counts each branch it could not reach. Unless the stage filters or
+     * batches, items in equals items out plus items dropped.
+     *
+     * @return the items dropped
+     */
+    public long getItemsDropped() {
+        return itemsDropped.sum();
+    }
+
+    /**
+     * Returns the rate at which the stage received items, measured until
+     * its last worker finished (or until now while it is running).
+     *
+     * @return items per second, or 0 if the stage has not started
+     */
+    public double getItemsPerSecond() {
+        return Throughput.perSecond(getItemsIn(), startNanos, endNanos);
+    }
+
+    /**
+     * Returns the share of worker time spent in the stage function.
+     *
+     * @return a value between 0 and 1, or 0 if the stage has not started
+     */
+    public double getUtilization() {
+        if (startNanos == 0) {
+            return 0.0;
+        }
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        long available = Math.max(1, end - startNanos) * parallelism;
+        return Math.min(1.0, (double) busyNanos.sum() / available);
+    }
+
+    @Override
+    public String toString() {
+        long dropped = getItemsDropped();
+        return String.format("%s x%d: in=%d out=%d%s %.0f items/sec utilization=%.0f%%",
+                name, parallelism, getItemsIn(), getItemsOut(), dropped > 0 ? " dropped=" + dropped : "",
+                getItemsPerSecond(), getUtilization() * 100);
+    }
+}
@@ -0,0 +1,549 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A chain of processing stages, each connected to the next by a
+ * {@link BoundedBlockingQueue}, so a slow stage applies backpressure to the
+ * ones before it.
+ *
+ * Built with a small DSL:
+ * <pre>
+ *   StagedPipeline pipeline = StagedPipeline.from(lines)
+ *       .map("parse", 4, Record::parse)
+ *       .filter("valid", 1, Record::isValid)
+ *       .batch("group", 1, 100)
+ *       .to(database, 2);
+ *   pipeline.run();
+ *   System.out.println(pipeline.getBottleneck());
+ * </pre>
+ *
+ * The source items are put by {@link Producer}s and every stage runs as a
+ * set of {@link Consumer}s whose sink applies the stage function and puts
+ * the results into the next queue. Stages end the same way as in
+ * {@link PipelineRunner}: each stage counts down a latch when all of its
+ * workers finish, and the next stage stops once that latch has opened and
+ * its queue is empty. The stage queues are plain queues, so idle workers
+ * poll them every 10 ms for the latch rather than being woken when the
+ * previous stage ends. {@link #getStageStats()} reports per-stage throughput
+ * and utilization so the slowest stage can be scaled.
+ */
+public class StagedPipeline {
+    private final List<Runnable> tasks;
+    private final List<StageStats> stages;
+    private boolean started;
+
+    private StagedPipeline(Assembly assembly) {
+        this.tasks = assembly.tasks;
+        this.stages = Collections.unmodifiableList(assembly.stages);
+    }
+
+    /**
+     * Starts a pipeline reading one source list.
+     *
+     * @param source the items to feed into the first stage
+     * @return a builder for the stages
+     */
+    public static <T> Builder<T> from(List<T> source) {
+        return fromSources(Collections.singletonList(source));
+    }
+
+    /**
+     * Starts a pipeline reading several source lists, one producer each
+     * (a fan-in of sources).
+     *
+     * @param sources the source lists
+     * @return a builder for the stages
+     * @throws IllegalArgumentException if there are no sources
+     */
+    public static <T> Builder<T> fromSources(List<? extends List<T>> sources) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one source is required");
+        }
+        return new Builder<>(new Assembly(), sources);
+    }
+
+    /**
+     * Runs every stage on its own threads and waits for all of them to
+     * finish. A pipeline runs only once: its sources are consumed and its
+     * latches opened by the first run.
+     *
+     * @throws InterruptedException if interrupted while waiting; the stage
+     *         workers are interrupted as well
+     * @throws IllegalStateException if the pipeline was already run, or a
+     *         stage function threw; the other stages are interrupted
+     */
+    public void run() throws InterruptedException {
+        synchronized (this) {
+            if (started) {
+                throw new IllegalStateException("Pipeline already started");
+            }
+            started = true;
+        }
+        ExecutorService executor = ExecutionMode.PLATFORM_THREADS.newExecutor(0, "Stage");
+        boolean completed = false;
+        try {
+            CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+            for (Runnable task : tasks) {
+                completion.submit(task, null);
+            }
+            // Wait in completion order, so a failed stage is seen while
+            // the stages feeding it are still blocked on its full queue
+            for (int i = 0; i < tasks.size(); i++) {
+                completion.take().get();
+            }
+            completed = true;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Pipeline stage failed", e.getCause());
+        } finally {
+            if (completed) {
+                executor.shutdown();
+            } else {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Returns the stats of every stage in pipeline order, starting with the source.
+     *
+     * @return an unmodifiable list of stage stats
+     */
+    public List<StageStats> getStageStats() {
+        return stages;
+    }
+
+    /**
+     * Returns the processing stage with the highest utilization, i.e. the
+     * one to give more parallelism first.
+     *
+     * @return the busiest stage
+     */
+    public StageStats getBottleneck() {
+        return stages.stream()
+                .skip(1)
+                .max(Comparator.comparingDouble(StageStats::getUtilization))
+                .orElse(stages.get(0));
+    }
+
+    /**
+     * The tasks and stats collected while a pipeline is being built.
+     */
+    private static final class Assembly {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<StageStats> stages = new ArrayList<>();
+        int queueCapacity = 64;
+        int batchSize = 16;
+        boolean built;
+    }
+
+    /**
+     * Adds stages to a pipeline under construction. Each call returns the
+     * builder for the stage's output; a builder can only be continued once.
+     *
+     * @param <T> the type of the items leaving the last stage added so far
+     */
+    public static final class Builder<T> {
+        private final Assembly assembly;
+        private List<? extends List<T>> pendingSources;
+        private BlockingBuffer<T> output;
+        private CountDownLatch outputDone;
+        private boolean used;
+
+        private Builder(Assembly assembly, List<? extends List<T>> sources) {
+            this.assembly = assembly;
+            this.pendingSources = sources;
+        }
+
+        private Builder(Assembly assembly, BlockingBuffer<T> output, CountDownLatch outputDone) {
+            this.assembly = assembly;
+            this.output = output;
+            this.outputDone = outputDone;
+        }
+
+        /**
+         * Creates the source producers and their queue once the first stage
+         * is added, so the queue settings made on this builder apply to it.
+         */
+        private void materializeSources() {
+            List<? extends List<T>> sources = pendingSources;
+            pendingSources = null;
+            output = new BoundedBlockingQueue<>(assembly.queueCapacity);
+            outputDone = new CountDownLatch(sources.size());
+            StageStats stats = new StageStats("source", sources.size());
+            assembly.stages.add(stats);
+            for (int i = 0; i < sources.size(); i++) {
+                List<T> source = sources.get(i);
+                Producer<T> producer = new Producer<>(output, source, "source-" + (i + 1))
+                        .withProductionMode()
+                        .withBatchSize(assembly.batchSize)
+                        .withCompletionLatch(outputDone);
+                assembly.tasks.add(() -> {
+                    stats.workerStarted();
+                    try {
+                        producer.run();
+                    } finally {
+                        stats.recordIn(producer.getItemsProduced(), 0);
+                        stats.recordOut(producer.getItemsProduced());
+                        stats.workerFinished();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Sets the capacity of the queues feeding the stages added after
+         * this call. The default is 64.
+         *
+         * @param capacity the queue capacity, must be > 0
+         * @return this builder
+         * @throws IllegalArgumentException if capacity <= 0
+         */
+        public Builder<T> withQueueCapacity(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Capacity must be greater than 0");
+            }
+            assembly.queueCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets how many items the workers of the following stages take from
+         * their queue per call. The default is 16.
+         *
+         * @param batchSize the maximum number of items per take, must be > 0
+         * @return this builder
+         * @throws IllegalArgumentException if batchSize <= 0
+         */
+        public Builder<T> withBatchSize(int batchSize) {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("Batch size must be greater than 0");
+            }
+            assembly.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Adds a stage that transforms every item.
+         *
+         * @param name the stage name used in the stats
+         * @param parallelism the number of workers
+         * @param function the transformation
+         * @return the builder for the transformed items
+         */
+        public <R> Builder<R> map(String name, int parallelism, Function<? super T, ? extends R> function) {
+            return stage(name, parallelism, () -> (item, out) -> out.add(function.apply(item)));
+        }
+
+        /**
+         * Adds a stage that only passes on the items matching a predicate.
+         *
+         * @param name the stage name used in the stats
+         * @param parallelism the number of workers
+         * @param predicate the condition for keeping an item
+         * @return the builder for the kept items
+         */
+        public Builder<T> filter(String name, int parallelism, Predicate<? super T> predicate) {
+            return stage(name, parallelism, () -> (item, out) -> {
+                if (predicate.test(item)) {
+                    out.add(item);
+                }
+            });
+        }
+
+        /**
+         * Adds a stage that groups items into lists of the given size. Each
+         * worker fills its own batches and emits its last, partial batch when
+         * the input ends, so with parallelism above 1 several partial batches
+         * can appear and items of one batch are not necessarily adjacent in
+         * the source.
+         *
+         * @param name the stage name used in the stats
+         * @param parallelism the number of workers
+         * @param size the number of items per batch, must be > 0
+         * @return the builder for the batches
+         * @throws IllegalArgumentException if size <= 0
+         */
+        public Builder<List<T>> batch(String name, int parallelism, int size) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("Batch size must be greater than 0");
+            }
+            return stage(name, parallelism, () -> new Step<T, List<T>>() {
+                private List<T> pending = new ArrayList<>(size);
+
+                @Override
+                public void apply(T item, List<List<T>> out) {
+                    pending.add(item);
+                    if (pending.size() == size) {
+                        out.add(pending);
+                        pending = new ArrayList<>(size);
+                    }
+                }
+
+                @Override
+                public void finish(List<List<T>> out) {
+                    if (!pending.isEmpty()) {
+                        out.add(pending);
+                        pending = new ArrayList<>(size);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Adds a fan-out stage that copies every item to each branch, then
+         * fans the branch outputs back in to one stream. Each branch is built
+         * from its own builder and can filter, so a fan-out with filtering
+         * branches also routes items.
+         *
+         * @param name the stage name used in the stats; the merge stage is
+         *        reported as "name-fan-in"
+         * @param parallelism the number of workers copying items to the branches
+         * @param branches the branch definitions
+         * @return the builder for the merged branch outputs
+         * @throws IllegalArgumentException if there are no branches
+         */
+        @SafeVarargs
+        public final <R> Builder<R> fanOut(String name, int parallelism,
+                                           Function<Builder<T>, Builder<R>>... branches) {
+            if (branches.length == 0) {
+                throw new IllegalArgumentException("At least one branch is required");
+            }
+            List<BlockingBuffer<T>> branchInputs = new ArrayList<>();
+            for (int i = 0; i < branches.length; i++) {
+                branchInputs.add(new BoundedBlockingQueue<>(assembly.queueCapacity));
+            }
+            CountDownLatch copied = new CountDownLatch(parallelism);
+            addWorkers(name, parallelism, copied,
+                    stats -> new StageSink<T, T>(() -> (item, out) -> out.add(item), branchInputs, stats));
+
+            // Fan-in: one worker per branch moves its output to the merged queue
+            BlockingBuffer<R> merged = new BoundedBlockingQueue<>(assembly.queueCapacity);
+            CountDownLatch mergedDone = new CountDownLatch(branches.length);
+            StageStats fanIn = new StageStats(name + "-fan-in", branches.length);
+            List<Runnable> mergeTasks = new ArrayList<>();
+            for (int i = 0; i < branches.length; i++) {
+                Builder<R> branch = branches[i].apply(new Builder<>(assembly, branchInputs.get(i), copied));
+                branch.claim();
+                Consumer<R> mover = branch.worker(name + "-fan-in-" + (i + 1),
+                        new StageSink<R, R>(() -> (item, out) -> out.add(item),
+                                Collections.singletonList(merged), fanIn));
+                mergeTasks.add(task(mover, fanIn, mergedDone));
+            }
+            assembly.stages.add(fanIn);
+            assembly.tasks.addAll(mergeTasks);
+            return new Builder<>(assembly, merged, mergedDone);
+        }
+
+        /**
+         * Ends the pipeline with workers handing items to a sink. Each worker
+         * flushes the sink when it finishes; closing it is left to the caller.
+         *
+         * @param sink the destination; must be thread-safe if parallelism > 1
+         * @param parallelism the number of workers
+         * @return the pipeline, ready to run
+         */
+        public StagedPipeline to(Sink<? super T> sink, int parallelism) {
+            StageStats stats = new StageStats("sink", parallelism);
+            Sink<T> counting = new Sink<T>() {
+                @Override
+                public void accept(T item) {
+                    long start = System.nanoTime();
+                    sink.accept(item);
+                    stats.recordIn(1, System.nanoTime() - start);
+                }
+
+                @Override
+                public void acceptAll(List<? extends T> items) {
+                    long start = System.nanoTime();
+                    sink.acceptAll(items);
+                    stats.recordIn(items.size(), System.nanoTime() - start);
+                }
+
+                @Override
+                public void flush() {
+                    sink.flush();
+                }
+            };
+            addWorkers("sink", parallelism, new CountDownLatch(parallelism), ignored -> counting, stats);
+            assembly.built = true;
+            return new StagedPipeline(assembly);
+        }
+
+        /**
+         * Ends the pipeline by collecting every item into a list.
+         *
+         * @param destination the list to add to; must be thread-safe if parallelism > 1
+         * @param parallelism the number of workers
+         * @return the pipeline, ready to run
+         */
+        public StagedPipeline to(List<T> destination, int parallelism) {
+            return to(Sink.of(destination), parallelism);
+        }
+
+        /**
+         * Adds a stage whose workers each run their own step (so a step may
+         * keep state, like a batch) and put results into a new queue.
+         */
+        private <R> Builder<R> stage(String name, int parallelism, Supplier<Step<T, R>> step) {
+            BlockingBuffer<R> next = new BoundedBlockingQueue<>(assembly.queueCapacity);
+            CountDownLatch done = new CountDownLatch(parallelism);
+            addWorkers(name, parallelism, done,
+                    stats -> new StageSink<>(step, Collections.singletonList(next), stats));
+            return new Builder<>(assembly, next, done);
+        }
+
+        private void addWorkers(String name, int parallelism, CountDownLatch done,
+                                Function<StageStats, Sink<T>> sinks) {
+            addWorkers(name, parallelism, done, sinks, new StageStats(name, parallelism));
+        }
+
+        private void addWorkers(String name, int parallelism, CountDownLatch done,
+                                Function<StageStats, Sink<T>> sinks, StageStats stats) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("Parallelism must be greater than 0");
+            }
+            claim();
+            assembly.stages.add(stats);
+            for (int i = 0; i < parallelism; i++) {
+                assembly.tasks.add(task(worker(name + "-" + (i + 1), sinks.apply(stats)), stats, done));
+            }
+        }
+
+        /**
+         * Creates a consumer of this builder's output queue that stops once
+         * the stage feeding the queue has finished and the queue is empty.
+         */
+        private Consumer<T> worker(String name, Sink<T> sink) {
+            return new Consumer<>(output, sink, name)
+                    .withProductionMode()
+                    .withBatchSize(assembly.batchSize)
+                    .untilProducersDone(outputDone);
+        }
+
+        private static Runnable task(Consumer<?> worker, StageStats stats, CountDownLatch done) {
+            return () -> {
+                stats.workerStarted();
+                try {
+                    worker.run();
+                } finally {
+                    stats.workerFinished();
+                    done.countDown();
+                }
+            };
+        }
+
+        /**
+         * A builder stands for one queue, which only one stage may read.
+         */
+        private void claim() {
+            if (assembly.built) {
+                throw new IllegalStateException("Pipeline already built");
+            }
+            if (used) {
+                throw new IllegalStateException("This stage already has a downstream stage");
+            }
+            used = true;
+            if (pendingSources != null) {
+                materializeSources();
+            }
+        }
+    }
+
+    /**
+     * The work of one stage worker: zero or more results per item, plus any
+     * results held back until the input ends.
+     */
+    private interface Step<T, R> {
+        void apply(T item, List<R> out);
+
+        default void finish(List<R> out) {
+        }
+    }
+
+    /**
+     * Consumer sink that runs a step and puts the results into the next
+     * queue (every queue, for a fan-out). Only the step is timed, so
+     * waiting on a full downstream queue does not count as busy time.
+     */
+    private static final class StageSink<T, R> implements Sink<T> {
+        private final Step<T, R> step;
+        private final List<BlockingBuffer<R>> outputs;
+        private final StageStats stats;
+
+        StageSink(Supplier<Step<T, R>> step, List<BlockingBuffer<R>> outputs, StageStats stats) {
+            this.step = step.get();
+            this.outputs = outputs;
+            this.stats = stats;
+        }
+
+        @Override
+        public void accept(T item) {
+            acceptAll(Collections.singletonList(item));
+        }
+
+        @Override
+        public void acceptAll(List<? extends T> items) {
+            List<R> results = new ArrayList<>(items.size());
+            long start = System.nanoTime();
+            for (T item : items) {
+                step.apply(item, results);
+            }
+            stats.recordIn(items.size(), System.nanoTime() - start);
+            emit(results);
+        }
+
+        @Override
+        public void flush() {
+            List<R> results = new ArrayList<>();
+            step.finish(results);
+            emit(results);
+        }
+
+        /**
+         * Puts the results into every output. Whatever fits goes in with one
+         * offerAll, and a put waits only for the next result, so when an
+         * interrupt ends the wait it is known exactly which results were
+         * sent. The rest, for this output and the ones after it, are counted
+         * as dropped. Sink methods cannot throw InterruptedException, so the
+         * interrupt is restored and ends the worker at its next take.
+         */
+        private void emit(List<R> results) {
+            if (results.isEmpty()) {
+                return;
+            }
+            int index = 0;
+            int sent = 0;
+            try {
+                for (; index < outputs.size(); index++) {
+                    BlockingBuffer<R> output = outputs.get(index);
+                    sent = 0;
+                    while (sent < results.size()) {
+                        int n = output.offerAll(results.subList(sent, results.size()));
+                        if (n == 0) {
+                            output.put(results.get(sent));
+                            n = 1;
+                        }
+                        sent += n;
+                    }
+                    stats.recordOut(sent);
+                }
+            } catch (InterruptedException e) {
+                stats.recordOut(sent);
+                stats.recordDropped(results.size() - sent + (long) (outputs.size() - index - 1) * results.size());
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
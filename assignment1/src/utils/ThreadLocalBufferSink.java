@@ -0,0 +1,91 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sink that gives each consumer thread a private buffer and merges it into a
+ * shared list when the consumer flushes.
+ *
+ * Accepting an item touches only the calling thread's buffer, so consumers
+ * share no lock or cache line while they run. The shared list is locked once
+ * per flush (once per consumer by default), or once per
+ * {@code mergeThreshold} items when a threshold is set to bound the buffers.
+ * Each thread's buffer is dropped when it flushes, so pooled threads do not
+ * keep items from an earlier run.
+ */
+public class ThreadLocalBufferSink<T> implements Sink<T> {
+    private final List<T> merged = new ArrayList<>();
+    private final ThreadLocal<List<T>> buffer = ThreadLocal.withInitial(ArrayList::new);
+    private final int mergeThreshold;
+
+    /**
+     * Creates a sink that merges each consumer's buffer only when it flushes.
+     */
+    public ThreadLocalBufferSink() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a sink that also merges a buffer once it holds mergeThreshold items.
+     *
+     * @param mergeThreshold the buffer size that triggers a merge, must be > 0
+     * @throws IllegalArgumentException if mergeThreshold <= 0
+     */
+    public ThreadLocalBufferSink(int mergeThreshold) {
+        if (mergeThreshold <= 0) {
+            throw new IllegalArgumentException("Merge threshold must be greater than 0");
+        }
+        this.mergeThreshold = mergeThreshold;
+    }
+
+    @Override
+    public void accept(T item) {
+        List<T> local = buffer.get();
+        local.add(item);
+        if (local.size() >= mergeThreshold) {
+            merge(local);
+        }
+    }
+
+    @Override
+    public void acceptAll(List<? extends T> items) {
+        List<T> local = buffer.get();
+        local.addAll(items);
+        if (local.size() >= mergeThreshold) {
+            merge(local);
+        }
+    }
+
+    /**
+     * Merges the calling thread's buffer into the shared list.
+     */
+    @Override
+    public void flush() {
+        merge(buffer.get());
+        buffer.remove();
+    }
+
+    private void merge(List<T> local) {
+        if (local.isEmpty()) {
+            return;
+        }
+        synchronized (merged) {
+            merged.addAll(local);
+        }
+        local.clear();
+    }
+
+    /**
+     * Returns the items merged so far. Items still in a consumer's buffer
+     * appear only after that consumer flushes.
+     *
+     * @return an unmodifiable snapshot of the merged items
+     */
+    public List<T> getItems() {
+        synchronized (merged) {
+            return Collections.unmodifiableList(new ArrayList<>(merged));
+        }
+    }
+}
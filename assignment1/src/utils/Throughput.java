@@ -0,0 +1,27 @@
+package utils;
+
+/**
+ * Rate calculation shared by {@link Producer} and {@link Consumer}.
+ */
+final class Throughput {
+
+    private Throughput() {
+    }
+
+    /**
+     * Computes items per second for a worker.
+     *
+     * @param items the number of items processed
+     * @param startNanos when the worker started, or 0 if it has not
+     * @param endNanos when the worker finished, or 0 if it is still running
+     * @return items per second, or 0 if the worker has not started
+     */
+    static double perSecond(long items, long startNanos, long endNanos) {
+        if (startNanos == 0) {
+            return 0.0;
+        }
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        long elapsed = Math.max(1, end - startNanos);
+        return items * 1_000_000_000.0 / elapsed;
+    }
+}
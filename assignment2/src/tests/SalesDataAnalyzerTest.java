@@ -1,10 +1,17 @@
 package tests;
 import utils.*;
 import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Unit tests for SalesDataAnalyzer - NO FRAMEWORKS NEEDED
@@ -34,6 +41,16 @@ public class SalesDataAnalyzerTest {
         testLoadFromCsv();
         testLoadFromCsvEmptyFile();
         testLoadFromCsvSkipsMalformed();
+        testStreamFromCsv();
+        testAggregateCsv();
+        testParallelCsvLoader();
+        testCsvTokenizer();
+        testCsvTokenizerMatchesJdkParsing();
+        testLoadFromCsvQuotedFields();
+        testSalesAggregatorMatchesAnalyzer();
+        testSalesAggregatorDeclaredMetrics();
+        testParallelAnalysisMatchesSequential();
+        testParallelThreshold();
         
         // Print summary
         System.out.println("\n" + "=".repeat(50));
@@ -300,4 +317,382 @@ public class SalesDataAnalyzerTest {
             failed++;
         }
     }
-}
\ No newline at end of file
+    
+    private static void testStreamFromCsv() {
+        SalesDataAnalyzer analyzer = new SalesDataAnalyzer();
+        
+        try {
+            Path tempFile = Files.createTempFile("stream", ".csv");
+            String csvContent = 
+                "\n" +
+                "orderId,region,country,item,orderDate,units,unitPrice\n" +
+                "1,Europe,Germany,Book,2024-01-10,10,5.0\n" +
+                "BAD_LINE_MISSING_FIELDS\n" +
+                "\n" +
+                "2,Asia,Japan,Pen,2024-01-15,20,2.0\n";
+            
+            Files.writeString(tempFile, csvContent);
+            
+            List<SalesRecord> streamed;
+            try (Stream<SalesRecord> records = analyzer.streamFromCsv(tempFile)) {
+                streamed = records.collect(Collectors.toList());
+            }
+            
+            assertEquals("streamFromCsv - record count", 2, streamed.size());
+            assertTrue("streamFromCsv - same records as loadFromCsv",
+                streamed.equals(analyzer.loadFromCsv(tempFile)));
+            
+            // The stream keeps the file open until closed, so deleting afterwards must work
+            Files.delete(tempFile);
+            
+            Path emptyFile = Files.createTempFile("stream-empty", ".csv");
+            try (Stream<SalesRecord> records = analyzer.streamFromCsv(emptyFile)) {
+                assertEquals("streamFromCsv empty file - record count", 0, (int) records.count());
+            }
+            Files.delete(emptyFile);
+            
+        } catch (IOException e) {
+            System.out.println("✗ FAIL: streamFromCsv - " + e.getMessage());
+            failed++;
+        }
+    }
+    
+    private static void testAggregateCsv() {
+        SalesDataAnalyzer analyzer = new SalesDataAnalyzer();
+        List<SalesRecord> records = createTestRecords();
+        
+        try {
+            Path tempFile = Files.createTempFile("aggregate", ".csv");
+            StringBuilder csv = new StringBuilder("orderId,region,country,item,orderDate,units,unitPrice\n");
+            for (SalesRecord r : records) {
+                csv.append(String.join(",", r.getOrderId(), r.getRegion(), r.getCountry(), r.getItem(),
+                    r.getOrderDate().toString(), String.valueOf(r.getUnits()), String.valueOf(r.getUnitPrice())))
+                   .append("\n");
+            }
+            Files.writeString(tempFile, csv.toString());
+            
+            assertTrue("aggregateCsv - revenue by region matches list version",
+                analyzer.aggregateCsv(tempFile, SalesCollectors.revenueByRegion())
+                    .equals(analyzer.totalRevenueByRegion(records)));
+            assertTrue("aggregateCsv - units by country matches list version",
+                analyzer.aggregateCsv(tempFile, SalesCollectors.unitsByCountry())
+                    .equals(analyzer.totalUnitsByCountry(records)));
+            assertEquals("aggregateCsv - average order value", analyzer.averageOrderValue(records),
+                analyzer.aggregateCsv(tempFile, SalesCollectors.averageOrderValue()), 0.001);
+            assertEquals("aggregateCsv - top item", "Book",
+                analyzer.aggregateCsv(tempFile, SalesCollectors.topItemsByRevenue(1)).get(0).getKey());
+            
+            Files.delete(tempFile);
+            
+        } catch (IOException e) {
+            System.out.println("✗ FAIL: aggregateCsv - " + e.getMessage());
+            failed++;
+        }
+    }
+    
+    private static void testParallelCsvLoader() {
+        SalesDataAnalyzer analyzer = new SalesDataAnalyzer();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        
+        try {
+            // CRLF and LF endings, blank and malformed lines, multi-byte characters
+            // and no final newline, with chunks small enough that most boundaries fall mid-line
+            Path tempFile = Files.createTempFile("parallel", ".csv");
+            StringBuilder csv = new StringBuilder("\norderId,region,country,item,orderDate,units,unitPrice\r\n");
+            for (int i = 0; i < 500; i++) {
+                csv.append(i).append(i % 3 == 0 ? ",Europe,Österreich,Book-" : ",Europe,Germany,Book-").append(i % 7)
+                   .append(",2024-01-").append(10 + i % 20).append(",").append(i % 13)
+                   .append(",").append(i % 5).append(".25").append(i % 2 == 0 ? "\n" : "\r\n");
+                if (i % 50 == 0) {
+                    csv.append("\n").append("BAD_LINE_MISSING_FIELDS\n");
+                }
+            }
+            csv.append("500,Asia,Japan,Pen,2024-03-01,3,2.0");
+            Files.writeString(tempFile, csv.toString());
+            
+            List<SalesRecord> expected = analyzer.loadFromCsv(tempFile);
+            List<SalesRecord> actual = new ParallelCsvLoader(pool, 256).load(tempFile);
+            
+            assertEquals("ParallelCsvLoader - record count", 501, actual.size());
+            assertEquals("ParallelCsvLoader - multi-byte field decoded", "Österreich", actual.get(0).getCountry());
+            assertTrue("ParallelCsvLoader - same records in file order as loadFromCsv", expected.equals(actual));
+            assertTrue("ParallelCsvLoader - one chunk gives the same records",
+                expected.equals(new ParallelCsvLoader(pool, Integer.MAX_VALUE).load(tempFile)));
+            Files.delete(tempFile);
+            
+            Path headerOnly = Files.createTempFile("parallel-header", ".csv");
+            Files.writeString(headerOnly, "orderId,region,country,item,orderDate,units,unitPrice\n");
+            assertEquals("ParallelCsvLoader header only - record count", 0,
+                new ParallelCsvLoader(pool, 16).load(headerOnly).size());
+            Files.writeString(headerOnly, "");
+            assertEquals("ParallelCsvLoader empty file - record count", 0,
+                new ParallelCsvLoader().load(headerOnly).size());
+            Files.delete(headerOnly);
+            
+            // Old Mac line endings: a lone CR ends a line, as in loadFromCsv
+            Path crOnly = Files.createTempFile("parallel-cr", ".csv");
+            StringBuilder crCsv = new StringBuilder("orderId,region,country,item,orderDate,units,unitPrice\r");
+            for (int i = 0; i < 100; i++) {
+                crCsv.append(i).append(",Asia,Japan,Pen,2024-03-01,").append(i % 9).append(",2.0\r");
+            }
+            Files.writeString(crOnly, crCsv.toString());
+            List<SalesRecord> crExpected = analyzer.loadFromCsv(crOnly);
+            assertEquals("ParallelCsvLoader CR endings - record count", 100, crExpected.size());
+            assertTrue("ParallelCsvLoader CR endings - same records as loadFromCsv",
+                crExpected.equals(new ParallelCsvLoader(pool, 64).load(crOnly)));
+            Files.delete(crOnly);
+            
+            // Bytes that are not UTF-8 fail the load instead of being replaced
+            Path latin1 = Files.createTempFile("parallel-latin1", ".csv");
+            Files.write(latin1, ("orderId,region,country,item,orderDate,units,unitPrice\n"
+                + "1,Europe,\u00d6sterreich,Book,2024-01-10,1,9.5\n").getBytes(StandardCharsets.ISO_8859_1));
+            assertTrue("loadFromCsv rejects malformed UTF-8", throwsCodingError(() -> analyzer.loadFromCsv(latin1)));
+            assertTrue("ParallelCsvLoader rejects malformed UTF-8",
+                throwsCodingError(() -> new ParallelCsvLoader(pool, 16).load(latin1)));
+            Files.delete(latin1);
+            
+        } catch (IOException e) {
+            System.out.println("✗ FAIL: ParallelCsvLoader - " + e.getMessage());
+            failed++;
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private interface CsvLoad {
+        List<SalesRecord> load() throws IOException;
+    }
+    
+    private static boolean throwsCodingError(CsvLoad load) {
+        try {
+            load.load();
+            return false;
+        } catch (CharacterCodingException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    private static void testCsvTokenizer() {
+        // Columns in a different order, plus one the analyzer does not use
+        CsvTokenizer tokenizer = CsvTokenizer.forHeader(" UnitPrice,Units,Notes,orderDate,Item,Country,Region,OrderId");
+        
+        SalesRecord record = tokenizer.parse(" 2.50 ,3,\"ignored, with comma\",2024-02-30,\"Pen, blue\",USA,\"North \"\"NA\"\"\",7");
+        assertEquals("CsvTokenizer - quoted field keeps its comma", "Pen, blue", record.getItem());
+        assertEquals("CsvTokenizer - doubled quotes unescaped", "North \"NA\"", record.getRegion());
+        assertEquals("CsvTokenizer - units", 3, record.getUnits());
+        assertEquals("CsvTokenizer - unit price trimmed", 2.5, record.getUnitPrice(), 0.0);
+        assertTrue("CsvTokenizer - day past month end clamped like LocalDate.parse",
+            record.getOrderDate().equals(LocalDate.of(2024, 2, 29)));
+        
+        CsvTokenizer standard = CsvTokenizer.forHeader("orderId,region,country,item,orderDate,units,unitPrice");
+        SalesRecord spaced = standard.parse("1, Europe ,Germany,Book, 2024-01-10 , 10 ,5.0");
+        assertEquals("CsvTokenizer - string fields not trimmed", " Europe ", spaced.getRegion());
+        assertTrue("CsvTokenizer - repeated values share one String",
+            standard.parse("2,Asia,Japan,Book,2024-01-10,1,1.0").getItem()
+                == standard.parse("3,Asia,Japan,Book,2024-01-10,1,1.0").getItem());
+        
+        assertTrue("CsvTokenizer - short line reports missing column",
+            throwsWithMessage(() -> standard.parse("1,Europe,Germany"), "Missing column: item"));
+        assertTrue("CsvTokenizer - unterminated quote rejected",
+            throwsWithMessage(() -> standard.parse("1,\"Europe,Germany,Book,2024-01-10,10,5.0"), "Unterminated"));
+        assertTrue("CsvTokenizer - bad number rejected",
+            throwsWithMessage(() -> standard.parse("1,Europe,Germany,Book,2024-01-10,ten,5.0"), ""));
+        assertTrue("CsvTokenizer - split",
+            CsvTokenizer.split("a,\"b,c\",,\"\"").equals(Arrays.asList("a", "b,c", "", "")));
+    }
+    
+    private static void testCsvTokenizerMatchesJdkParsing() {
+        CsvTokenizer tokenizer = CsvTokenizer.forHeader("orderId,region,country,item,orderDate,units,unitPrice");
+        Random random = new Random(42);
+        String[] prices = {"9.50", "0.1", "-0.0", "1e3", "123456789012.345", "1234567890123456789.5", "7.", ".25",
+            "+3.75", "0.000000000000001", "NaN", "12345678.901234567"};
+        String[] dates = {"2024-01-10", "2023-02-29", "2024-04-31", "2024-12-31", "0001-01-01"};
+        
+        int mismatches = 0;
+        for (int i = 0; i < 2000; i++) {
+            String price = i < prices.length ? prices[i]
+                : (random.nextInt(100000) + "." + random.nextInt(1000));
+            String date = dates[i % dates.length];
+            int units = random.nextInt() % 100000;
+            SalesRecord record = tokenizer.parse("1,Europe,Germany,Book," + date + "," + units + "," + price);
+            
+            if (Double.compare(Double.parseDouble(price), record.getUnitPrice()) != 0
+                    || units != record.getUnits()
+                    || !LocalDate.parse(date, DateTimeFormatter.ofPattern("yyyy-MM-dd"))
+                        .equals(record.getOrderDate())) {
+                mismatches++;
+            }
+        }
+        assertEquals("CsvTokenizer - numbers and dates match JDK parsing", 0, mismatches);
+    }
+    
+    private static void testLoadFromCsvQuotedFields() {
+        SalesDataAnalyzer analyzer = new SalesDataAnalyzer();
+        
+        try {
+            Path tempFile = Files.createTempFile("quoted", ".csv");
+            String csvContent = 
+                "orderId,region,country,item,orderDate,units,unitPrice\n" +
+                "1,Europe,Germany,\"Notebook, A5\",2024-01-10,10,5.0\n" +
+                "2,Asia,Japan,Pen,2024-01-15,20,2.0\n";
+            Files.writeString(tempFile, csvContent);
+            
+            List<SalesRecord> records = analyzer.loadFromCsv(tempFile);
+            
+            assertEquals("loadFromCsv quoted - record count", 2, records.size());
+            assertEquals("loadFromCsv quoted - item with comma", "Notebook, A5", records.get(0).getItem());
+            assertTrue("ParallelCsvLoader quoted - same records",
+                records.equals(new ParallelCsvLoader().load(tempFile)));
+            
+            Files.delete(tempFile);
+            
+        } catch (IOException e) {
+            System.out.println("✗ FAIL: loadFromCsv quoted - " + e.getMessage());
+            failed++;
+        }
+    }
+    
+    private static boolean throwsWithMessage(Runnable action, String expected) {
+        try {
+            action.run();
+            return false;
+        } catch (RuntimeException e) {
+            return e.getMessage() != null && e.getMessage().contains(expected);
+        }
+    }
+    
+    // Many records with varied keys, so sums span several groups
+    private static List<SalesRecord> createRandomRecords(int count, long seed) {
+        Random random = new Random(seed);
+        String[] regions = {"Europe", "Asia", "North America", "South America"};
+        String[] items = {"Book", "Pen", "Notebook", "Marker", "Pencil", "Eraser"};
+        List<SalesRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add(new SalesRecord(String.valueOf(i), regions[random.nextInt(regions.length)],
+                "Country-" + random.nextInt(9), items[random.nextInt(items.length)],
+                LocalDate.of(2020 + random.nextInt(5), 1 + random.nextInt(12), 1 + random.nextInt(28)),
+                random.nextInt(100), random.nextInt(10000) / 100.0));
+        }
+        return records;
+    }
+    
+    private static void testSalesAggregatorMatchesAnalyzer() {
+        SalesDataAnalyzer analyzer = new SalesDataAnalyzer();
+        List<SalesRecord> records = createRandomRecords(5000, 7);
+        SalesReport report = SalesAggregator.all().aggregate(records);
+        
+        assertEquals("SalesAggregator - record count", 5000, (int) report.getRecordCount());
+        assertTrue("SalesAggregator - revenue by region",
+            report.getRevenueByRegion().equals(analyzer.totalRevenueByRegion(records)));
+        assertTrue("SalesAggregator - revenue by item",
+            report.getRevenueByItem().equals(analyzer.totalRevenueByItem(records)));
+        assertTrue("SalesAggregator - revenue by year",
+            report.getRevenueByYear().equals(analyzer.totalRevenueByYear(records)));
+        assertTrue("SalesAggregator - units by country",
+            report.getUnitsByCountry().equals(analyzer.totalUnitsByCountry(records)));
+        assertEquals("SalesAggregator - average order value",
+            analyzer.averageOrderValue(records), report.getAverageOrderValue(), 1e-9);
+        assertTrue("SalesAggregator - distinct items by region",
+            report.getDistinctItemsByRegion().equals(analyzer.distinctItemsByRegion(records)));
+        assertTrue("SalesAggregator - top items",
+            report.getTopItemsByRevenue(3).equals(analyzer.topItemsByRevenue(records, 3)));
+        assertEquals("SalesAggregator - revenue for region",
+            analyzer.totalRevenueForRegion(records, "europe"), report.getRevenueForRegion("europe"), 1e-6);
+        
+        SalesReport parallel = records.parallelStream().collect(SalesAggregator.all().toCollector());
+        assertEquals("SalesAggregator parallel collector - record count", 5000, (int) parallel.getRecordCount());
+        assertTrue("SalesAggregator parallel collector - units by country",
+            parallel.getUnitsByCountry().equals(report.getUnitsByCountry()));
+        assertTrue("SalesAggregator parallel collector - distinct items by region",
+            parallel.getDistinctItemsByRegion().equals(report.getDistinctItemsByRegion()));
+        assertEquals("SalesAggregator parallel collector - Europe revenue",
+            report.getRevenueByRegion().get("Europe"), parallel.getRevenueByRegion().get("Europe"), 1e-6);
+        
+        SalesReport empty = SalesAggregator.all().aggregate(List.of());
+        assertEquals("SalesAggregator empty - average order value", 0.0, empty.getAverageOrderValue(), 0.0);
+        assertTrue("SalesAggregator empty - no regions", empty.getRevenueByRegion().isEmpty());
+    }
+    
+    private static void testSalesAggregatorDeclaredMetrics() {
+        SalesAggregator aggregator = SalesAggregator.of(SalesMetric.REVENUE_BY_ITEM, SalesMetric.UNITS_BY_COUNTRY);
+        SalesReport report = aggregator.aggregate(createTestRecords());
+        
+        assertEquals("SalesAggregator declared - Book revenue", 75.0, report.getRevenueByItem().get("Book"), 0.001);
+        assertEquals("SalesAggregator declared - Germany units", 10, report.getUnitsByCountry().get("Germany"));
+        assertEquals("SalesAggregator declared - top item", "Book", report.getTopItemsByRevenue(1).get(0).getKey());
+        assertTrue("SalesAggregator declared - unrequested metric rejected",
+            throwsWithMessage(report::getRevenueByRegion, "REVENUE_BY_REGION was not requested"));
+        assertTrue("SalesAggregator declared - derived metric needs its base",
+            throwsWithMessage(() -> report.getRevenueForRegion("Europe"), "not requested"));
+    }
+    
+    private static void testParallelAnalysisMatchesSequential() {
+        List<SalesRecord> records = createRandomRecords(20000, 11);
+        SalesDataAnalyzer sequential = new SalesDataAnalyzer();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        SalesDataAnalyzer parallel = new SalesDataAnalyzer().withParallelism(pool, 1000);
+        
+        try {
+            assertTrue("parallel mode - large list runs in parallel", parallel.isParallel(records.size()));
+            assertTrue("parallel mode - revenue by region within tolerance",
+                sameSums(sequential.totalRevenueByRegion(records), parallel.totalRevenueByRegion(records)));
+            assertTrue("parallel mode - revenue by item within tolerance",
+                sameSums(sequential.totalRevenueByItem(records), parallel.totalRevenueByItem(records)));
+            assertTrue("parallel mode - revenue by year within tolerance",
+                sameSums(sequential.totalRevenueByYear(records), parallel.totalRevenueByYear(records)));
+            assertEquals("parallel mode - average order value",
+                sequential.averageOrderValue(records), parallel.averageOrderValue(records), 1e-9);
+            assertTrue("parallel mode - units by country",
+                sequential.totalUnitsByCountry(records).equals(parallel.totalUnitsByCountry(records)));
+            assertTrue("parallel mode - distinct items by region",
+                sequential.distinctItemsByRegion(records).equals(parallel.distinctItemsByRegion(records)));
+            assertEquals("parallel mode - revenue for region",
+                sequential.totalRevenueForRegion(records, "Asia"), parallel.totalRevenueForRegion(records, "Asia"), 1e-6);
+            assertEquals("parallel mode - top item",
+                sequential.topItemsByRevenue(records, 1).get(0).getKey(),
+                parallel.topItemsByRevenue(records, 1).get(0).getKey());
+            assertTrue("parallel mode - report",
+                sameSums(sequential.report(records, SalesAggregator.all()).getRevenueByItem(),
+                    parallel.report(records, SalesAggregator.all()).getRevenueByItem()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private static void testParallelThreshold() {
+        // Count the pool's worker threads: a sequential analysis never starts one
+        AtomicInteger workers = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(2, p -> {
+            workers.incrementAndGet();
+            return ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+        }, null, false);
+        SalesDataAnalyzer analyzer = new SalesDataAnalyzer().withParallelism(pool, 100);
+        
+        try {
+            analyzer.totalRevenueByRegion(createRandomRecords(99, 3));
+            assertEquals("parallel threshold - small list stays sequential", 0, workers.get());
+            analyzer.totalRevenueByRegion(createRandomRecords(100, 3));
+            assertTrue("parallel threshold - list at threshold runs on the pool", workers.get() > 0);
+            assertTrue("parallel threshold - sequential by default", !new SalesDataAnalyzer().isParallel(1_000_000));
+            assertTrue("parallel threshold - must be positive",
+                throwsWithMessage(() -> new SalesDataAnalyzer().withParallelism(pool, 0), "greater than 0"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private static <K> boolean sameSums(Map<K, Double> expected, Map<K, Double> actual) {
+        if (!expected.keySet().equals(actual.keySet())) {
+            return false;
+        }
+        for (Map.Entry<K, Double> entry : expected.entrySet()) {
+            double value = entry.getValue();
+            if (Math.abs(value - actual.get(entry.getKey())) > 1e-9 * Math.max(1.0, Math.abs(value))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,339 @@
+package utils;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Parses sales CSV lines into {@link SalesRecord}s in one scan over the
+ * characters, replacing {@code String.split(",")}.
+ *
+ * Column positions are resolved once from the header. Each line is then
+ * walked field by field: units, unit price and order date are parsed
+ * straight from the line, without a String per field, and the repeated
+ * region, country and item values come from a small cache instead of being
+ * copied for every row. Fields may be quoted, so a quoted field can hold
+ * commas, and {@code ""} inside quotes stands for one quote.
+ *
+ * String fields are kept as they are (only unquoted); numeric and date
+ * fields are trimmed, as before. Instances are thread-safe.
+ */
+public final class CsvTokenizer {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final String[] COLUMNS = {"orderid", "region", "country", "item", "orderdate", "units", "unitprice"};
+    private static final int ORDER_ID = 0;
+    private static final int REGION = 1;
+    private static final int COUNTRY = 2;
+    private static final int ITEM = 3;
+    private static final int ORDER_DATE = 4;
+    private static final int UNITS = 5;
+    private static final int UNIT_PRICE = 6;
+    private static final int CACHE_SIZE = 256;
+    // Up to 15 digits fit a double exactly, as do these powers of ten
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+    /** The field position of each column, or -1 if the header lacks it. */
+    private final int[] columnIndex;
+    /** The column each field position holds, or -1 for a field that is not used. */
+    private final int[] roles;
+    /**
+     * Recently seen region/country/item values. Threads may overwrite each
+     * other's entries; Strings are immutable, so any entry read is complete.
+     */
+    private final String[] cache = new String[CACHE_SIZE];
+
+    private CsvTokenizer(int[] columnIndex, int[] roles) {
+        this.columnIndex = columnIndex;
+        this.roles = roles;
+    }
+
+    /**
+     * Creates a tokenizer for the given header line. Column names are
+     * matched case-insensitively; if one is missing, every line fails to
+     * parse with "Missing column".
+     *
+     * @param headerLine the first line of the file
+     * @return a tokenizer for lines below that header
+     */
+    public static CsvTokenizer forHeader(String headerLine) {
+        List<String> headers = split(headerLine);
+        int[] columnIndex = new int[COLUMNS.length];
+        Arrays.fill(columnIndex, -1);
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.get(i).trim().toLowerCase(Locale.ROOT);
+            for (int column = 0; column < COLUMNS.length; column++) {
+                if (COLUMNS[column].equals(name)) {
+                    // A repeated name refers to its last occurrence
+                    columnIndex[column] = i;
+                }
+            }
+        }
+        int[] roles = new int[headers.size()];
+        Arrays.fill(roles, -1);
+        for (int column = 0; column < COLUMNS.length; column++) {
+            if (columnIndex[column] >= 0) {
+                roles[columnIndex[column]] = column;
+            }
+        }
+        return new CsvTokenizer(columnIndex, roles);
+    }
+
+    /**
+     * Splits a line into its unquoted fields.
+     *
+     * @param line one CSV line
+     * @return the fields, in order
+     * @throws IllegalArgumentException if a quoted field is not closed properly
+     */
+    public static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int end = fieldEnd(line, pos);
+            fields.add(text(line, pos, end));
+            if (end >= line.length()) {
+                return fields;
+            }
+            pos = end + 1;
+        }
+    }
+
+    /**
+     * Parses one data line.
+     *
+     * @param line one CSV line below the header
+     * @return the record
+     * @throws IllegalArgumentException if a column is missing or a quoted field is malformed
+     * @throws NumberFormatException if units or unit price is not a number
+     * @throws java.time.DateTimeException if the order date is not a valid yyyy-MM-dd date
+     */
+    public SalesRecord parse(String line) {
+        String orderId = null;
+        String region = null;
+        String country = null;
+        String item = null;
+        LocalDate orderDate = null;
+        int units = 0;
+        double unitPrice = 0;
+        int found = 0;
+
+        int pos = 0;
+        int fieldCount = 0;
+        while (true) {
+            int end = fieldEnd(line, pos);
+            int role = fieldCount < roles.length ? roles[fieldCount] : -1;
+            fieldCount++;
+            if (role >= 0) {
+                found++;
+                switch (role) {
+                    case ORDER_ID:
+                        orderId = text(line, pos, end);
+                        break;
+                    case REGION:
+                        region = cached(line, pos, end);
+                        break;
+                    case COUNTRY:
+                        country = cached(line, pos, end);
+                        break;
+                    case ITEM:
+                        item = cached(line, pos, end);
+                        break;
+                    case ORDER_DATE:
+                        orderDate = parseDate(line, pos, end);
+                        break;
+                    case UNITS:
+                        units = parseInt(line, pos, end);
+                        break;
+                    case UNIT_PRICE:
+                        unitPrice = parseDouble(line, pos, end);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (end >= line.length()) {
+                break;
+            }
+            pos = end + 1;
+        }
+        if (found < COLUMNS.length) {
+            throw new IllegalArgumentException("Missing column: " + missingColumn(fieldCount));
+        }
+        return new SalesRecord(orderId, region, country, item, orderDate, units, unitPrice);
+    }
+
+    /**
+     * Returns the index of the comma ending the field that starts at
+     * {@code start}, or the line length for the last field.
+     */
+    private static int fieldEnd(String line, int start) {
+        int n = line.length();
+        if (start >= n || line.charAt(start) != '"') {
+            int comma = line.indexOf(',', start);
+            return comma < 0 ? n : comma;
+        }
+        int pos = start + 1;
+        while (true) {
+            int quote = line.indexOf('"', pos);
+            if (quote < 0) {
+                throw new IllegalArgumentException("Unterminated quoted field at column " + start);
+            }
+            if (quote + 1 < n && line.charAt(quote + 1) == '"') {
+                pos = quote + 2;
+                continue;
+            }
+            if (quote + 1 < n && line.charAt(quote + 1) != ',') {
+                throw new IllegalArgumentException("Unexpected character after quoted field at column " + (quote + 1));
+            }
+            return quote + 1;
+        }
+    }
+
+    private static boolean isQuoted(String line, int start, int end) {
+        return end - start >= 2 && line.charAt(start) == '"';
+    }
+
+    /**
+     * Returns the field text, without surrounding quotes and with {@code ""} unescaped.
+     */
+    private static String text(String line, int start, int end) {
+        if (!isQuoted(line, start, end)) {
+            return line.substring(start, end);
+        }
+        String content = line.substring(start + 1, end - 1);
+        return content.indexOf('"') < 0 ? content : content.replace("\"\"", "\"");
+    }
+
+    private String cached(String line, int start, int end) {
+        if (isQuoted(line, start, end)) {
+            return text(line, start, end);
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        String value = cache[slot];
+        int length = end - start;
+        if (value == null || value.length() != length || !line.regionMatches(start, value, 0, length)) {
+            value = line.substring(start, end);
+            cache[slot] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Narrows [start, end) to the trimmed field content, without quotes.
+     * Returns start and end packed into a long.
+     */
+    private static long trimmed(String line, int start, int end) {
+        if (isQuoted(line, start, end)) {
+            start++;
+            end--;
+        }
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return ((long) start << 32) | end;
+    }
+
+    private static int parseInt(String line, int start, int end) {
+        long range = trimmed(line, start, end);
+        return Integer.parseInt(line, (int) (range >>> 32), (int) range, 10);
+    }
+
+    /**
+     * Parses plain decimals like {@code 9.50} exactly: with at most 15
+     * digits, mantissa and power of ten are exact doubles, so one division
+     * rounds the same way as {@link Double#parseDouble}. Anything else
+     * (exponents, long fractions, ...) goes to Double.parseDouble.
+     */
+    private static double parseDouble(String line, int start, int end) {
+        long range = trimmed(line, start, end);
+        int from = (int) (range >>> 32);
+        int to = (int) range;
+        int pos = from;
+        boolean negative = false;
+        if (pos < to && (line.charAt(pos) == '-' || line.charAt(pos) == '+')) {
+            negative = line.charAt(pos) == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; pos < to; pos++) {
+            char c = line.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                break;
+            }
+        }
+        if (pos < to || digits == 0 || digits > MAX_FAST_DIGITS) {
+            return Double.parseDouble(line.substring(from, to));
+        }
+        double value = mantissa / POWERS_OF_TEN[Math.max(scale, 0)];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses yyyy-MM-dd. Like the formatter's default (smart) resolution,
+     * a day past the end of its month, up to 31, becomes the last day;
+     * anything unusual goes to the formatter itself.
+     */
+    private static LocalDate parseDate(String line, int start, int end) {
+        long range = trimmed(line, start, end);
+        int from = (int) (range >>> 32);
+        int to = (int) range;
+        if (to - from == 10 && line.charAt(from + 4) == '-' && line.charAt(from + 7) == '-') {
+            int year = digits(line, from, from + 4);
+            int month = digits(line, from + 5, from + 7);
+            int day = digits(line, from + 8, from + 10);
+            if (year >= 1 && month >= 1 && month <= 12 && day >= 1 && day <= 31) {
+                LocalDate first = LocalDate.of(year, month, 1);
+                return first.withDayOfMonth(Math.min(day, first.lengthOfMonth()));
+            }
+        }
+        return LocalDate.parse(line.substring(from, to), DATE_FORMAT);
+    }
+
+    /**
+     * Returns the decimal value of the digits in [start, end), or -1 if
+     * there is a non-digit.
+     */
+    private static int digits(String line, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private String missingColumn(int fieldCount) {
+        for (int column = 0; column < COLUMNS.length; column++) {
+            if (columnIndex[column] < 0 || columnIndex[column] >= fieldCount) {
+                return COLUMNS[column];
+            }
+        }
+        return null;
+    }
+}
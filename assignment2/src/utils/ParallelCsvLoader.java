@@ -0,0 +1,240 @@
+package utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads a sales CSV file on several threads, for exports where the
+ * single-threaded {@link SalesDataAnalyzer#loadFromCsv(Path)} is too slow.
+ *
+ * The file is split into byte ranges of about {@code chunkSize} bytes, each
+ * moved forward to just after a newline so no line is cut in two. Every
+ * range is memory-mapped and parsed as its own fork/join task; the header
+ * is parsed once and shared. Lines are parsed by the same code as
+ * {@code loadFromCsv}, so the result is the same list of records in file
+ * order. Records must not span lines. As with the BufferedReader behind
+ * {@code loadFromCsv}, a line ends at "\n", "\r" or "\r\n", and bytes that
+ * are not valid UTF-8 fail the load with a
+ * {@link java.nio.charset.MalformedInputException} instead of being replaced.
+ */
+public class ParallelCsvLoader {
+
+    private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+    private final SalesDataAnalyzer analyzer = new SalesDataAnalyzer();
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    /**
+     * Creates a loader parsing 4 MiB chunks on the common fork/join pool.
+     */
+    public ParallelCsvLoader() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a loader.
+     *
+     * @param pool the pool the chunks are parsed on
+     * @param chunkSize the approximate number of bytes per chunk, must be > 0
+     * @throws IllegalArgumentException if chunkSize <= 0
+     */
+    public ParallelCsvLoader(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be greater than 0");
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Loads every record of the file. Blank and malformed lines are skipped,
+     * as in {@link SalesDataAnalyzer#loadFromCsv(Path)}.
+     *
+     * @param csvPath the CSV file
+     * @return the records, in file order
+     * @throws IOException if the file cannot be read or is not valid UTF-8
+     */
+    public List<SalesRecord> load(Path csvPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            String headerLine = null;
+            while (position < size && headerLine == null) {
+                long end = nextLineStart(channel, position, size);
+                String line = decode(channel, position, end);
+                if (!line.trim().isEmpty()) {
+                    headerLine = line;
+                }
+                position = end;
+            }
+            if (headerLine == null) {
+                return List.of();
+            }
+            CsvTokenizer tokenizer = analyzer.parseHeader(headerLine);
+
+            List<ChunkTask> tasks = new ArrayList<>();
+            while (position < size) {
+                long end = position + chunkSize >= size ? size : nextLineStart(channel, position + chunkSize, size);
+                tasks.add(new ChunkTask(analyzer, channel, position, end, tokenizer));
+                position = end;
+            }
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tasks);
+            }));
+
+            int total = 0;
+            for (ChunkTask task : tasks) {
+                total += task.getRawResult().size();
+            }
+            List<SalesRecord> records = new ArrayList<>(total);
+            for (ChunkTask task : tasks) {
+                records.addAll(task.getRawResult());
+            }
+            return records;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the position just after the first '\n' or '\r' at or after
+     * {@code from}, or {@code size} if there is none. A "\r\n" is thus cut
+     * after the '\r'; the '\n' left over reads as a blank line, which is
+     * skipped.
+     */
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (isLineEnd(buffer.get(i))) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Decodes one line, without its line terminator.
+     */
+    private static String decode(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        // Positional reads may return fewer bytes than asked for
+        int read = 0;
+        while (buffer.hasRemaining() && read >= 0) {
+            read = channel.read(buffer, start + buffer.position());
+        }
+        int length = buffer.position();
+        if (length > 0 && isLineEnd(buffer.get(length - 1))) {
+            length--;
+        }
+        return lineOf(buffer, 0, length, newDecoder());
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    /**
+     * Returns a decoder that reports malformed input, like the one behind
+     * {@link java.nio.file.Files#newBufferedReader(Path)}. Decoders are not
+     * thread-safe, so each task makes its own.
+     */
+    private static CharsetDecoder newDecoder() {
+        return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    /**
+     * Decodes bytes [from, to) of the buffer straight from it.
+     */
+    private static String lineOf(ByteBuffer bytes, int from, int to, CharsetDecoder decoder)
+            throws CharacterCodingException {
+        ByteBuffer line = bytes.duplicate();
+        line.limit(to).position(from);
+        return decoder.decode(line).toString();
+    }
+
+    /**
+     * Parses the lines of one newline-aligned byte range.
+     */
+    private static final class ChunkTask extends RecursiveTask<List<SalesRecord>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient SalesDataAnalyzer analyzer;
+        private final transient FileChannel channel;
+        private final long start;
+        private final long end;
+        private final transient CsvTokenizer tokenizer;
+
+        ChunkTask(SalesDataAnalyzer analyzer, FileChannel channel, long start, long end, CsvTokenizer tokenizer) {
+            this.analyzer = analyzer;
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.tokenizer = tokenizer;
+        }
+
+        @Override
+        protected List<SalesRecord> compute() {
+            MappedByteBuffer chunk;
+            try {
+                chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            List<SalesRecord> records = new ArrayList<>();
+            CharsetDecoder decoder = newDecoder();
+            int limit = chunk.limit();
+            int lineStart = 0;
+            try {
+                for (int i = 0; i < limit; i++) {
+                    if (isLineEnd(chunk.get(i))) {
+                        parseLine(lineOf(chunk, lineStart, i, decoder), records);
+                        lineStart = i + 1;
+                    }
+                }
+                if (lineStart < limit) {
+                    parseLine(lineOf(chunk, lineStart, limit, decoder), records);
+                }
+            } catch (CharacterCodingException e) {
+                throw new UncheckedIOException(e);
+            }
+            return records;
+        }
+
+        private void parseLine(String line, List<SalesRecord> records) {
+            if (line.trim().isEmpty()) {
+                return;
+            }
+            SalesRecord record = analyzer.parseRecord(line, tokenizer);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package utils;
+
+import java.util.Collections;
+import java.util.DoubleSummaryStatistics;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collector;
+
+/**
+ * Computes several {@link SalesMetric}s in a single traversal of the
+ * records, instead of one stream pipeline per metric as the methods of
+ * {@link SalesDataAnalyzer} do. The metrics are declared up front, and
+ * work is only done for those:
+ * <pre>
+ *   SalesAggregator aggregator = SalesAggregator.of(SalesMetric.REVENUE_BY_REGION, SalesMetric.REVENUE_BY_ITEM);
+ *   SalesReport report = aggregator.aggregate(records);
+ *   // or straight from the file, without materializing the records:
+ *   SalesReport report = analyzer.aggregateCsv(path, aggregator.toCollector());
+ * </pre>
+ * Sums use the same compensated summation as {@code Collectors.summingDouble},
+ * so results match the per-metric methods.
+ */
+public final class SalesAggregator {
+
+    private final Set<SalesMetric> metrics;
+
+    private SalesAggregator(Set<SalesMetric> metrics) {
+        this.metrics = Collections.unmodifiableSet(metrics);
+    }
+
+    /**
+     * Creates an aggregator for the given metrics.
+     */
+    public static SalesAggregator of(SalesMetric first, SalesMetric... rest) {
+        return new SalesAggregator(EnumSet.of(first, rest));
+    }
+
+    /**
+     * Creates an aggregator computing every metric.
+     */
+    public static SalesAggregator all() {
+        return new SalesAggregator(EnumSet.allOf(SalesMetric.class));
+    }
+
+    /**
+     * Returns the metrics this aggregator computes.
+     */
+    public Set<SalesMetric> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Computes every metric in one pass over the records.
+     */
+    public SalesReport aggregate(Iterable<SalesRecord> records) {
+        Accumulator accumulator = new Accumulator(metrics);
+        for (SalesRecord record : records) {
+            accumulator.accept(record);
+        }
+        return accumulator.toReport();
+    }
+
+    /**
+     * Returns a collector computing every metric in one pass over a stream.
+     * Parallel streams are supported: partial results are merged.
+     */
+    public Collector<SalesRecord, ?, SalesReport> toCollector() {
+        return Collector.of(
+                () -> new Accumulator(metrics),
+                Accumulator::accept,
+                Accumulator::combine,
+                Accumulator::toReport);
+    }
+
+    /**
+     * Mutable per-pass state; only the maps of requested metrics are filled.
+     */
+    static final class Accumulator {
+        private final Set<SalesMetric> metrics;
+        private final boolean byRegion;
+        private final boolean byItem;
+        private final boolean byYear;
+        private final boolean byCountry;
+        private final boolean average;
+        private final boolean itemsByRegion;
+        private final Map<String, DoubleSummaryStatistics> revenueByRegion = new HashMap<>();
+        private final Map<String, DoubleSummaryStatistics> revenueByItem = new HashMap<>();
+        private final Map<Integer, DoubleSummaryStatistics> revenueByYear = new HashMap<>();
+        private final Map<String, int[]> unitsByCountry = new HashMap<>();
+        private final Map<String, Set<String>> distinctItemsByRegion = new HashMap<>();
+        private final DoubleSummaryStatistics revenue = new DoubleSummaryStatistics();
+        private long recordCount;
+
+        Accumulator(Set<SalesMetric> metrics) {
+            this.metrics = metrics;
+            this.byRegion = metrics.contains(SalesMetric.REVENUE_BY_REGION);
+            this.byItem = metrics.contains(SalesMetric.REVENUE_BY_ITEM);
+            this.byYear = metrics.contains(SalesMetric.REVENUE_BY_YEAR);
+            this.byCountry = metrics.contains(SalesMetric.UNITS_BY_COUNTRY);
+            this.average = metrics.contains(SalesMetric.AVERAGE_ORDER_VALUE);
+            this.itemsByRegion = metrics.contains(SalesMetric.DISTINCT_ITEMS_BY_REGION);
+        }
+
+        void accept(SalesRecord record) {
+            recordCount++;
+            double value = record.getRevenue();
+            if (byRegion) {
+                revenueByRegion.computeIfAbsent(record.getRegion(), key -> new DoubleSummaryStatistics()).accept(value);
+            }
+            if (byItem) {
+                revenueByItem.computeIfAbsent(record.getItem(), key -> new DoubleSummaryStatistics()).accept(value);
+            }
+            if (byYear) {
+                revenueByYear.computeIfAbsent(record.getOrderDate().getYear(), key -> new DoubleSummaryStatistics())
+                        .accept(value);
+            }
+            if (byCountry) {
+                unitsByCountry.computeIfAbsent(record.getCountry(), key -> new int[1])[0] += record.getUnits();
+            }
+            if (average) {
+                revenue.accept(value);
+            }
+            if (itemsByRegion) {
+                distinctItemsByRegion.computeIfAbsent(record.getRegion(), key -> new HashSet<>()).add(record.getItem());
+            }
+        }
+
+        Accumulator combine(Accumulator other) {
+            recordCount += other.recordCount;
+            mergeSums(revenueByRegion, other.revenueByRegion);
+            mergeSums(revenueByItem, other.revenueByItem);
+            mergeSums(revenueByYear, other.revenueByYear);
+            other.unitsByCountry.forEach((country, units) ->
+                    unitsByCountry.computeIfAbsent(country, key -> new int[1])[0] += units[0]);
+            revenue.combine(other.revenue);
+            other.distinctItemsByRegion.forEach((region, items) ->
+                    distinctItemsByRegion.computeIfAbsent(region, key -> new HashSet<>()).addAll(items));
+            return this;
+        }
+
+        SalesReport toReport() {
+            Map<String, Integer> units = new HashMap<>();
+            unitsByCountry.forEach((country, total) -> units.put(country, total[0]));
+            return new SalesReport(metrics, recordCount,
+                    sums(revenueByRegion), sums(revenueByItem), sums(revenueByYear),
+                    units, revenue.getAverage(), distinctItemsByRegion);
+        }
+
+        private static <K> void mergeSums(Map<K, DoubleSummaryStatistics> into, Map<K, DoubleSummaryStatistics> from) {
+            from.forEach((key, stats) -> into.computeIfAbsent(key, k -> new DoubleSummaryStatistics()).combine(stats));
+        }
+
+        private static <K> Map<K, Double> sums(Map<K, DoubleSummaryStatistics> statistics) {
+            Map<K, Double> result = new HashMap<>();
+            statistics.forEach((key, stats) -> result.put(key, stats.getSum()));
+            return result;
+        }
+    }
+}
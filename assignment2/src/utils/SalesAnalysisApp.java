@@ -2,7 +2,6 @@ package utils;
 //package analysis;
 
 import java.nio.file.Path;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -17,43 +16,44 @@ public class SalesAnalysisApp {
         SalesDataAnalyzer analyzer = new SalesDataAnalyzer();
 
         try {
-            List<SalesRecord> records = analyzer.loadFromCsv(csvPath);
-            System.out.println("Loaded records: " + records.size());
+            // Every analysis below comes from one streaming pass over the file
+            SalesReport report = analyzer.aggregateCsv(csvPath, SalesAggregator.all().toCollector());
+            System.out.println("Loaded records: " + report.getRecordCount());
             System.out.println();
 
             // 1) Total revenue by region
-            Map<String, Double> revenueByRegion = analyzer.totalRevenueByRegion(records);
+            Map<String, Double> revenueByRegion = report.getRevenueByRegion();
             SalesDataAnalyzer.printSortedMap("Total Revenue by Region", revenueByRegion);
 
             // 2) Total revenue by item
-            Map<String, Double> revenueByItem = analyzer.totalRevenueByItem(records);
+            Map<String, Double> revenueByItem = report.getRevenueByItem();
             SalesDataAnalyzer.printSortedMap("Total Revenue by Item", revenueByItem);
 
             // 3) Average order value
-            double avgOrderValue = analyzer.averageOrderValue(records);
+            double avgOrderValue = report.getAverageOrderValue();
             System.out.println("==== Average Order Value ====");
             System.out.println(avgOrderValue);
             System.out.println();
 
             // 4) Total revenue by year
-            Map<Integer, Double> revenueByYear = analyzer.totalRevenueByYear(records);
+            Map<Integer, Double> revenueByYear = report.getRevenueByYear();
             SalesDataAnalyzer.printSortedMap("Total Revenue by Year", revenueByYear);
 
             // 5) Top 5 items by revenue
-            var topItems = analyzer.topItemsByRevenue(records, 5);
+            var topItems = report.getTopItemsByRevenue(5);
             SalesDataAnalyzer.printEntries("Top 5 Items by Revenue", topItems);
 
             // 6) Total units by country
-            Map<String, Integer> unitsByCountry = analyzer.totalUnitsByCountry(records);
+            Map<String, Integer> unitsByCountry = report.getUnitsByCountry();
             SalesDataAnalyzer.printSortedMap("Total Units Sold by Country", unitsByCountry);
 
             // 7) Distinct items by region
-            var itemsByRegion = analyzer.distinctItemsByRegion(records);
+            var itemsByRegion = report.getDistinctItemsByRegion();
             SalesDataAnalyzer.printSortedMap("Distinct Items by Region", itemsByRegion);
 
             // 8) Example: total revenue for a specific region
             String region = "Europe";
-            double europeRevenue = analyzer.totalRevenueForRegion(records, region);
+            double europeRevenue = report.getRevenueForRegion(region);
             System.out.println("==== Total Revenue for Region '" + region + "' ====");
             System.out.println(europeRevenue);
             System.out.println();
@@ -0,0 +1,91 @@
+package utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * The analyses of {@link SalesDataAnalyzer} as reusable collectors, so they
+ * can run over a list or directly over the lazy stream of
+ * {@link SalesDataAnalyzer#streamFromCsv(java.nio.file.Path)} without
+ * materializing the records.
+ */
+public final class SalesCollectors {
+
+    private SalesCollectors() {
+    }
+
+    /**
+     * Total revenue per region.
+     */
+    public static Collector<SalesRecord, ?, Map<String, Double>> revenueByRegion() {
+        return Collectors.groupingBy(
+                SalesRecord::getRegion,
+                Collectors.summingDouble(SalesRecord::getRevenue));
+    }
+
+    /**
+     * Total revenue per item/product.
+     */
+    public static Collector<SalesRecord, ?, Map<String, Double>> revenueByItem() {
+        return Collectors.groupingBy(
+                SalesRecord::getItem,
+                Collectors.summingDouble(SalesRecord::getRevenue));
+    }
+
+    /**
+     * Average order value, 0.0 when there are no records.
+     */
+    public static Collector<SalesRecord, ?, Double> averageOrderValue() {
+        return Collectors.averagingDouble(SalesRecord::getRevenue);
+    }
+
+    /**
+     * Total revenue per year.
+     */
+    public static Collector<SalesRecord, ?, Map<Integer, Double>> revenueByYear() {
+        return Collectors.groupingBy(
+                record -> record.getOrderDate().getYear(),
+                Collectors.summingDouble(SalesRecord::getRevenue));
+    }
+
+    /**
+     * Top N items by total revenue, descending.
+     */
+    public static Collector<SalesRecord, ?, List<Map.Entry<String, Double>>> topItemsByRevenue(int limit) {
+        return Collectors.collectingAndThen(revenueByItem(), revenueByItem ->
+                revenueByItem.entrySet().stream()
+                        .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                        .limit(limit)
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * Total units sold per country.
+     */
+    public static Collector<SalesRecord, ?, Map<String, Integer>> unitsByCountry() {
+        return Collectors.groupingBy(
+                SalesRecord::getCountry,
+                Collectors.summingInt(SalesRecord::getUnits));
+    }
+
+    /**
+     * Total revenue for one region, matched case-insensitively.
+     */
+    public static Collector<SalesRecord, ?, Double> revenueForRegion(String region) {
+        return Collectors.filtering(
+                r -> r.getRegion().equalsIgnoreCase(region),
+                Collectors.summingDouble(SalesRecord::getRevenue));
+    }
+
+    /**
+     * Region -> set of distinct items sold there.
+     */
+    public static Collector<SalesRecord, ?, Map<String, Set<String>>> distinctItemsByRegion() {
+        return Collectors.groupingBy(
+                SalesRecord::getRegion,
+                Collectors.mapping(SalesRecord::getItem, Collectors.toSet()));
+    }
+}
@@ -1,151 +1,176 @@
 package utils;
 //package analysis;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.function.Function;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * Performs all CSV loading and analytical queries using Streams and lambdas.
+ *
+ * Analyses run sequentially by default. With {@link #withParallelism}, lists
+ * of at least the threshold size are aggregated as parallel streams on the
+ * given pool: each worker fills partial maps that are merged at the end.
+ * Sums can then differ from the sequential result in the last bits.
  */
 public class SalesDataAnalyzer {
 
-    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    /** Below this many records, splitting the work costs more than it saves. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 10_000;
+
+    private ForkJoinPool pool;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /**
+     * Runs analyses of large lists in parallel on the given pool.
+     *
+     * @param pool the pool to run on, e.g. {@code ForkJoinPool.commonPool()};
+     *        null switches back to sequential
+     * @param threshold the smallest list size processed in parallel, must be > 0
+     * @return this analyzer
+     * @throws IllegalArgumentException if threshold <= 0
+     */
+    public SalesDataAnalyzer withParallelism(ForkJoinPool pool, int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("Parallel threshold must be greater than 0");
+        }
+        this.pool = pool;
+        this.parallelThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Returns true if an analysis of this many records runs in parallel.
+     */
+    public boolean isParallel(int recordCount) {
+        return pool != null && recordCount >= parallelThreshold;
+    }
 
     /**
      * Expected CSV headers (case-insensitive):
      * orderId, region, country, item, orderDate, units, unitPrice
      */
     public List<SalesRecord> loadFromCsv(Path csvPath) throws IOException {
-        try (Stream<String> lines = Files.lines(csvPath)) {
-            List<String> all = lines
-                    .filter(line -> !line.trim().isEmpty())
-                    .collect(Collectors.toList());
+        return aggregateCsv(csvPath, Collectors.toList());
+    }
 
-            if (all.isEmpty()) {
-                return List.of();
+    /**
+     * Lazily parses the CSV file, one line at a time, so memory use does not
+     * grow with the file. Malformed lines are skipped as in {@link #loadFromCsv}.
+     * The stream holds the file open and must be closed, e.g.:
+     * <pre>
+     *   try (Stream&lt;SalesRecord&gt; records = analyzer.streamFromCsv(path)) {
+     *       Map&lt;String, Double&gt; byRegion = records.collect(SalesCollectors.revenueByRegion());
+     *   }
+     * </pre>
+     * Read errors after the header surface as {@link UncheckedIOException}.
+     */
+    public Stream<SalesRecord> streamFromCsv(Path csvPath) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(csvPath);
+        try {
+            String headerLine = reader.readLine();
+            while (headerLine != null && headerLine.trim().isEmpty()) {
+                headerLine = reader.readLine();
             }
+            if (headerLine == null) {
+                reader.close();
+                return Stream.empty();
+            }
+            CsvTokenizer tokenizer = parseHeader(headerLine);
 
-            String headerLine = all.get(0);
-            Map<String, Integer> headerIndex = parseHeader(headerLine);
-
-            return all.subList(1, all.size()).stream()
-                    .map(line -> parseRecord(line, headerIndex))
+            return reader.lines()
+                    .filter(line -> !line.trim().isEmpty())
+                    .map(line -> parseRecord(line, tokenizer))
                     .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+                    .onClose(() -> {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
         }
     }
 
-    private Map<String, Integer> parseHeader(String headerLine) {
-        String[] headers = headerLine.split(",");
-        Map<String, Integer> indexMap = new HashMap<>();
-        for (int i = 0; i < headers.length; i++) {
-            indexMap.put(headers[i].trim().toLowerCase(), i);
+    /**
+     * Runs one aggregation over the CSV file in a single streaming pass,
+     * e.g. {@code aggregateCsv(path, SalesCollectors.revenueByRegion())}.
+     */
+    public <R> R aggregateCsv(Path csvPath, Collector<? super SalesRecord, ?, R> collector) throws IOException {
+        try (Stream<SalesRecord> records = streamFromCsv(csvPath)) {
+            return records.collect(collector);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return indexMap;
     }
 
-    private SalesRecord parseRecord(String line, Map<String, Integer> headerIndex) {
-        String[] parts = line.split(",");
+    // Package-private so ParallelCsvLoader parses with exactly the same rules
+    CsvTokenizer parseHeader(String headerLine) {
+        return CsvTokenizer.forHeader(headerLine);
+    }
+
+    SalesRecord parseRecord(String line, CsvTokenizer tokenizer) {
         // Defensive: ignore malformed lines
         try {
-            String orderId = get(parts, headerIndex, "orderid");
-            String region = get(parts, headerIndex, "region");
-            String country = get(parts, headerIndex, "country");
-            String item = get(parts, headerIndex, "item");
-            String orderDateStr = get(parts, headerIndex, "orderdate");
-            String unitsStr = get(parts, headerIndex, "units");
-            String unitPriceStr = get(parts, headerIndex, "unitprice");
-
-            LocalDate orderDate = LocalDate.parse(orderDateStr.trim(), DATE_FORMAT);
-            int units = Integer.parseInt(unitsStr.trim());
-            double unitPrice = Double.parseDouble(unitPriceStr.trim());
-
-            return new SalesRecord(orderId, region, country, item, orderDate, units, unitPrice);
+            return tokenizer.parse(line);
         } catch (Exception e) {
             System.err.println("Skipping malformed line: " + line + " -> " + e.getMessage());
             return null;
         }
     }
 
-    private String get(String[] parts, Map<String, Integer> headerIndex, String key) {
-        Integer idx = headerIndex.get(key);
-        if (idx == null || idx < 0 || idx >= parts.length) {
-            throw new IllegalArgumentException("Missing column: " + key);
-        }
-        return parts[idx];
-    }
-
     // ================== ANALYSIS METHODS (all using Streams) ==================
 
     /**
      * Total revenue per region.
      */
     public Map<String, Double> totalRevenueByRegion(List<SalesRecord> records) {
-        return records.stream()
-                .collect(Collectors.groupingBy(
-                        SalesRecord::getRegion,
-                        Collectors.summingDouble(SalesRecord::getRevenue)
-                ));
+        return collect(records, SalesCollectors.revenueByRegion());
     }
 
     /**
      * Total revenue per item/product.
      */
     public Map<String, Double> totalRevenueByItem(List<SalesRecord> records) {
-        return records.stream()
-                .collect(Collectors.groupingBy(
-                        SalesRecord::getItem,
-                        Collectors.summingDouble(SalesRecord::getRevenue)
-                ));
+        return collect(records, SalesCollectors.revenueByItem());
     }
 
     /**
      * Average order value across all records.
      */
     public double averageOrderValue(List<SalesRecord> records) {
-        return records.stream()
-                .mapToDouble(SalesRecord::getRevenue)
-                .average()
-                .orElse(0.0);
+        return collect(records, SalesCollectors.averageOrderValue());
     }
 
     /**
      * Total revenue per year.
      */
     public Map<Integer, Double> totalRevenueByYear(List<SalesRecord> records) {
-        return records.stream()
-                .collect(Collectors.groupingBy(
-                        record -> record.getOrderDate().getYear(),
-                        Collectors.summingDouble(SalesRecord::getRevenue)
-                ));
+        return collect(records, SalesCollectors.revenueByYear());
     }
 
     /**
      * Top N items by total revenue, descending.
      */
     public List<Map.Entry<String, Double>> topItemsByRevenue(List<SalesRecord> records, int limit) {
-        return totalRevenueByItem(records).entrySet().stream()
-                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-                .limit(limit)
-                .collect(Collectors.toList());
+        return collect(records, SalesCollectors.topItemsByRevenue(limit));
     }
 
     /**
      * Generic grouping example: group by country and compute total units sold.
      */
     public Map<String, Integer> totalUnitsByCountry(List<SalesRecord> records) {
-        return records.stream()
-                .collect(Collectors.groupingBy(
-                        SalesRecord::getCountry,
-                        Collectors.summingInt(SalesRecord::getUnits)
-                ));
+        return collect(records, SalesCollectors.unitsByCountry());
     }
 
     /**
@@ -153,21 +178,33 @@ public class SalesDataAnalyzer {
      * total revenue for a given region.
      */
     public double totalRevenueForRegion(List<SalesRecord> records, String region) {
-        return records.stream()
-                .filter(r -> r.getRegion().equalsIgnoreCase(region))
-                .mapToDouble(SalesRecord::getRevenue)
-                .sum();
+        return collect(records, SalesCollectors.revenueForRegion(region));
     }
 
     /**
      * Return a map of region -> set of distinct items sold there.
      */
     public Map<String, Set<String>> distinctItemsByRegion(List<SalesRecord> records) {
-        return records.stream()
-                .collect(Collectors.groupingBy(
-                        SalesRecord::getRegion,
-                        Collectors.mapping(SalesRecord::getItem, Collectors.toSet())
-                ));
+        return collect(records, SalesCollectors.distinctItemsByRegion());
+    }
+
+    /**
+     * Computes several metrics in one pass, e.g.
+     * {@code report(records, SalesAggregator.all())}.
+     */
+    public SalesReport report(List<SalesRecord> records, SalesAggregator aggregator) {
+        return collect(records, aggregator.toCollector());
+    }
+
+    /**
+     * Runs a collector sequentially, or as a parallel stream inside the pool
+     * so the stream's tasks run on that pool rather than the common one.
+     */
+    private <R> R collect(List<SalesRecord> records, Collector<? super SalesRecord, ?, R> collector) {
+        if (!isParallel(records.size())) {
+            return records.stream().collect(collector);
+        }
+        return pool.submit(() -> records.parallelStream().collect(collector)).join();
     }
 
     /**
@@ -0,0 +1,19 @@
+package utils;
+
+/**
+ * The aggregations a {@link SalesAggregator} can compute in one pass.
+ */
+public enum SalesMetric {
+    /** Total revenue per region; also answers revenue for a single region. */
+    REVENUE_BY_REGION,
+    /** Total revenue per item; also answers the top items by revenue. */
+    REVENUE_BY_ITEM,
+    /** Total revenue per year. */
+    REVENUE_BY_YEAR,
+    /** Total units sold per country. */
+    UNITS_BY_COUNTRY,
+    /** Average revenue per record. */
+    AVERAGE_ORDER_VALUE,
+    /** Distinct items sold per region. */
+    DISTINCT_ITEMS_BY_REGION
+}
@@ -0,0 +1,115 @@
+package utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The results of one {@link SalesAggregator} pass. Asking for a metric the
+ * aggregator was not configured with throws {@link IllegalStateException}.
+ */
+public final class SalesReport {
+
+    private final Set<SalesMetric> metrics;
+    private final long recordCount;
+    private final Map<String, Double> revenueByRegion;
+    private final Map<String, Double> revenueByItem;
+    private final Map<Integer, Double> revenueByYear;
+    private final Map<String, Integer> unitsByCountry;
+    private final double averageOrderValue;
+    private final Map<String, Set<String>> distinctItemsByRegion;
+
+    SalesReport(Set<SalesMetric> metrics,
+                long recordCount,
+                Map<String, Double> revenueByRegion,
+                Map<String, Double> revenueByItem,
+                Map<Integer, Double> revenueByYear,
+                Map<String, Integer> unitsByCountry,
+                double averageOrderValue,
+                Map<String, Set<String>> distinctItemsByRegion) {
+        this.metrics = metrics;
+        this.recordCount = recordCount;
+        this.revenueByRegion = Collections.unmodifiableMap(revenueByRegion);
+        this.revenueByItem = Collections.unmodifiableMap(revenueByItem);
+        this.revenueByYear = Collections.unmodifiableMap(revenueByYear);
+        this.unitsByCountry = Collections.unmodifiableMap(unitsByCountry);
+        this.averageOrderValue = averageOrderValue;
+        Map<String, Set<String>> items = new HashMap<>();
+        distinctItemsByRegion.forEach((region, set) -> items.put(region, Collections.unmodifiableSet(set)));
+        this.distinctItemsByRegion = Collections.unmodifiableMap(items);
+    }
+
+    public Set<SalesMetric> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Number of records aggregated; always available.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public Map<String, Double> getRevenueByRegion() {
+        require(SalesMetric.REVENUE_BY_REGION);
+        return revenueByRegion;
+    }
+
+    public Map<String, Double> getRevenueByItem() {
+        require(SalesMetric.REVENUE_BY_ITEM);
+        return revenueByItem;
+    }
+
+    public Map<Integer, Double> getRevenueByYear() {
+        require(SalesMetric.REVENUE_BY_YEAR);
+        return revenueByYear;
+    }
+
+    public Map<String, Integer> getUnitsByCountry() {
+        require(SalesMetric.UNITS_BY_COUNTRY);
+        return unitsByCountry;
+    }
+
+    /**
+     * Average order value, 0.0 when there were no records.
+     */
+    public double getAverageOrderValue() {
+        require(SalesMetric.AVERAGE_ORDER_VALUE);
+        return averageOrderValue;
+    }
+
+    public Map<String, Set<String>> getDistinctItemsByRegion() {
+        require(SalesMetric.DISTINCT_ITEMS_BY_REGION);
+        return distinctItemsByRegion;
+    }
+
+    /**
+     * Top N items by total revenue, descending; needs {@link SalesMetric#REVENUE_BY_ITEM}.
+     */
+    public List<Map.Entry<String, Double>> getTopItemsByRevenue(int limit) {
+        return getRevenueByItem().entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Total revenue for one region, matched case-insensitively; needs
+     * {@link SalesMetric#REVENUE_BY_REGION}.
+     */
+    public double getRevenueForRegion(String region) {
+        return getRevenueByRegion().entrySet().stream()
+                .filter(e -> e.getKey().equalsIgnoreCase(region))
+                .mapToDouble(Map.Entry::getValue)
+                .sum();
+    }
+
+    private void require(SalesMetric metric) {
+        if (!metrics.contains(metric)) {
+            throw new IllegalStateException("Metric " + metric + " was not requested");
+        }
+    }
+}